@@ -0,0 +1,135 @@
+package com.devikone.service;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fi.hel.processors.ResourceInjector;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+// The Redis operations that write several Redis keys at once. Each operation is a Lua script, so it is written with
+// a single round trip and Redis runs it atomically: a failure never leaves only one direction of a mapping written.
+@ApplicationScoped
+public class RedisScripts {
+
+    private static final Map<String, String> SCRIPT_SHA1S = new ConcurrentHashMap<>();
+
+    // KEYS: the keys to set, ARGV: their values in the same order
+    static final String SET_ALL = """
+            for i, key in ipairs(KEYS) do
+                redis.call('SET', key, ARGV[i])
+            end
+            return #KEYS
+            """;
+
+    // KEYS[1]: the key to set, KEYS[2]: the set to replace, ARGV[1]: the value, ARGV[2..]: the members of the set
+    static final String SET_AND_REPLACE_SET = """
+            redis.call('SET', KEYS[1], ARGV[1])
+            redis.call('DEL', KEYS[2])
+            if #ARGV > 1 then
+                redis.call('SADD', KEYS[2], unpack(ARGV, 2))
+            end
+            return 1
+            """;
+
+    // KEYS[1..n-1]: the keys to delete, KEYS[n]: the key to set, ARGV[1]: its value, ARGV[2]: its expiration seconds
+    static final String DELETE_AND_SETEX = """
+            for i = 1, #KEYS - 1 do
+                redis.call('DEL', KEYS[i])
+            end
+            redis.call('SETEX', KEYS[#KEYS], ARGV[2], ARGV[1])
+            return #KEYS - 1
+            """;
+
+    // KEYS[1]: the hash, KEYS[2..]: the string keys to move, ARGV: the fields of the string keys in the same order.
+    // A field already in the hash is newer than the string key and is kept.
+    static final String MOVE_TO_HASH = """
+            local moved = 0
+            for i = 2, #KEYS do
+                local value = redis.call('GET', KEYS[i])
+                if value then
+                    redis.call('HSETNX', KEYS[1], ARGV[i - 1], value)
+                    redis.call('UNLINK', KEYS[i])
+                    moved = moved + 1
+                end
+            end
+            return moved
+            """;
+
+    @Inject
+    ResourceInjector ri;
+
+    public void setAll(Map<String, String> values) {
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            keys.add(entry.getKey());
+            args.add(entry.getValue());
+        }
+
+        eval(SET_ALL, keys, args);
+    }
+
+    // Sets the value and replaces the members of the set instead of adding to them
+    public void setAndReplaceSet(String key, String value, String setKey, Set<String> members) {
+        List<String> args = new ArrayList<>();
+        args.add(value);
+        args.addAll(members);
+
+        eval(SET_AND_REPLACE_SET, List.of(key, setKey), args);
+    }
+
+    public void deleteAndSetex(List<String> deletedKeys, String key, String value, long expirationSeconds) {
+        List<String> keys = new ArrayList<>(deletedKeys);
+        keys.add(key);
+
+        eval(DELETE_AND_SETEX, keys, List.of(value, String.valueOf(expirationSeconds)));
+    }
+
+    // Moves the string keys into the fields of the hash. Returns the number of the moved keys.
+    public long moveToHash(String hash, Map<String, String> fieldsByKey) {
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        keys.add(hash);
+
+        for (Map.Entry<String, String> entry : fieldsByKey.entrySet()) {
+            keys.add(entry.getKey());
+            args.add(entry.getValue());
+        }
+
+        Object moved = eval(MOVE_TO_HASH, keys, args);
+
+        return moved instanceof Long count ? count : 0;
+    }
+
+    // The script is sent only when Redis does not have it cached yet
+    private Object eval(String script, List<String> keys, List<String> args) {
+        String sha1 = SCRIPT_SHA1S.computeIfAbsent(script, RedisScripts::sha1);
+
+        return ri.getRedisCommands().execute(jedis -> {
+            try {
+                return jedis.evalsha(sha1, keys, args);
+            } catch (JedisNoScriptException e) {
+                return jedis.eval(script, keys, args);
+            }
+        });
+    }
+
+    private static String sha1(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            return String.format("%040x", new BigInteger(1, digest));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -94,6 +94,7 @@ public class ConfigProvider {
     }
 
     public void saveCurrentCredentialsToRedis(String customerCode) throws Exception {
+        ri.getILoqSessionContext().invalidate();
         ri.getRedis().set(ri.getILoqCurrentCustomerCodePrefix(), customerCode);
 
         CustomerConfiguration customerConfiguration = getCustomerConfiguration();
@@ -311,7 +312,7 @@ public class ConfigProvider {
     }
 
     private CustomerConfiguration getCustomerConfiguration() throws Exception {
-        String customerCode = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
+        String customerCode = ri.getCustomerCodeScope().getCurrentCustomerCode();
 
         for (CustomerConfiguration customerConfiguration : this.customerConfigurations) {
             if (customerConfiguration.getCustomerCode().equals(customerCode)) {
@@ -0,0 +1,67 @@
+package fi.hel.configurations;
+
+import org.apache.camel.Exchange;
+
+import fi.hel.processors.ResourceInjector;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named("customerCodeScope")
+public class CustomerCodeScope {
+
+    @Inject
+    ResourceInjector ri;
+
+    private static final String UNSCOPED = "";
+
+    // The customer code handled by the current thread. Without a scope the current customer code is shared through
+    // the global Redis keys, which is how the Efecte controllers and the sequential iLOQ controller work.
+    private final ThreadLocal<String> customerCode = new ThreadLocal<>();
+
+    public void enter(String customerCode) {
+        if (customerCode == null) {
+            this.customerCode.remove();
+        } else {
+            this.customerCode.set(customerCode);
+        }
+    }
+
+    // Enters the scope of the customer code handled by the exchange, or leaves the scope when it has none
+    public void restore(Exchange ex) {
+        enter(ex.getProperty("scopedCustomerCode", String.class));
+    }
+
+    public void exit() {
+        this.customerCode.remove();
+    }
+
+    public boolean isActive() {
+        return this.customerCode.get() != null;
+    }
+
+    public String getCustomerCode() {
+        return this.customerCode.get();
+    }
+
+    public String getCurrentCustomerCode() throws Exception {
+        String customerCode = this.customerCode.get();
+
+        return customerCode != null ? customerCode : ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
+    }
+
+    // Identifies the in-memory session state of the current scope, the unscoped state is kept in a single slot
+    public String getSlot() {
+        String customerCode = this.customerCode.get();
+
+        return customerCode != null ? customerCode : UNSCOPED;
+    }
+
+    public String scopeKey(String prefix) {
+        String customerCode = this.customerCode.get();
+
+        return customerCode != null ? prefix + ":" + customerCode : prefix;
+    }
+
+}
@@ -0,0 +1,85 @@
+package fi.hel.configurations;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.IdleConnectionEvictor;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
+import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import fi.hel.processors.ILoqConnectionMetrics;
+import jakarta.enterprise.inject.Disposes;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+
+@Singleton
+public class ILoqHttpClientProducer {
+
+    @Inject
+    ILoqConnectionMetrics metrics;
+    @ConfigProperty(name = "app.configuration.iLoq.http.maxConnections")
+    int maxConnections;
+    @ConfigProperty(name = "app.configuration.iLoq.http.maxConnectionsPerHost")
+    int maxConnectionsPerHost;
+    @ConfigProperty(name = "app.configuration.iLoq.http.connectTimeoutSeconds")
+    long connectTimeoutSeconds;
+    @ConfigProperty(name = "app.configuration.iLoq.http.idleTimeoutSeconds")
+    long idleTimeoutSeconds;
+    @ConfigProperty(name = "app.configuration.iLoq.http.validateAfterInactivitySeconds")
+    long validateAfterInactivitySeconds;
+    @ConfigProperty(name = "app.configuration.iLoq.http.tlsSessionTimeoutSeconds")
+    int tlsSessionTimeoutSeconds;
+
+    private IdleConnectionEvictor idleConnectionEvictor;
+
+    // Shared by every request to the iLOQ API. Each customer code has its own host, so the per host limit is the pool
+    // size of a single customer code. The connections are kept alive between the requests, and a single SSL context
+    // lets the new connections resume the cached TLS sessions instead of doing a full handshake.
+    //
+    // A connection that has not been used for the idle timeout is closed by the evictor, as the iLOQ servers may
+    // already have dropped it. A connection that has been idle for a shorter time is checked before it is reused.
+    @Produces
+    @Singleton
+    @Named("iLoqConnectionManager")
+    public PoolingHttpClientConnectionManager createILoqConnectionManager() {
+        SSLContext sslContext = SSLContexts.createSystemDefault();
+        sslContext.getClientSessionContext().setSessionTimeout(tlsSessionTimeoutSeconds);
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", new TimedConnectionSocketFactory(
+                                PlainConnectionSocketFactory.getSocketFactory(), metrics))
+                        .register("https", new TimedConnectionSocketFactory(
+                                new SSLConnectionSocketFactory(sslContext), metrics))
+                        .build());
+
+        connectionManager.setMaxTotal(Math.max(1, maxConnections));
+        connectionManager.setDefaultMaxPerRoute(Math.max(1, maxConnectionsPerHost));
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofSeconds(connectTimeoutSeconds))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(validateAfterInactivitySeconds))
+                .build());
+
+        idleConnectionEvictor = new IdleConnectionEvictor(connectionManager,
+                TimeValue.ofSeconds(idleTimeoutSeconds), TimeValue.ofSeconds(idleTimeoutSeconds));
+        idleConnectionEvictor.start();
+
+        return connectionManager;
+    }
+
+    public void closeILoqConnectionManager(
+            @Disposes @Named("iLoqConnectionManager") PoolingHttpClientConnectionManager connectionManager) {
+        idleConnectionEvictor.shutdown();
+        connectionManager.close();
+    }
+
+}
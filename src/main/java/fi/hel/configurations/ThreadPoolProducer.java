@@ -0,0 +1,61 @@
+package fi.hel.configurations;
+
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.CamelContext;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+
+@Singleton
+public class ThreadPoolProducer {
+
+    @Inject
+    CamelContext camelContext;
+    @ConfigProperty(name = "app.configuration.iLoq.keyProcessingConcurrency")
+    int keyProcessingConcurrency;
+    @ConfigProperty(name = "app.configuration.iLoq.customerCodeConcurrency")
+    int customerCodeConcurrency;
+    @ConfigProperty(name = "app.configuration.iLoq.keyPrefetchConcurrency")
+    int keyPrefetchConcurrency;
+
+    // Bounds the number of real estates processed at the same time by the iLoqQuartzController
+    @Produces
+    @ApplicationScoped
+    @Named("iLoqKeyProcessingExecutor")
+    public ExecutorService createILoqKeyProcessingExecutor() {
+        return camelContext.getExecutorServiceManager()
+                .newFixedThreadPool(this, "iLoqKeyProcessing", Math.max(1, keyProcessingConcurrency));
+    }
+
+    // Bounds the number of customer codes synchronized at the same time by the iLoqQuartzController
+    @Produces
+    @ApplicationScoped
+    @Named("iLoqCustomerCodeExecutor")
+    public ExecutorService createILoqCustomerCodeExecutor() {
+        return camelContext.getExecutorServiceManager()
+                .newFixedThreadPool(this, "iLoqCustomerCode", Math.max(1, customerCodeConcurrency));
+    }
+
+    // Bounds the number of iLOQ reads made ahead of the key handling by the iLoqKeyPrefetcher
+    @Produces
+    @ApplicationScoped
+    @Named("iLoqKeyPrefetchExecutor")
+    public ExecutorService createILoqKeyPrefetchExecutor() {
+        return camelContext.getExecutorServiceManager()
+                .newFixedThreadPool(this, "iLoqKeyPrefetch", Math.max(1, keyPrefetchConcurrency));
+    }
+
+    // Fetches the next page of a paged Efecte search by the EfecteSearchPager, one page ahead at most
+    @Produces
+    @ApplicationScoped
+    @Named("efecteSearchPageExecutor")
+    public ExecutorService createEfecteSearchPageExecutor() {
+        return camelContext.getExecutorServiceManager().newSingleThreadExecutor(this, "efecteSearchPage");
+    }
+
+}
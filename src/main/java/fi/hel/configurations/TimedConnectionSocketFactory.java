@@ -0,0 +1,53 @@
+package fi.hel.configurations;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
+import org.apache.hc.client5.http.socket.LayeredConnectionSocketFactory;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+
+import fi.hel.processors.ILoqConnectionMetrics;
+
+// Measures the time it takes to open a connection, including the TLS handshake of the https connections
+public class TimedConnectionSocketFactory implements LayeredConnectionSocketFactory {
+
+    private final ConnectionSocketFactory delegate;
+    private final ILoqConnectionMetrics metrics;
+
+    public TimedConnectionSocketFactory(ConnectionSocketFactory delegate, ILoqConnectionMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Socket createSocket(HttpContext context) throws IOException {
+        return delegate.createSocket(context);
+    }
+
+    @Override
+    public Socket connectSocket(TimeValue connectTimeout, Socket socket, HttpHost host,
+            InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
+        long start = System.nanoTime();
+        Socket connectedSocket = delegate.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress,
+                context);
+
+        metrics.recordConnect(host.getHostName(), System.nanoTime() - start);
+
+        return connectedSocket;
+    }
+
+    @Override
+    public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context)
+            throws IOException {
+        if (delegate instanceof LayeredConnectionSocketFactory layeredDelegate) {
+            return layeredDelegate.createLayeredSocket(socket, target, port, context);
+        }
+
+        throw new IOException("TimedConnectionSocketFactory: The delegate does not support layered sockets");
+    }
+
+}
@@ -26,7 +26,8 @@ public class ExceptionHandler extends RouteConfigurationBuilder {
             .onException(HttpOperationFailedException.class)
                 .onWhen(hasInvalidILoqSessionId())
                     .continued(true)
-                    .bean("redis", "set('{{app.redis.prefix.iLoqCurrentCustomerCodeHasChanged}}', 'true')")
+                    .bean("iLoqSessionContext", "markCustomerCodeChanged")
+                    .bean("iLoqSessionPool", "invalidateCurrentSession")
                     .bean("configProvider", "getConfiguredCustomerCodes")
                     .to("{{app.routes.exceptionHandler.saveHeadersAndBody}}")
                     .log("{{app.name}} :: ExceptionHandler :: iLOQ session failed, refreshing session")
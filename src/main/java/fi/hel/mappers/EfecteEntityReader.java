@@ -0,0 +1,176 @@
+package fi.hel.mappers;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.camel.Exchange;
+
+import fi.hel.exceptions.EfecteSearchException;
+import fi.hel.models.EfecteAttribute;
+import fi.hel.models.EfecteEntity;
+import fi.hel.models.EfecteReference;
+import fi.hel.models.EfecteTemplate;
+import fi.hel.models.enumerations.EnumEfecteAttribute;
+import jakarta.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class EfecteEntityReader {
+
+    private final XMLInputFactory xmlInputFactory = createXMLInputFactory();
+    private final Set<String> attributeCodes = Arrays.stream(EnumEfecteAttribute.values())
+            .map(EnumEfecteAttribute::getCode)
+            .collect(Collectors.toSet());
+    private final Set<String> attributeIds = Arrays.stream(EnumEfecteAttribute.values())
+            .map(EnumEfecteAttribute::getId)
+            .collect(Collectors.toSet());
+
+    // Reads the Efecte search.ws response in the body into a list of entities
+    public void readEfecteEntities(Exchange ex) throws Exception {
+        InputStream body = ex.getIn().getBody(InputStream.class);
+        List<EfecteEntity> efecteEntities = new ArrayList<>();
+
+        if (body != null) {
+            readEfecteEntities(body, efecteEntities::add);
+        }
+
+        ex.getIn().setBody(efecteEntities);
+    }
+
+    // Reads the response one entity at a time, so only a single entity is held in memory besides the ones kept by the
+    // consumer. Only the attributes listed in EnumEfecteAttribute are bound, the rest are skipped.
+    public void readEfecteEntities(InputStream body, Consumer<EfecteEntity> consumer) throws Exception {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(body);
+
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                switch (reader.getLocalName()) {
+                    case "error" -> throw new EfecteSearchException(readError(reader));
+                    case "entity" -> consumer.accept(readEntity(reader));
+                    default -> {
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private EfecteEntity readEntity(XMLStreamReader reader) throws Exception {
+        EfecteEntity efecteEntity = new EfecteEntity(reader.getAttributeValue(null, "id"));
+        efecteEntity.setName(reader.getAttributeValue(null, "name"));
+        List<EfecteAttribute> attributes = new ArrayList<>();
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "template" -> {
+                    EfecteTemplate template = new EfecteTemplate();
+                    template.setCode(reader.getAttributeValue(null, "code"));
+                    efecteEntity.setTemplate(template);
+                    skipElement(reader);
+                }
+                case "attribute" -> {
+                    if (isKnownAttribute(reader)) {
+                        attributes.add(readAttribute(reader));
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+                default -> skipElement(reader);
+            }
+        }
+
+        efecteEntity.setAttributes(attributes);
+
+        return efecteEntity;
+    }
+
+    private EfecteAttribute readAttribute(XMLStreamReader reader) throws Exception {
+        EfecteAttribute attribute = new EfecteAttribute();
+        attribute.setId(reader.getAttributeValue(null, "id"));
+        attribute.setName(reader.getAttributeValue(null, "name"));
+        attribute.setCode(reader.getAttributeValue(null, "code"));
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "reference" -> {
+                    if (attribute.getReferences() == null) {
+                        attribute.setReferences(new ArrayList<>());
+                    }
+
+                    attribute.getReferences().add(new EfecteReference(
+                            reader.getAttributeValue(null, "id"), reader.getAttributeValue(null, "name")));
+                    skipElement(reader);
+                }
+                case "value" -> attribute.setValue(reader.getElementText());
+                default -> skipElement(reader);
+            }
+        }
+
+        return attribute;
+    }
+
+    // The error response is small, its texts are joined into the message
+    private String readError(XMLStreamReader reader) throws Exception {
+        List<String> texts = new ArrayList<>();
+        int depth = 1;
+
+        while (depth > 0) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                String text = reader.getText().trim();
+
+                if (!text.isEmpty()) {
+                    texts.add(text);
+                }
+            }
+        }
+
+        return "Efecte search failed: " + String.join(" ", texts);
+    }
+
+    private boolean isKnownAttribute(XMLStreamReader reader) {
+        return attributeCodes.contains(reader.getAttributeValue(null, "code"))
+                || attributeIds.contains(reader.getAttributeValue(null, "id"));
+    }
+
+    // Skips the current element with its children
+    private void skipElement(XMLStreamReader reader) throws Exception {
+        int depth = 1;
+
+        while (depth > 0) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static XMLInputFactory createXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        return factory;
+    }
+}
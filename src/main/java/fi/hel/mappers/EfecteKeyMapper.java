@@ -32,7 +32,8 @@ public class EfecteKeyMapper {
         ILoqPerson iLoqPerson = enrichedILoqKey.getPerson();
         String iLoqPersonId = iLoqPerson.getPersonId();
         String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
-        String keyHolderEntityIdentifierJson = ri.getRedis().get(ri.getMappedPersonILoqPrefix() + cc + ":" + iLoqPersonId);
+        String keyHolderEntityIdentifierJson = ri.getPersonMappingStore().get(ri.getMappedPersonILoqPrefix(), cc,
+                iLoqPersonId);
 
         if (keyHolderEntityIdentifierJson == null) {
             String auditMessage = "Unable to create a new key card in Efecte. No matching key holder was found for the specified iLOQ person (%s)."
@@ -42,8 +43,12 @@ public class EfecteKeyMapper {
                     auditMessage);
         }
 
+        // The stored mapping is either JSON or in the compact format
+        EfecteEntityIdentifier keyHolderEntityIdentifier = ri.getHelper().writeAsPojo(keyHolderEntityIdentifierJson,
+                EfecteEntityIdentifier.class);
+
         // TODO: This will need to be discussed with the product owner - should we allow creating Efecte keys for outsiders?
-        if (isOutsider(keyHolderEntityIdentifierJson)) {
+        if (isOutsider(keyHolderEntityIdentifier)) {
             String auditMessage = "The iLOQ person (%s) is an outsider, and we currently don't create Efecte keys for outsiders."
                     .formatted(iLoqPersonId);
             ri.getAuditExceptionProcessor().throwAuditException(
@@ -55,7 +60,7 @@ public class EfecteKeyMapper {
 
         attributeImports.add(createStreetAddressAttribute(enrichedILoqKey.getRealEstateId()));
         attributeImports.add(createSecurityAccessAttribute(enrichedILoqKey.getSecurityAccesses()));
-        attributeImports.add(createKeyHolderAttribute(keyHolderEntityIdentifierJson));
+        attributeImports.add(createKeyHolderAttribute(keyHolderEntityIdentifier));
         attributeImports.add(createExternalIdAttribute(enrichedILoqKey.getFnKeyId()));
         attributeImports.add(createStateAttribute());
         attributeImports.add(createTypeAttribute());
@@ -114,10 +119,7 @@ public class EfecteKeyMapper {
                 EnumEfecteAttribute.KEY_SECURITY_ACCESS, securityAccessEfecteIds);
     }
 
-    private EfecteAttributeImport createKeyHolderAttribute(String keyHolderEntityIdentifierJson)
-            throws Exception {
-        EfecteEntityIdentifier efecteEntityIdentifier = ri.getHelper().writeAsPojo(keyHolderEntityIdentifierJson,
-                EfecteEntityIdentifier.class);
+    private EfecteAttributeImport createKeyHolderAttribute(EfecteEntityIdentifier efecteEntityIdentifier) {
         return new EfecteAttributeImport(
                 EnumEfecteAttribute.KEY_HOLDER, efecteEntityIdentifier.getEfecteId());
     }
@@ -152,8 +154,9 @@ public class EfecteKeyMapper {
         return date.plusDays(daysToAdd).format(DateTimeFormatter.ofPattern("dd.MM.yyyy")) + " 00:00";
     }
 
-    private boolean isOutsider(String keyHolderEntityIdentifierJson) {
-        return keyHolderEntityIdentifierJson.contains("outsiderName");
+    private boolean isOutsider(EfecteEntityIdentifier keyHolderEntityIdentifier) {
+        return keyHolderEntityIdentifier.getOutsiderName() != null
+                || keyHolderEntityIdentifier.getOutsiderEmail() != null;
     }
 
 }
@@ -0,0 +1,84 @@
+package fi.hel.mappers;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.camel.Exchange;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import fi.hel.models.ILoqKeyResponse;
+import jakarta.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+@SuppressWarnings("unchecked")
+public class ILoqKeyListReader {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    // Reads the iLOQ /Keys response one key at a time, so only the keys of the verified real estates are held in memory
+    public void readILoqKeys(Exchange ex) throws Exception {
+        Collection<String> realEstateIds = ex.getProperty("verifiedILoqRealEstateIds", Collection.class);
+        Set<String> verifiedRealEstateIds = realEstateIds == null ? null : new HashSet<>(realEstateIds);
+        InputStream body = ex.getIn().getBody(InputStream.class);
+        List<ILoqKeyResponse> iLoqKeys = new ArrayList<>();
+        int totalCount = 0;
+
+        if (body != null) {
+            try (JsonParser parser = jsonFactory.createParser(body)) {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new Exception("ILoqKeyListReader: Expected the iLOQ key listing to be a JSON array");
+                }
+
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    ILoqKeyResponse iLoqKey = readILoqKey(parser);
+                    totalCount++;
+
+                    if (verifiedRealEstateIds == null || verifiedRealEstateIds.contains(iLoqKey.getRealEstateId())) {
+                        iLoqKeys.add(iLoqKey);
+                    }
+                }
+            }
+        }
+
+        ex.setProperty("iLoqKeyTotalCount", totalCount);
+        ex.getIn().setBody(iLoqKeys);
+    }
+
+    // Only the fields used by the synchronization are bound, the rest are skipped. The programming state, version
+    // code and expiration date are bound as the change markers of the key, as they are part of its digest.
+    private ILoqKeyResponse readILoqKey(JsonParser parser) throws Exception {
+        ILoqKeyResponse iLoqKey = new ILoqKeyResponse();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            switch (fieldName) {
+                case "Description" -> iLoqKey.setDescription(parser.getValueAsString());
+                case "Person_ID" -> iLoqKey.setPersonId(parser.getValueAsString());
+                case "RealEstate_ID" -> iLoqKey.setRealEstateId(parser.getValueAsString());
+                case "FNKey_ID" -> iLoqKey.setFnKeyId(parser.getValueAsString());
+                case "InfoText" -> iLoqKey.setInfoText(parser.getValueAsString());
+                case "ROM_ID" -> iLoqKey.setRomId(parser.getValueAsString());
+                case "Stamp" -> iLoqKey.setStamp(parser.getValueAsString());
+                case "TagKey" -> iLoqKey.setTagKey(parser.getValueAsString());
+                case "State" -> iLoqKey.setState(token == JsonToken.VALUE_NULL ? null : parser.getValueAsInt());
+                case "ExpireDate" -> iLoqKey.setExpireDate(parser.getValueAsString());
+                case "ProgrammingState" -> iLoqKey
+                        .setProgrammingState(token == JsonToken.VALUE_NULL ? null : parser.getValueAsInt());
+                case "VersionCode" -> iLoqKey.setVersionCode(parser.getValueAsString());
+                default -> parser.skipChildren();
+            }
+        }
+
+        return iLoqKey;
+    }
+
+}
@@ -1,6 +1,10 @@
 package fi.hel.models;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -27,7 +31,10 @@ public class EfecteEntity {
     private EfecteTemplate template;
     @JacksonXmlProperty(localName = "attribute")
     @JacksonXmlElementWrapper(useWrapping = false)
-    private List<EfecteAttribute> attributes;
+    private AttributeList attributes;
+
+    // The attributes by their id. Built on the first lookup and rebuilt after any change to the attribute list.
+    private transient AttributeIndex attributeIndex;
 
     public EfecteEntity() {
     }
@@ -40,8 +47,10 @@ public class EfecteEntity {
         return attributes;
     }
 
+    // The attributes are copied, so that every change to them goes through the list of the entity
     public void setAttributes(List<EfecteAttribute> attributes) {
-        this.attributes = attributes;
+        this.attributes = attributes == null ? null : new AttributeList(attributes);
+        this.attributeIndex = null;
     }
 
     public String getId() {
@@ -85,14 +94,10 @@ public class EfecteEntity {
     }
 
     private EfecteAttribute getAttributeById(EnumEfecteAttribute enumEfecteAttribute) throws Exception {
-        EfecteAttribute efecteAttribute = attributes.stream()
-                .filter(attribute -> attribute.getId().equals(enumEfecteAttribute.getId()))
-                .findFirst()
-                .orElse(null);
+        EfecteAttribute efecteAttribute = getAttributesById().get(enumEfecteAttribute.getId());
 
         if (efecteAttribute == null) {
-            if (enumEfecteAttribute.getId()
-                    .equals(EnumEfecteAttribute.KEY_SECURITY_ACCESS.getId())) {
+            if (enumEfecteAttribute == EnumEfecteAttribute.KEY_SECURITY_ACCESS) {
                 return null;
             } else {
                 throw new Exception("EfecteEntity.getAttributeById: No attribute found for '"
@@ -103,6 +108,30 @@ public class EfecteEntity {
         return efecteAttribute;
     }
 
+    private Map<String, EfecteAttribute> getAttributesById() {
+        AttributeIndex index = attributeIndex;
+        int modificationCount = attributes == null ? 0 : attributes.getModificationCount();
+
+        if (index != null && index.attributes() == attributes && index.modificationCount() == modificationCount) {
+            return index.attributesById();
+        }
+
+        Map<String, EfecteAttribute> attributesById = new HashMap<>();
+
+        if (attributes != null) {
+            // The first attribute with an id wins, like in a linear search
+            for (EfecteAttribute attribute : attributes) {
+                if (attribute.getId() != null) {
+                    attributesById.putIfAbsent(attribute.getId(), attribute);
+                }
+            }
+        }
+
+        attributeIndex = new AttributeIndex(attributes, modificationCount, attributesById);
+
+        return attributesById;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -138,4 +167,29 @@ public class EfecteEntity {
 
         return objectMapper.writeValueAsString(this);
     }
+
+    // Immutable, so that an entity read by several threads never exposes a partially built index
+    private record AttributeIndex(AttributeList attributes, int modificationCount,
+            Map<String, EfecteAttribute> attributesById) {
+    }
+
+    // Counts every change to the list. ArrayList counts the changes of its size, also through its iterators and sub
+    // lists, and replacing an attribute is counted here.
+    private static class AttributeList extends ArrayList<EfecteAttribute> {
+
+        AttributeList(Collection<EfecteAttribute> attributes) {
+            super(attributes);
+        }
+
+        @Override
+        public EfecteAttribute set(int index, EfecteAttribute attribute) {
+            modCount++;
+            return super.set(index, attribute);
+        }
+
+        int getModificationCount() {
+            return modCount;
+        }
+
+    }
 }
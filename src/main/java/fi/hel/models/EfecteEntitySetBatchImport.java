@@ -0,0 +1,39 @@
+package fi.hel.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+
+// An entity set with several entities, imported with a single dataCardImport request
+@JsonRootName(value = "entityset")
+public class EfecteEntitySetBatchImport {
+    @JacksonXmlProperty(localName = "entity")
+    @JacksonXmlElementWrapper(useWrapping = false)
+    private List<EfecteEntityImport> entities = new ArrayList<>();
+
+    public EfecteEntitySetBatchImport() {
+    }
+
+    public EfecteEntitySetBatchImport(List<EfecteEntityImport> entities) {
+        this.entities = entities;
+    }
+
+    public List<EfecteEntityImport> getEntities() {
+        return this.entities;
+    }
+
+    public void setEntities(List<EfecteEntityImport> entities) {
+        this.entities = entities;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.JSON_STYLE);
+    }
+}
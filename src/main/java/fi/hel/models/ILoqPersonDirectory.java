@@ -0,0 +1,64 @@
+package fi.hel.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+public class ILoqPersonDirectory {
+    private long refreshedAt;
+    // Normalized "firstname|lastname" -> iLOQ person ids
+    private Map<String, List<String>> persons = new HashMap<>();
+
+    public ILoqPersonDirectory() {
+    }
+
+    public ILoqPersonDirectory(long refreshedAt) {
+        this.refreshedAt = refreshedAt;
+    }
+
+    public long getRefreshedAt() {
+        return this.refreshedAt;
+    }
+
+    public void setRefreshedAt(long refreshedAt) {
+        this.refreshedAt = refreshedAt;
+    }
+
+    public Map<String, List<String>> getPersons() {
+        return this.persons;
+    }
+
+    public void setPersons(Map<String, List<String>> persons) {
+        this.persons = persons;
+    }
+
+    public void addPerson(String personId, String firstName, String lastName) {
+        List<String> personIds = this.persons.computeIfAbsent(createNameKey(firstName, lastName),
+                key -> new ArrayList<>());
+
+        if (!personIds.contains(personId)) {
+            personIds.add(personId);
+        }
+    }
+
+    public List<String> findPersonIds(String firstName, String lastName) {
+        return this.persons.getOrDefault(createNameKey(firstName, lastName), List.of());
+    }
+
+    public static String createNameKey(String firstName, String lastName) {
+        return normalize(firstName) + "|" + normalize(lastName);
+    }
+
+    private static String normalize(String str) {
+        return str == null ? "" : str.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.JSON_STYLE);
+    }
+}
@@ -0,0 +1,78 @@
+package fi.hel.models;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+public class ILoqSession {
+    private String customerCode;
+    private String baseUrl;
+    private String sessionId;
+    private String lockGroupId;
+    private long createdAt;
+    private long lastUsedAt;
+
+    public ILoqSession() {
+    }
+
+    public ILoqSession(String customerCode, String baseUrl, String sessionId, String lockGroupId, long createdAt) {
+        this.customerCode = customerCode;
+        this.baseUrl = baseUrl;
+        this.sessionId = sessionId;
+        this.lockGroupId = lockGroupId;
+        this.createdAt = createdAt;
+        this.lastUsedAt = createdAt;
+    }
+
+    public String getCustomerCode() {
+        return this.customerCode;
+    }
+
+    public void setCustomerCode(String customerCode) {
+        this.customerCode = customerCode;
+    }
+
+    public String getBaseUrl() {
+        return this.baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public String getSessionId() {
+        return this.sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getLockGroupId() {
+        return this.lockGroupId;
+    }
+
+    public void setLockGroupId(String lockGroupId) {
+        this.lockGroupId = lockGroupId;
+    }
+
+    public long getCreatedAt() {
+        return this.createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public long getLastUsedAt() {
+        return this.lastUsedAt;
+    }
+
+    public void setLastUsedAt(long lastUsedAt) {
+        this.lastUsedAt = lastUsedAt;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.JSON_STYLE);
+    }
+}
@@ -279,7 +279,6 @@ public class EfecteEntityBuilder {
         efecteEntity.setId(id);
         efecteEntity.setName(name);
         efecteEntity.setTemplate(template);
-        efecteEntity.setAttributes(attributes);
 
         // KEY
         addAttributeIfNotNull(efecteId);
@@ -297,6 +296,8 @@ public class EfecteEntityBuilder {
         addAttributeIfNotNull(firstName);
         addAttributeIfNotNull(lastName);
 
+        efecteEntity.setAttributes(attributes);
+
         return efecteEntity;
     }
 
@@ -51,11 +51,13 @@ public enum EnumEfecteAttribute {
         return this.code;
     }
 
+    // The profile does not change while the application is running, so it is read from the config only once
     public String getId() {
-        if (ConfigProvider.getConfig().getConfigValue("QUARKUS_PROFILE").getValue().equals("production")) {
-            return idProd;
-        } else {
-            return idDev;
-        }
+        return Profile.PRODUCTION ? idProd : idDev;
+    }
+
+    private static final class Profile {
+        private static final boolean PRODUCTION = "production"
+                .equals(ConfigProvider.getConfig().getConfigValue("QUARKUS_PROFILE").getValue());
     }
 }
@@ -20,7 +20,8 @@ public class AuditExceptionProcessor {
     @ConfigProperty(name = "AUDIT_EXCEPTION_EXPIRATION_SECONDS")
     long auditExceptionExpirationTime;
 
-    private AuditExceptionRecord auditExceptionRecord;
+    // The record is thrown and handled in the same thread, which keeps parallel key processing from mixing records
+    private final ThreadLocal<AuditExceptionRecord> auditExceptionRecord = new ThreadLocal<>();
 
     public void setAuditRecord(Exchange ex) throws Exception {
         EnrichedILoqKey enrichedILoqKey = ex.getProperty("enrichedILoqKey", EnrichedILoqKey.class);
@@ -34,11 +35,12 @@ public class AuditExceptionProcessor {
         String realEstateId = enrichedILoqKey.getRealEstateId();
         String iLoqKeyId = enrichedILoqKey.getFnKeyId();
 
-        this.auditExceptionRecord.setILoqKey(enrichedILoqKey);
+        AuditExceptionRecord auditExceptionRecord = this.auditExceptionRecord.get();
+        auditExceptionRecord.setILoqKey(enrichedILoqKey);
         String prefix = ri.getAuditRecordKeyPrefix() + realEstateId + ":" + iLoqKeyId;
-        ri.getRedis().set(prefix, this.auditExceptionRecord.toJson());
+        ri.getRedis().set(prefix, auditExceptionRecord.toJson());
 
-        this.auditExceptionRecord = null;
+        this.auditExceptionRecord.remove();
     }
 
     public void throwAuditException(
@@ -48,9 +50,11 @@ public class AuditExceptionProcessor {
             String efecteId,
             String iLoqId,
             String message) throws Exception {
-        this.auditExceptionRecord = new AuditExceptionRecord(from, to, entityId, efecteId, iLoqId, message);
+        AuditExceptionRecord auditExceptionRecord = new AuditExceptionRecord(from, to, entityId, efecteId, iLoqId,
+                message);
+        this.auditExceptionRecord.set(auditExceptionRecord);
 
-        throw new AuditException(this.auditExceptionRecord.toJson());
+        throw new AuditException(auditExceptionRecord.toJson());
     }
 
 }
@@ -0,0 +1,157 @@
+package fi.hel.processors;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import fi.hel.models.EfecteEntityIdentifier;
+import fi.hel.models.PreviousEfecteKey;
+
+// The compact format of the values that are read and written for every key on every run. A value starts with the
+// version header '~1|', followed by its fields in a fixed order. A field is written as '-' when it is null, or as its
+// length, ':' and its characters, so nothing needs to be escaped.
+//
+// EfecteEntityIdentifier: entityId, efecteId, outsiderName, outsiderEmail
+// PreviousEfecteKey: state, validityDate, securityAccesses. The security accesses are written as '-' when null, or
+// as their count, '#' and the sorted ids as fields.
+final class CompactRedisValues {
+
+    static final String VERSION_1 = "~1|";
+
+    private CompactRedisValues() {
+    }
+
+    // The JSON values always start with '{', so the formats can not be mixed up
+    static boolean isCompact(String value) {
+        return value != null && value.startsWith("~");
+    }
+
+    static boolean isSupported(Object obj) {
+        return obj instanceof EfecteEntityIdentifier || obj instanceof PreviousEfecteKey;
+    }
+
+    static String encode(Object obj) {
+        StringBuilder sb = new StringBuilder(VERSION_1);
+
+        if (obj instanceof EfecteEntityIdentifier identifier) {
+            appendField(sb, identifier.getEntityId());
+            appendField(sb, identifier.getEfecteId());
+            appendField(sb, identifier.getOutsiderName());
+            appendField(sb, identifier.getOutsiderEmail());
+        } else if (obj instanceof PreviousEfecteKey previousEfecteKey) {
+            appendField(sb, previousEfecteKey.getState());
+            appendField(sb, previousEfecteKey.getValidityDate());
+            appendSet(sb, previousEfecteKey.getSecurityAccesses());
+        } else {
+            throw new IllegalArgumentException("No compact format for " + obj.getClass().getSimpleName());
+        }
+
+        return sb.toString();
+    }
+
+    static <T> T decode(String value, Class<T> valueType) {
+        if (!value.startsWith(VERSION_1)) {
+            throw new IllegalArgumentException("Unsupported version of a compact value: " + value);
+        }
+
+        try {
+            Reader reader = new Reader(value);
+            Object result;
+
+            if (valueType == EfecteEntityIdentifier.class) {
+                EfecteEntityIdentifier identifier = new EfecteEntityIdentifier();
+                identifier.setEntityId(reader.readField());
+                identifier.setEfecteId(reader.readField());
+                identifier.setOutsiderName(reader.readField());
+                identifier.setOutsiderEmail(reader.readField());
+                result = identifier;
+            } else if (valueType == PreviousEfecteKey.class) {
+                PreviousEfecteKey previousEfecteKey = new PreviousEfecteKey();
+                previousEfecteKey.setState(reader.readField());
+                previousEfecteKey.setValidityDate(reader.readField());
+                previousEfecteKey.setSecurityAccesses(reader.readSet());
+                result = previousEfecteKey;
+            } else {
+                throw new IllegalArgumentException("No compact format for " + valueType.getSimpleName());
+            }
+
+            reader.expectEnd();
+
+            return valueType.cast(result);
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed compact value: " + value, e);
+        }
+    }
+
+    private static void appendField(StringBuilder sb, String field) {
+        if (field == null) {
+            sb.append('-');
+        } else {
+            sb.append(field.length()).append(':').append(field);
+        }
+    }
+
+    // The ids are sorted, so an unchanged set is always written the same way
+    private static void appendSet(StringBuilder sb, Set<String> members) {
+        if (members == null) {
+            sb.append('-');
+            return;
+        }
+
+        sb.append(members.size()).append('#');
+
+        for (String member : new TreeSet<>(members)) {
+            appendField(sb, member);
+        }
+    }
+
+    private static class Reader {
+
+        private final String value;
+        private int position = VERSION_1.length();
+
+        Reader(String value) {
+            this.value = value;
+        }
+
+        String readField() {
+            if (value.charAt(position) == '-') {
+                position++;
+                return null;
+            }
+
+            int separator = value.indexOf(':', position);
+            int length = Integer.parseInt(value, position, separator, 10);
+            position = separator + 1 + length;
+
+            return value.substring(separator + 1, position);
+        }
+
+        Set<String> readSet() {
+            if (value.charAt(position) == '-') {
+                position++;
+                return null;
+            }
+
+            int separator = value.indexOf('#', position);
+            int count = Integer.parseInt(value, position, separator, 10);
+            position = separator + 1;
+
+            Set<String> members = new HashSet<>();
+
+            for (int i = 0; i < count; i++) {
+                members.add(readField());
+            }
+
+            return members;
+        }
+
+        void expectEnd() {
+            if (position != value.length()) {
+                throw new IllegalArgumentException("Malformed compact value: " + value);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,136 @@
+package fi.hel.processors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.ExchangeBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import fi.hel.models.EfecteEntityImport;
+import fi.hel.models.EfecteEntitySetBatchImport;
+import fi.hel.models.EfecteEntitySetImport;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named("efecteImportBatcher")
+public class EfecteImportBatcher {
+
+    private static final Logger LOG = Logger.getLogger(EfecteImportBatcher.class);
+    private static final Pattern ENTITIES_UPDATED = Pattern.compile("<entities-updated>(\\d+)</entities-updated>");
+
+    @Inject
+    ResourceInjector ri;
+    @ConfigProperty(name = "app.name")
+    String appName;
+    @ConfigProperty(name = "app.configuration.efecte.importBatchSize")
+    int importBatchSize;
+
+    // The key updates waiting to be imported, one batch per customer code scope. Each exchange is a copy of the
+    // handled key at the point where its Efecte key card would have been updated.
+    private final Map<String, List<Exchange>> pendingUpdates = new HashMap<>();
+
+    public void add(Exchange ex) throws Exception {
+        List<Exchange> batch;
+
+        synchronized (this) {
+            List<Exchange> pending = pendingUpdates.computeIfAbsent(
+                    ri.getCustomerCodeScope().getSlot(), slot -> new ArrayList<>());
+            pending.add(ex.copy());
+
+            if (pending.size() < importBatchSize) {
+                return;
+            }
+
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        importBatch(batch);
+    }
+
+    public void flush() throws Exception {
+        List<Exchange> batch;
+
+        synchronized (this) {
+            batch = pendingUpdates.remove(ri.getCustomerCodeScope().getSlot());
+        }
+
+        if (batch != null && !batch.isEmpty()) {
+            importBatch(batch);
+        }
+    }
+
+    // The updates left over by a failed run are dropped. Their keys have no digest saved, so the next run handles
+    // them again.
+    public synchronized void reset() {
+        List<Exchange> pending = pendingUpdates.remove(ri.getCustomerCodeScope().getSlot());
+
+        if (pending != null && !pending.isEmpty()) {
+            LOG.warnf("%s :: EfecteImportBatcher :: Dropped %d Efecte key card updates that were not imported",
+                    appName, pending.size());
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        List<Exchange> pending = pendingUpdates.get(ri.getCustomerCodeScope().getSlot());
+
+        return pending == null ? 0 : pending.size();
+    }
+
+    // The import report of Efecte only contains the totals of the whole entity set. When fewer entities than sent
+    // were updated, every update of the batch is sent again on its own, so that only the failing key cards end up
+    // in the audit records.
+    private void importBatch(List<Exchange> batch) throws Exception {
+        List<EfecteEntityImport> entities = new ArrayList<>();
+
+        for (Exchange pending : batch) {
+            entities.add(pending.getProperty("efectePayload", EfecteEntitySetImport.class).getEntity());
+        }
+
+        Exchange batchEx = new ExchangeBuilder(ri.getContext())
+                .withProperty("efecteEntityType", batch.get(0).getProperty("efecteEntityType"))
+                .withProperty("efecteOperation", "update")
+                .withProperty("efectePath", "/dataCardImport.ws")
+                .withProperty("efecteQuery", batch.get(0).getProperty("efecteQuery"))
+                .withProperty("efectePayload", new EfecteEntitySetBatchImport(entities))
+                .build();
+
+        ri.getTemplate().send(ri.getProcessEfecteImportBatchEndpointUri(), batchEx);
+
+        boolean imported = batchEx.getException() == null
+                && batchEx.getProperty(Exchange.EXCEPTION_CAUGHT) == null
+                && isFullyUpdated(batchEx.getIn().getBody(String.class), batch.size());
+
+        if (imported) {
+            LOG.infof("%s :: EfecteImportBatcher :: Updated %d Efecte key cards with a single request", appName,
+                    batch.size());
+        } else {
+            LOG.infof("%s :: EfecteImportBatcher :: Updating %d Efecte key cards with a single request failed, "
+                    + "sending the updates one at a time", appName, batch.size());
+        }
+
+        for (Exchange pending : batch) {
+            pending.setProperty("efecteImportFailed", !imported);
+            ri.getTemplate().send(ri.getCompleteEfecteKeyUpdateEndpointUri(), pending);
+        }
+    }
+
+    private boolean isFullyUpdated(String importReport, int entityCount) {
+        if (importReport == null || importReport.contains("<error>")) {
+            return false;
+        }
+
+        Matcher matcher = ENTITIES_UPDATED.matcher(importReport);
+
+        return matcher.find() && Integer.parseInt(matcher.group(1)) == entityCount;
+    }
+
+}
@@ -1,13 +1,24 @@
 package fi.hel.processors;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.builder.ExchangeBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import fi.hel.models.EfecteAttribute;
 import fi.hel.models.EfecteEntity;
 import fi.hel.models.EfecteEntityIdentifier;
 import fi.hel.models.EfecteEntitySetImport;
@@ -20,6 +31,7 @@ import fi.hel.models.PreviousEfecteKey;
 import fi.hel.models.builders.EfecteEntityBuilder;
 import fi.hel.models.enumerations.EnumEfecteAttribute;
 import fi.hel.models.enumerations.EnumEfecteKeyState;
+import fi.hel.resolvers.UnmappedEfecteKeyIndex;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
@@ -30,10 +42,17 @@ public class EfecteKeyProcessor {
 
     @Inject
     ResourceInjector ri;
-
-    private String currentILoqRealEstateId;
-    private String currentEfecteAddress;
-    private List<EfecteEntity> efecteKeys;
+    @ConfigProperty(name = "app.configuration.efecte.skipProcessedVersions")
+    boolean skipProcessedVersions;
+    @ConfigProperty(name = "app.configuration.efecte.keyDigestExpirationSeconds")
+    long keyDigestExpirationSeconds;
+    @ConfigProperty(name = "app.configuration.efecte.keyQueryMaxLength")
+    int keyQueryMaxLength;
+
+    // Keyed by the iLOQ real estate id. The keys of one real estate are always handled by a single thread, even when the real estates are processed in parallel.
+    private Map<String, String> efecteAddresses = new ConcurrentHashMap<>();
+    // The unmapped key cards, keyed by the Efecte address
+    private Map<String, UnmappedEfecteKeyIndex> unmappedEfecteKeys = new ConcurrentHashMap<>();
 
     ////////////////////
     // Efecte -> iLOQ //
@@ -66,6 +85,35 @@ public class EfecteKeyProcessor {
         previousEfecteKey.setState(EnumEfecteKeyState.AKTIIVINEN.getName());
     }
 
+    // The maxUpdated query has a precision of a minute, so the key cards updated during the last minute of the
+    // previous poll are listed again. The same key cards are also received from the webhook. A key card is skipped
+    // when neither the key card nor its previous key infos have changed since it was last processed.
+    public boolean isProcessedVersion(Exchange ex) throws Exception {
+        if (!skipProcessedVersions) {
+            return false;
+        }
+
+        EfecteEntity efecteKey = ex.getProperty("efecteKey", EfecteEntity.class);
+        String efecteKeyEfecteId = ex.getProperty("efecteKeyEfecteId", String.class);
+        String previousDigest = ri.getRedisWriteBuffer().get(ri.getKeyDigestEfectePrefix() + efecteKeyEfecteId);
+
+        return previousDigest != null && previousDigest.equals(createKeyDigest(efecteKey, efecteKeyEfecteId));
+    }
+
+    public void saveProcessedVersion(Exchange ex) throws Exception {
+        if (!skipProcessedVersions) {
+            return;
+        }
+
+        EfecteEntity efecteKey = ex.getProperty("efecteKey", EfecteEntity.class);
+        String efecteKeyEfecteId = ex.getProperty("efecteKeyEfecteId", String.class);
+
+        ri.getRedisWriteBuffer().setex(
+                ri.getKeyDigestEfectePrefix() + efecteKeyEfecteId,
+                createKeyDigest(efecteKey, efecteKeyEfecteId),
+                keyDigestExpirationSeconds);
+    }
+
     private boolean hasInvalidKeyType(EfecteEntity efecteEntity) throws Exception {
         String efeceKeyType = efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_TYPE);
 
@@ -124,19 +172,19 @@ public class EfecteKeyProcessor {
 
         String iLoqKeyInfoText = enrichedILoqKey.getInfoText();
         String efecteKeyEfecteId = null;
-        String efecteEntityIdentifierJson = ri.getRedis().get(ri.getMappedKeyILoqPrefix() + iLoqKeyId);
-        Set<String> previousILoqKeySecurityAccesses = ri.getRedis().getSet(ri.getPreviousKeyILoqPrefix() + iLoqKeyId);
+        String efecteEntityIdentifierJson = ri.getRedisWriteBuffer().get(ri.getMappedKeyILoqPrefix() + iLoqKeyId);
+        Set<String> previousILoqKeySecurityAccesses = ri.getRedisWriteBuffer().getSet(ri.getPreviousKeyILoqPrefix() + iLoqKeyId);
 
         if (isMissing(iLoqKeyInfoText) && isMissing(efecteEntityIdentifierJson)) {
             // Key is not previously mapped
-            if (!realEstateId.equals(this.currentILoqRealEstateId)) {
+            if (!efecteAddresses.containsKey(realEstateId)) {
                 initKeyProcessorVariables(realEstateId);
             }
 
             EfecteEntity equalEfecteKey = ri.getEfecteKeyResolver().buildEqualEfecteKey(enrichedILoqKey,
-                    this.currentEfecteAddress);
-            EfecteEntity foundMatchingKey = ri.getEfecteKeyResolver().findMatchingEfecteKey(
-                    equalEfecteKey, efecteKeys);
+                    efecteAddresses.get(realEstateId));
+            EfecteEntity foundMatchingKey = ri.getEfecteKeyResolver().claimMatchingEfecteKey(
+                    equalEfecteKey, unmappedEfecteKeys.get(efecteAddresses.get(realEstateId)));
 
             if (foundMatchingKey == null) {
                 System.out.println(
@@ -200,7 +248,7 @@ public class EfecteKeyProcessor {
                         ri.getEfecteKeyResolver()
                                 .getNewEfecteSecurityAccessEntityIds(enrichedILoqKey.getSecurityAccesses()));
 
-                String previousEfecteKeyJson = ri.getRedis().get(ri.getPreviousKeyEfectePrefix() + efecteKeyEfecteId);
+                String previousEfecteKeyJson = ri.getRedisWriteBuffer().get(ri.getPreviousKeyEfectePrefix() + efecteKeyEfecteId);
                 PreviousEfecteKey previousEfecteKey = null;
 
                 if (previousEfecteKeyJson != null) {
@@ -239,9 +287,8 @@ public class EfecteKeyProcessor {
     }
 
     public void resetCache() {
-        this.currentILoqRealEstateId = null;
-        this.currentEfecteAddress = null;
-        this.efecteKeys = null;
+        this.efecteAddresses.clear();
+        this.unmappedEfecteKeys.clear();
     }
 
     private boolean isMissing(String value) {
@@ -249,41 +296,133 @@ public class EfecteKeyProcessor {
     }
 
     private void initKeyProcessorVariables(String realEstateId) throws Exception {
-        this.currentILoqRealEstateId = realEstateId;
-        this.currentEfecteAddress = ri.getConfigProvider()
+        String efecteAddress = ri.getConfigProvider()
                 .getEfecteAddressNameByILoqRealEstateId(realEstateId);
-        this.efecteKeys = listUnmappedEfecteKeysByAddress(currentEfecteAddress);
+
+        if (!this.unmappedEfecteKeys.containsKey(efecteAddress)) {
+            loadUnmappedEfecteKeys(efecteAddress);
+        }
+
+        this.efecteAddresses.put(realEstateId, efecteAddress);
+    }
+
+    // The unmapped key cards of all the configured addresses of the customer code are listed when the first of them
+    // is needed, with as many addresses per query as fit in keyQueryMaxLength
+    private synchronized void loadUnmappedEfecteKeys(String efecteAddress) throws Exception {
+        if (this.unmappedEfecteKeys.containsKey(efecteAddress)) {
+            return;
+        }
+
+        Set<String> addresses = new LinkedHashSet<>();
+        addresses.add(efecteAddress);
+
+        for (String configuredRealEstateId : ri.getConfigProvider().getConfiguredILoqRealEstateIds()) {
+            String configuredAddress = ri.getConfigProvider()
+                    .getEfecteAddressNameByILoqRealEstateId(configuredRealEstateId);
+
+            if (configuredAddress != null && !this.unmappedEfecteKeys.containsKey(configuredAddress)) {
+                addresses.add(configuredAddress);
+            }
+        }
+
+        Map<String, List<EfecteEntity>> efecteKeysByAddress = new HashMap<>();
+        Map<String, String> addressConditions = new LinkedHashMap<>();
+
+        for (String address : addresses) {
+            efecteKeysByAddress.put(address, new ArrayList<>());
+            addressConditions.put(address,
+                    "$avain_katuosoite$ = '%s'".formatted(ri.getHelper().urlEncode(address)));
+        }
+
+        int queryLength = createUnmappedEfecteKeysQuery("()").length();
+        Map<String, String> chunk = new LinkedHashMap<>();
+        int chunkLength = queryLength;
+
+        for (Map.Entry<String, String> addressCondition : addressConditions.entrySet()) {
+            int conditionLength = addressCondition.getValue().length() + " OR ".length();
+
+            if (!chunk.isEmpty() && chunkLength + conditionLength > keyQueryMaxLength) {
+                addUnmappedEfecteKeys(chunk, efecteKeysByAddress);
+                chunk.clear();
+                chunkLength = queryLength;
+            }
+
+            chunk.put(addressCondition.getKey(), addressCondition.getValue());
+            chunkLength += conditionLength;
+        }
+
+        addUnmappedEfecteKeys(chunk, efecteKeysByAddress);
+
+        efecteKeysByAddress.forEach((address, addressKeys) -> this.unmappedEfecteKeys.put(
+                address, new UnmappedEfecteKeyIndex(addressKeys)));
+    }
+
+    private void addUnmappedEfecteKeys(Map<String, String> addressConditions,
+            Map<String, List<EfecteEntity>> efecteKeysByAddress) throws Exception {
+        List<EfecteEntity> efecteKeys = listUnmappedEfecteKeysByAddresses(addressConditions.values());
+
+        if (efecteKeys == null) {
+            return;
+        }
+
+        // The key cards of a query with a single address all belong to it
+        String onlyAddress = addressConditions.size() == 1 ? addressConditions.keySet().iterator().next() : null;
+
+        for (EfecteEntity efecteKey : efecteKeys) {
+            String address = onlyAddress != null ? onlyAddress : getStreetAddressName(efecteKey);
+            List<EfecteEntity> addressKeys = efecteKeysByAddress.get(address);
+
+            if (addressKeys != null) {
+                addressKeys.add(efecteKey);
+            }
+        }
+    }
+
+    private String getStreetAddressName(EfecteEntity efecteKey) {
+        try {
+            return efecteKey.getAttributeReferences(EnumEfecteAttribute.KEY_STREET_ADDRESS).get(0).getName();
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     @SuppressWarnings("unchecked")
-    private List<EfecteEntity> listUnmappedEfecteKeysByAddress(String efecteStreetAddress) throws Exception {
-        String efecteQuery = """
-                SELECT entity
-                FROM entity
-                WHERE
-                    template.code = 'avain'
-                    AND $avain_tyyppi$ = 'iLOQ'
-                    AND $avain_katuosoite$ = '%s'
-                    AND $avain_external_id$ IS NULL
-                """
-                .formatted(ri.getHelper().urlEncode(efecteStreetAddress))
-                .replaceAll("\\s+", " ")
-                .trim();
+    private List<EfecteEntity> listUnmappedEfecteKeysByAddresses(Collection<String> addressConditions)
+            throws Exception {
+        String addressCondition = addressConditions.size() == 1
+                ? addressConditions.iterator().next()
+                : "(" + String.join(" OR ", addressConditions) + ")";
 
         Exchange ex = new ExchangeBuilder(ri.getContext())
                 .withProperty("efecteEntityType", "key")
-                .withProperty("efecteQuery", efecteQuery)
+                .withProperty("efecteQuery", createUnmappedEfecteKeysQuery(addressCondition))
                 .build();
 
         ri.getTemplate().send(ri.getGetEfecteEntityEndpointUri(), ex);
 
         if (ex.getProperty(Exchange.EXCEPTION_CAUGHT) != null) {
-            throw new Exception("EfecteKeyProcessor.listUnmappedEfecteKeysByAddress: Fetching all Efecte keys failed");
+            throw new Exception(
+                    "EfecteKeyProcessor.listUnmappedEfecteKeysByAddresses: Fetching all Efecte keys failed");
         }
 
         return ex.getIn().getBody(List.class);
     }
 
+    private String createUnmappedEfecteKeysQuery(String addressCondition) {
+        return """
+                SELECT entity
+                FROM entity
+                WHERE
+                    template.code = 'avain'
+                    AND $avain_tyyppi$ = 'iLOQ'
+                    AND %s
+                    AND $avain_external_id$ IS NULL
+                """
+                .formatted(addressCondition)
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+
     private Set<String> getNewILoqSecurityAccessIds(Set<ILoqSecurityAccess> iLoqSecurityAccesses) {
         return iLoqSecurityAccesses.stream()
                 .map(sa -> sa.getSecurityAccessId())
@@ -298,13 +437,15 @@ public class EfecteKeyProcessor {
         String entityId = efecteKey.getId();
         String efecteId = efecteKey.getAttributeValue(EnumEfecteAttribute.KEY_EFECTE_ID);
         EfecteEntityIdentifier efecteEntityKeyIdentifier = new EfecteEntityIdentifier(entityId, efecteId);
-        String efecteEntityIdentifierJson = ri.getHelper().writeAsJson(efecteEntityKeyIdentifier);
+        String efecteEntityIdentifierJson = ri.getHelper().writeAsRedisValue(efecteEntityKeyIdentifier);
 
         String efecteKeyPrefix = ri.getMappedKeyEfectePrefix() + efecteId;
         String iLoqKeyPrefix = ri.getMappedKeyILoqPrefix() + iLoqKeyId;
 
-        ri.getRedis().set(efecteKeyPrefix, iLoqKeyId);
-        ri.getRedis().set(iLoqKeyPrefix, efecteEntityIdentifierJson);
+        Map<String, String> mappedKeys = new LinkedHashMap<>();
+        mappedKeys.put(efecteKeyPrefix, iLoqKeyId);
+        mappedKeys.put(iLoqKeyPrefix, efecteEntityIdentifierJson);
+        ri.getRedisWriteBuffer().setAllNow(mappedKeys);
 
         // If the key has an outsider as owner, we need to save the mapped keys for the person as well
         if (keyIsForOutsider(efecteKey)) {
@@ -318,12 +459,11 @@ public class EfecteKeyProcessor {
             String uniqueIdentifier = ri.getHelper().createIdentifier(outsiderEmail, outsiderName);
 
             String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
-            String efectePersonPrefix = ri.getMappedPersonEfectePrefix() + cc + ":" + uniqueIdentifier;
-            String iLoqPersonPrefix = ri.getMappedPersonILoqPrefix() + cc + ":" + iLoqPersonId;
-            String efecteEntityPersonIdentifierJson = ri.getHelper().writeAsJson(efecteEntityPersonIdentifier);
+            String efecteEntityPersonIdentifierJson = ri.getHelper().writeAsRedisValue(efecteEntityPersonIdentifier);
 
-            ri.getRedis().set(efectePersonPrefix, iLoqPersonId);
-            ri.getRedis().set(iLoqPersonPrefix, efecteEntityPersonIdentifierJson);
+            ri.getPersonMappingStore().set(ri.getMappedPersonEfectePrefix(), cc, uniqueIdentifier, iLoqPersonId);
+            ri.getPersonMappingStore().set(ri.getMappedPersonILoqPrefix(), cc, iLoqPersonId,
+                    efecteEntityPersonIdentifierJson);
         }
     }
 
@@ -334,4 +474,43 @@ public class EfecteKeyProcessor {
 
         return false;
     }
+
+    // Only the key attributes known by the integration are digested, as the webhook payload contains more attributes
+    // than the search responses. The update time is left out, so that the key cards updated by the integration itself
+    // are skipped as well once nothing else has changed. The previous key infos are updated by both directions.
+    private String createKeyDigest(EfecteEntity efecteKey, String efecteKeyEfecteId) throws Exception {
+        Set<String> keyAttributeIds = new HashSet<>();
+
+        for (EnumEfecteAttribute attribute : EnumEfecteAttribute.values()) {
+            if (attribute.name().startsWith("KEY_") && attribute != EnumEfecteAttribute.KEY_UPDATED) {
+                keyAttributeIds.add(attribute.getId());
+            }
+        }
+
+        Map<String, String> keyAttributes = new TreeMap<>();
+
+        if (efecteKey.getAttributes() != null) {
+            for (EfecteAttribute attribute : efecteKey.getAttributes()) {
+                if (keyAttributeIds.contains(attribute.getId())) {
+                    keyAttributes.putIfAbsent(attribute.getId(), digestAttribute(attribute));
+                }
+            }
+        }
+
+        String previousEfecteKeyJson = ri.getRedisWriteBuffer().get(ri.getPreviousKeyEfectePrefix() + efecteKeyEfecteId);
+
+        return ri.getHelper().createHashFromJson(
+                efecteKey.getId() + ":" + keyAttributes + ":" + Objects.toString(previousEfecteKeyJson, ""));
+    }
+
+    private String digestAttribute(EfecteAttribute attribute) {
+        String references = attribute.getReferences() == null
+                ? ""
+                : attribute.getReferences().stream()
+                        .map(EfecteReference::getId)
+                        .sorted()
+                        .collect(Collectors.joining(","));
+
+        return Objects.toString(attribute.getValue(), "") + "|" + references;
+    }
 }
@@ -0,0 +1,192 @@
+package fi.hel.processors;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.ExchangeBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import fi.hel.models.EfecteEntity;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named("efecteSearchPager")
+@SuppressWarnings("unchecked")
+public class EfecteSearchPager {
+
+    private static final Logger LOG = Logger.getLogger(EfecteSearchPager.class);
+
+    @Inject
+    ResourceInjector ri;
+    @Inject
+    @Named("efecteSearchPageExecutor")
+    ExecutorService executor;
+    @ConfigProperty(name = "app.name")
+    String appName;
+    @ConfigProperty(name = "app.configuration.efecte.searchPageSize")
+    int searchPageSize;
+
+    // Limits the search of the exchange to its first page. The search is not paged when the page size is below 1.
+    //
+    // The pages are fetched by offset, so the query must be ordered by a unique key, e.g. '$avain_katuosoite$,
+    // entity.id'. With ties in the order the database may return them in a different order for each page, and an
+    // entity could be returned on two pages. Such an entity is only handled on the first page it was returned on.
+    public void setFirstPage(Exchange ex) {
+        ex.removeProperty("efecteSearchNextPage");
+        ex.removeProperty("efecteSearchHandledIds");
+
+        if (searchPageSize < 1) {
+            ex.removeProperty("efecteSearchFirstResult");
+            ex.removeProperty("efecteSearchMaxResults");
+            return;
+        }
+
+        ex.setProperty("efecteSearchFirstResult", 0);
+        ex.setProperty("efecteSearchMaxResults", searchPageSize);
+    }
+
+    // Starts fetching the page after the one in the body, so that it is ready by the time the current page has been
+    // handled. Only a single page is fetched ahead.
+    public void prefetchNextPage(Exchange ex) {
+        ex.removeProperty("efecteSearchNextPage");
+        Integer firstResult = ex.getProperty("efecteSearchFirstResult", Integer.class);
+        Integer maxResults = ex.getProperty("efecteSearchMaxResults", Integer.class);
+        List<EfecteEntity> page = getPage(ex);
+
+        if (firstResult == null || maxResults == null) {
+            return;
+        }
+
+        rememberHandledIds(ex, page);
+
+        if (page.size() < maxResults) {
+            return;
+        }
+
+        // A response larger than the page means that the paging parameters were not applied, the whole result set
+        // has then been received already
+        if (page.size() > maxResults) {
+            LOG.warnf("%s :: EfecteSearchPager :: Efecte returned %d entities for a page of %d, the search is not "
+                    + "paged", appName, page.size(), maxResults);
+            return;
+        }
+
+        int nextFirstResult = firstResult + maxResults;
+        String firstEntityId = page.get(0).getId();
+        String efecteEntityType = ex.getProperty("efecteEntityType", String.class);
+        String efecteQuery = ex.getProperty("efecteQuery", String.class);
+
+        ex.setProperty("efecteSearchNextPage", executor.submit(
+                () -> fetchPage(efecteEntityType, efecteQuery, nextFirstResult, maxResults, firstEntityId)));
+    }
+
+    public boolean hasNextPage(Exchange ex) {
+        return ex.getProperty("efecteSearchNextPage") != null;
+    }
+
+    // Replaces the body with the prefetched next page and starts fetching the page after it
+    public void nextPage(Exchange ex) throws Exception {
+        Future<List<EfecteEntity>> nextPage = ex.getProperty("efecteSearchNextPage", Future.class);
+        List<EfecteEntity> page;
+
+        try {
+            page = nextPage.get();
+        } catch (ExecutionException e) {
+            ex.removeProperty("efecteSearchNextPage");
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+
+        int firstResult = ex.getProperty("efecteSearchFirstResult", Integer.class)
+                + ex.getProperty("efecteSearchMaxResults", Integer.class);
+
+        LOG.infof("%s :: EfecteSearchPager :: Handling the next page of %d Efecte entities (first result: %d)",
+                appName, page.size(), firstResult);
+
+        List<EfecteEntity> unhandledEntities = removeHandledEntities(ex, page);
+
+        ex.setProperty("efecteSearchFirstResult", firstResult);
+        ex.getIn().setBody(page);
+        // The next page is decided by the size of the whole page
+        prefetchNextPage(ex);
+        ex.getIn().setBody(unhandledEntities);
+    }
+
+    private List<EfecteEntity> fetchPage(String efecteEntityType, String efecteQuery, int firstResult,
+            int maxResults, String previousFirstEntityId) throws Exception {
+        Exchange pageEx = new ExchangeBuilder(ri.getContext())
+                .withProperty("efecteEntityType", efecteEntityType)
+                .withProperty("efecteQuery", efecteQuery)
+                .withProperty("efecteSearchFirstResult", firstResult)
+                .withProperty("efecteSearchMaxResults", maxResults)
+                .build();
+
+        ri.getTemplate().send(ri.getGetEfecteEntityEndpointUri(), pageEx);
+
+        if (pageEx.getException() != null) {
+            throw pageEx.getException();
+        }
+
+        List<EfecteEntity> page = getPage(pageEx);
+
+        // The same page again means that the paging parameters were not applied
+        if (!page.isEmpty() && page.get(0).getId() != null && page.get(0).getId().equals(previousFirstEntityId)) {
+            LOG.warnf("%s :: EfecteSearchPager :: Efecte returned the same page again, the search is not paged",
+                    appName);
+            return new ArrayList<>();
+        }
+
+        return page;
+    }
+
+    private void rememberHandledIds(Exchange ex, List<EfecteEntity> page) {
+        Set<String> handledIds = ex.getProperty("efecteSearchHandledIds", Set.class);
+
+        if (handledIds == null) {
+            handledIds = new HashSet<>();
+            ex.setProperty("efecteSearchHandledIds", handledIds);
+        }
+
+        for (EfecteEntity entity : page) {
+            handledIds.add(entity.getId());
+        }
+    }
+
+    private List<EfecteEntity> removeHandledEntities(Exchange ex, List<EfecteEntity> page) {
+        Set<String> handledIds = ex.getProperty("efecteSearchHandledIds", Set.class);
+
+        if (handledIds == null) {
+            return page;
+        }
+
+        List<EfecteEntity> unhandledEntities = new ArrayList<>();
+
+        for (EfecteEntity entity : page) {
+            if (entity.getId() == null || !handledIds.contains(entity.getId())) {
+                unhandledEntities.add(entity);
+            }
+        }
+
+        if (unhandledEntities.size() < page.size()) {
+            LOG.warnf("%s :: EfecteSearchPager :: Skipping %d Efecte entities already returned on a previous page, "
+                    + "the order of the search is not unique", appName, page.size() - unhandledEntities.size());
+        }
+
+        return unhandledEntities;
+    }
+
+    private List<EfecteEntity> getPage(Exchange ex) {
+        Object body = ex.getIn().getBody();
+
+        return body instanceof List ? (List<EfecteEntity>) body : new ArrayList<>();
+    }
+
+}
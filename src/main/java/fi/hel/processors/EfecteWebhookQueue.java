@@ -0,0 +1,233 @@
+package fi.hel.processors;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.camel.Exchange;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import fi.hel.models.EfecteEntity;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.resps.StreamEntry;
+
+// The webhook events of Efecte are queued in a Redis Stream, so that any pod can accept them and the response does
+// not wait for the synchronization. The consumers of every pod read the stream as a single consumer group, so each
+// event is handled once. An event is acknowledged only after its key cards have been handled, and the events left
+// unacknowledged by a stopped pod are claimed by the other consumers.
+//
+// The events are only read after the leader route has been acquired, so waiting for the iLOQ run does not count as a
+// delivery. An unacknowledged event is claimed and handled on its own, so that an event failing every time does not
+// fail the events coalesced with it. An event that has been delivered maxDeliveries times, or can not be read at all,
+// is moved to the dead letter stream to be inspected, instead of blocking the queue.
+//
+// Efecte often sends several events for the same key card within seconds, so the events are coalesced: a batch is
+// read only after no event has arrived for coalesceWindowMilliseconds, or when the oldest event has waited for
+// coalesceMaxDelayMilliseconds. The key cards of the batch are then handled once in their latest version.
+@ApplicationScoped
+@Named("efecteWebhookQueue")
+@SuppressWarnings("unchecked")
+public class EfecteWebhookQueue {
+
+    private static final Logger LOG = Logger.getLogger(EfecteWebhookQueue.class);
+    private static final String BODY_FIELD = "body";
+
+    @Inject
+    ResourceInjector ri;
+    @ConfigProperty(name = "app.name")
+    String appName;
+    @ConfigProperty(name = "app.redis.prefix.webhookStream")
+    String stream;
+    @ConfigProperty(name = "app.redis.prefix.webhookDeadLetterStream")
+    String deadLetterStream;
+    @ConfigProperty(name = "app.configuration.efecte.webhookQueue.consumerGroup")
+    String consumerGroup;
+    @ConfigProperty(name = "app.configuration.efecte.webhookQueue.batchSize")
+    int batchSize;
+    @ConfigProperty(name = "app.configuration.efecte.webhookQueue.maxLength")
+    long maxLength;
+    @ConfigProperty(name = "app.configuration.efecte.webhookQueue.claimIdleSeconds")
+    long claimIdleSeconds;
+    @ConfigProperty(name = "app.configuration.efecte.webhookQueue.maxDeliveries")
+    int maxDeliveries;
+    @ConfigProperty(name = "app.configuration.efecte.webhookQueue.coalesceWindowMilliseconds")
+    long coalesceWindowMilliseconds;
+    @ConfigProperty(name = "app.configuration.efecte.webhookQueue.coalesceMaxDelayMilliseconds")
+    long coalesceMaxDelayMilliseconds;
+
+    // The pod name in Kubernetes
+    private final String consumer = System.getenv().getOrDefault("HOSTNAME", UUID.randomUUID().toString());
+
+    public void append(Exchange ex) throws Exception {
+        String body = ex.getIn().getBody(String.class);
+        String entryId = ri.getRedisCommands().appendToStream(stream, Map.of(BODY_FIELD, body), maxLength);
+
+        ex.setProperty("webhookEvent", stream + ":" + entryId);
+        LOG.infof("%s :: EfecteWebhookQueue :: Queued the Efecte event '%s'", appName, entryId);
+    }
+
+    // Whether there are events in the stream, either new or pending, so that the leader route is only acquired when
+    // there may be something to handle
+    public boolean hasQueuedEvents() {
+        return ri.getRedisCommands().getStreamLength(stream) > 0;
+    }
+
+    // Reads the next batch of events into a list of key cards. An event that a consumer did not acknowledge in time is
+    // taken first, as a batch of its own. When a key card is in several events of the batch, only its latest version
+    // is kept.
+    public void readBatch(Exchange ex) throws Exception {
+        // The group is created again if the stream has been removed
+        ri.getRedisCommands().createConsumerGroup(stream, consumerGroup);
+
+        List<StreamEntry> entries = ri.getRedisCommands().claimIdleEntries(stream, consumerGroup, consumer,
+                Duration.ofSeconds(claimIdleSeconds), 1);
+
+        if (!entries.isEmpty()) {
+            LOG.infof("%s :: EfecteWebhookQueue :: Claimed the unacknowledged Efecte event '%s'", appName,
+                    entries.get(0).getID());
+            entries = removeFailedEntries(entries);
+        }
+
+        if (entries.isEmpty()) {
+            if (!isCoalesced()) {
+                ex.setProperty("webhookQueueEntryIds", new ArrayList<StreamEntryID>());
+                ex.getIn().setBody(new ArrayList<EfecteEntity>());
+                return;
+            }
+
+            entries = ri.getRedisCommands().readFromConsumerGroup(stream, consumerGroup, consumer, batchSize);
+        }
+
+        Map<String, EfecteEntity> efecteEntities = new LinkedHashMap<>();
+        List<StreamEntryID> entryIds = new ArrayList<>();
+        List<StreamEntry> unreadableEntries = new ArrayList<>();
+
+        for (StreamEntry entry : entries) {
+            if (readEfecteEntities(entry, efecteEntities)) {
+                entryIds.add(entry.getID());
+            } else {
+                unreadableEntries.add(entry);
+            }
+        }
+
+        ri.getRedisCommands().moveToStream(stream, consumerGroup, unreadableEntries, deadLetterStream, maxLength,
+                "unreadable");
+
+        ex.setProperty("webhookQueueEntryIds", entryIds);
+        ex.getIn().setBody(new ArrayList<>(efecteEntities.values()));
+    }
+
+    public boolean hasEvents(Exchange ex) {
+        List<StreamEntryID> entryIds = ex.getProperty("webhookQueueEntryIds", List.class);
+
+        return entryIds != null && !entryIds.isEmpty();
+    }
+
+    public void acknowledge(Exchange ex) {
+        List<StreamEntryID> entryIds = ex.getProperty("webhookQueueEntryIds", List.class);
+
+        if (entryIds == null || entryIds.isEmpty()) {
+            return;
+        }
+
+        ri.getRedisCommands().acknowledge(stream, consumerGroup, entryIds);
+        LOG.infof("%s :: EfecteWebhookQueue :: Acknowledged %d Efecte events", appName, entryIds.size());
+    }
+
+    // The claimed events are read without waiting, as they have waited for claimIdleSeconds already. The age of the
+    // oldest event includes the events that another consumer is handling, so the maximum delay is an upper bound.
+    boolean isCoalesced() {
+        if (coalesceWindowMilliseconds <= 0) {
+            return true;
+        }
+
+        RedisCommands.StreamAge streamAge = ri.getRedisCommands().getStreamAge(stream);
+
+        if (streamAge == null) {
+            return false;
+        }
+
+        boolean isQuiet = streamAge.newestEntry().toMillis() >= coalesceWindowMilliseconds;
+        boolean isOverdue = streamAge.oldestEntry().toMillis() >= coalesceMaxDelayMilliseconds;
+
+        if (!isQuiet && !isOverdue) {
+            LOG.debugf("%s :: EfecteWebhookQueue :: Waiting for more Efecte events, the newest arrived %d ms ago",
+                    appName, streamAge.newestEntry().toMillis());
+        }
+
+        return isQuiet || isOverdue;
+    }
+
+    // The delivery count of a claimed event includes the claim, so an event is given up after it has been handled
+    // maxDeliveries times
+    private List<StreamEntry> removeFailedEntries(List<StreamEntry> entries) {
+        Map<StreamEntryID, Long> deliveryCounts = ri.getRedisCommands().getDeliveryCounts(stream, consumerGroup,
+                entries.stream().map(StreamEntry::getID).toList());
+        List<StreamEntry> remainingEntries = new ArrayList<>();
+        List<StreamEntry> failedEntries = new ArrayList<>();
+
+        for (StreamEntry entry : entries) {
+            long deliveryCount = deliveryCounts.getOrDefault(entry.getID(), 0L);
+
+            if (deliveryCount > maxDeliveries) {
+                LOG.errorf("%s :: EfecteWebhookQueue :: The Efecte event '%s' was not handled in %d deliveries, "
+                        + "moving it to '%s'", appName, entry.getID(), deliveryCount - 1, deadLetterStream);
+                failedEntries.add(entry);
+            } else {
+                remainingEntries.add(entry);
+            }
+        }
+
+        ri.getRedisCommands().moveToStream(stream, consumerGroup, failedEntries, deadLetterStream, maxLength,
+                "not handled in " + maxDeliveries + " deliveries");
+
+        return remainingEntries;
+    }
+
+    // An event that can not be read would fail every time. Its key cards are only added once the whole event has been
+    // read, and it is moved to the dead letter stream.
+    private boolean readEfecteEntities(StreamEntry entry, Map<String, EfecteEntity> efecteEntities) {
+        String body = entry.getFields() == null ? null : entry.getFields().get(BODY_FIELD);
+
+        if (body == null) {
+            LOG.errorf("%s :: EfecteWebhookQueue :: The Efecte event '%s' has no body, moving it to '%s'", appName,
+                    entry.getID(), deadLetterStream);
+            return false;
+        }
+
+        Map<String, EfecteEntity> eventEntities = new LinkedHashMap<>();
+
+        try {
+            ri.getEfecteEntityReader().readEfecteEntities(
+                    new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+                    efecteEntity -> {
+                        String key = efecteEntity.getId() != null
+                                ? efecteEntity.getId()
+                                : entry.getID() + ":" + eventEntities.size();
+                        eventEntities.remove(key);
+                        eventEntities.put(key, efecteEntity);
+                    });
+        } catch (Exception e) {
+            LOG.errorf("%s :: EfecteWebhookQueue :: Reading the Efecte event '%s' failed, moving it to '%s': %s",
+                    appName, entry.getID(), deadLetterStream, e.getMessage());
+            return false;
+        }
+
+        eventEntities.forEach((key, efecteEntity) -> {
+            efecteEntities.remove(key);
+            efecteEntities.put(key, efecteEntity);
+        });
+
+        return true;
+    }
+
+}
@@ -24,10 +24,16 @@ import jakarta.inject.Named;
 @ApplicationScoped
 @Named("helper")
 public class Helper {
+    // The mappers are thread safe once configured, so they are shared instead of created for every value
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final XmlMapper XML_MAPPER = new XmlMapper();
+
     @Inject
     Redis redis;
     @ConfigProperty(name = "app.redis.prefix.auditMessage")
     String auditMessagePrefix;
+    @ConfigProperty(name = "app.configuration.redis.compactValues")
+    boolean compactValues;
 
     public String createHashFromJson(String json) {
         String sha3Hex = new DigestUtils("SHA3-256").digestAsHex(json);
@@ -36,13 +42,21 @@ public class Helper {
     }
 
     public String writeAsJson(Object obj) throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(obj);
+        return OBJECT_MAPPER.writeValueAsString(obj);
     }
 
-    public String writeAsXml(Object obj) throws JsonProcessingException {
-        XmlMapper xmlMapper = new XmlMapper();
+    // Writes the entity identifiers and the previous key infos in the compact format of CompactRedisValues, and the
+    // other values as JSON. The values are read back with writeAsPojo, which accepts both formats.
+    public String writeAsRedisValue(Object obj) throws JsonProcessingException {
+        if (compactValues && CompactRedisValues.isSupported(obj)) {
+            return CompactRedisValues.encode(obj);
+        }
+
+        return writeAsJson(obj);
+    }
 
-        return xmlMapper.writeValueAsString(obj);
+    public String writeAsXml(Object obj) throws JsonProcessingException {
+        return XML_MAPPER.writeValueAsString(obj);
     }
 
     public String encodeToBase64(String input) {
@@ -66,7 +80,11 @@ public class Helper {
     }
 
     public <T> T writeAsPojo(String json, Class<T> valueType) throws JsonProcessingException {
-        return new ObjectMapper().readValue(json, valueType);
+        if (CompactRedisValues.isCompact(json)) {
+            return CompactRedisValues.decode(json, valueType);
+        }
+
+        return OBJECT_MAPPER.readValue(json, valueType);
     }
 
     public String createGUID() {
@@ -0,0 +1,66 @@
+package fi.hel.processors;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named("iLoqConnectionMetrics")
+public class ILoqConnectionMetrics {
+
+    private static final Logger LOG = Logger.getLogger(ILoqConnectionMetrics.class);
+
+    @Inject
+    @Named("iLoqConnectionManager")
+    PoolingHttpClientConnectionManager connectionManager;
+    @ConfigProperty(name = "app.name")
+    String appName;
+
+    // Collected since the previous report
+    private final AtomicLong connectCount = new AtomicLong();
+    private final AtomicLong totalConnectNanos = new AtomicLong();
+    private final AtomicLong maxConnectNanos = new AtomicLong();
+
+    public void recordConnect(String host, long connectNanos) {
+        connectCount.incrementAndGet();
+        totalConnectNanos.addAndGet(connectNanos);
+        maxConnectNanos.accumulateAndGet(connectNanos, Math::max);
+
+        LOG.debugf("%s :: ILoqConnectionMetrics :: Opened a new connection to %s in %d ms", appName, host,
+                TimeUnit.NANOSECONDS.toMillis(connectNanos));
+    }
+
+    public long getConnectCount() {
+        return connectCount.get();
+    }
+
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    // Reports the pool usage and the connect times since the previous report. The idle connections are closed by
+    // the evictor of the connection manager.
+    public void reportAndReset() {
+        long count = connectCount.getAndSet(0);
+        long totalNanos = totalConnectNanos.getAndSet(0);
+        long maxNanos = maxConnectNanos.getAndSet(0);
+        PoolStats stats = connectionManager.getTotalStats();
+
+        LOG.infof(
+                "%s :: ILoqConnectionMetrics :: iLOQ connection pool: %d leased, %d available, %d pending, %d max. "
+                        + "New connections since the previous report: %d (avg %d ms, max %d ms)",
+                appName, stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax(),
+                count,
+                count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos / count),
+                TimeUnit.NANOSECONDS.toMillis(maxNanos));
+    }
+
+}
@@ -0,0 +1,113 @@
+package fi.hel.processors;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.ExchangeBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import fi.hel.models.ILoqKeyResponse;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named("iLoqKeyPrefetcher")
+@SuppressWarnings("unchecked")
+public class ILoqKeyPrefetcher {
+
+    private static final Logger LOG = Logger.getLogger(ILoqKeyPrefetcher.class);
+
+    @Inject
+    ResourceInjector ri;
+    @Inject
+    ILoqKeyProcessor iLoqKeyProcessor;
+    @Inject
+    @Named("iLoqKeyPrefetchExecutor")
+    ExecutorService executor;
+    @ConfigProperty(name = "app.name")
+    String appName;
+    @ConfigProperty(name = "app.configuration.iLoq.keyPrefetchDepth")
+    int keyPrefetchDepth;
+
+    // Loads the security accesses and the persons of the next keys of the split into the iLOQ request cache while the
+    // current key is being handled. Only reads are made here, the keys are still handled and written one at a time.
+    // The first key schedules the next keyPrefetchDepth keys and every key after it schedules the key keyPrefetchDepth
+    // positions ahead, so each key is prefetched once.
+    public void prefetchNextKeys(Exchange ex) throws Exception {
+        List<ILoqKeyResponse> keys = ex.getProperty("prefetchableILoqKeys", List.class);
+        Integer index = ex.getProperty(Exchange.SPLIT_INDEX, Integer.class);
+
+        if (keyPrefetchDepth < 1 || keys == null || index == null || !ri.getILoqRequestCache().isEnabled()) {
+            return;
+        }
+
+        // The prefetched requests use the session of the current key, a session is never created for them
+        if (!ri.getILoqSessionContext().isValid() || !ri.getILoqSessionPool().isActiveSessionFresh()) {
+            return;
+        }
+
+        int first = index == 0 ? 1 : index + keyPrefetchDepth;
+        int last = Math.min(index + keyPrefetchDepth, keys.size() - 1);
+
+        if (first > last) {
+            return;
+        }
+
+        String baseUrl = ri.getILoqSessionContext().getBaseUrl();
+        String sessionId = ri.getILoqSessionContext().getSessionId();
+        String customerCode = ri.getCustomerCodeScope().getCurrentCustomerCode();
+        long generation = ri.getILoqRequestCache().getGeneration();
+
+        for (ILoqKeyResponse iLoqKey : keys.subList(first, last + 1)) {
+            executor.execute(() -> prefetch(iLoqKey, baseUrl, sessionId, customerCode, generation));
+        }
+    }
+
+    private void prefetch(ILoqKeyResponse iLoqKey, String baseUrl, String sessionId, String customerCode,
+            long generation) {
+        try {
+            // The same keys are left out as in the iLoqQuartzController
+            if (iLoqKey.getPersonId() == null || iLoqKeyProcessor.isUnchanged(iLoqKey)) {
+                return;
+            }
+
+            ri.getILoqRequestCache().prefetch(
+                    createRequest(baseUrl, sessionId, "/Keys/" + iLoqKey.getFnKeyId() + "/SecurityAccesses",
+                            "mode=1"),
+                    generation);
+
+            String mappedPerson = ri.getPersonMappingStore()
+                    .get(ri.getMappedPersonILoqPrefix(), customerCode, iLoqKey.getPersonId());
+
+            if (mappedPerson == null) {
+                ri.getILoqRequestCache().prefetch(
+                        createRequest(baseUrl, sessionId, "/Persons/" + iLoqKey.getPersonId(), null),
+                        generation);
+            }
+        } catch (Exception e) {
+            // The key handling makes the same requests again and handles their errors
+            LOG.debugf("%s :: ILoqKeyPrefetcher :: Prefetching iLOQ key '%s' failed: %s", appName,
+                    iLoqKey.getFnKeyId(), e.getMessage());
+        }
+    }
+
+    private Exchange createRequest(String baseUrl, String sessionId, String path, String query) {
+        Exchange ex = new ExchangeBuilder(ri.getContext())
+                .withHeader(Exchange.HTTP_METHOD, "GET")
+                .withHeader(Exchange.HTTP_URI, baseUrl)
+                .withHeader(Exchange.HTTP_PATH, path)
+                .withHeader(Exchange.CONTENT_TYPE, "application/json")
+                .withHeader("SessionId", sessionId)
+                .build();
+
+        if (query != null) {
+            ex.getIn().setHeader(Exchange.HTTP_QUERY, query);
+        }
+
+        return ex;
+    }
+
+}
@@ -3,11 +3,18 @@ package fi.hel.processors;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.apache.camel.Exchange;
+import org.apache.camel.builder.ExchangeBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import fi.hel.models.EfecteEntity;
 import fi.hel.models.EfecteEntitySet;
@@ -33,6 +40,12 @@ public class ILoqKeyProcessor {
 
     @Inject
     ResourceInjector ri;
+    @ConfigProperty(name = "app.configuration.iLoq.skipUnchangedKeys")
+    boolean skipUnchangedKeys;
+    @ConfigProperty(name = "app.configuration.iLoq.keyDigestExpirationSeconds")
+    long keyDigestExpirationSeconds;
+    @ConfigProperty(name = "app.configuration.iLoq.keyDigestMaxAgeSeconds")
+    long keyDigestMaxAgeSeconds;
 
     ////////////////////
     // Efecte -> iLOQ //
@@ -85,7 +98,7 @@ public class ILoqKeyProcessor {
                         efecteId, iLoqKeyId, auditMessage);
             }
         } else {
-            String previousEfecteKeyJson = ri.getRedis().get(ri.getPreviousKeyEfectePrefix() + efecteId);
+            String previousEfecteKeyJson = ri.getRedisWriteBuffer().get(ri.getPreviousKeyEfectePrefix() + efecteId);
 
             if (previousEfecteKeyJson != null) {
                 oldPreviousEfecteKey = ri.getHelper().writeAsPojo(
@@ -186,7 +199,7 @@ public class ILoqKeyProcessor {
 
     public void getILoqKeysWithVerifiedRealEstate(Exchange ex) throws Exception {
         List<ILoqKeyResponse> allKeys = ex.getIn().getBody(List.class);
-        List<String> configuredRealEstateIds = ri.getConfigProvider().getConfiguredILoqRealEstateIds();
+        Set<String> configuredRealEstateIds = new HashSet<>(ri.getConfigProvider().getConfiguredILoqRealEstateIds());
         List<ILoqKeyResponse> result = new ArrayList<>();
 
         for (ILoqKeyResponse key : allKeys) {
@@ -200,6 +213,78 @@ public class ILoqKeyProcessor {
         ex.getIn().setBody(result);
     }
 
+    public void groupILoqKeysByRealEstate(Exchange ex) throws Exception {
+        List<ILoqKeyResponse> keys = ex.getIn().getBody(List.class);
+        Map<String, List<ILoqKeyResponse>> keysByRealEstate = new LinkedHashMap<>();
+
+        for (ILoqKeyResponse key : keys) {
+            keysByRealEstate.computeIfAbsent(key.getRealEstateId(), realEstateId -> new ArrayList<>()).add(key);
+        }
+
+        ex.getIn().setBody(new ArrayList<>(keysByRealEstate.values()));
+    }
+
+    public void initSkippedKeyCounter(Exchange ex) {
+        ex.setProperty("skippedILoqKeyCount", new AtomicInteger());
+    }
+
+    public boolean isUnchangedSinceLastRun(Exchange ex) throws Exception {
+        ILoqKeyResponse iLoqKey = ex.getIn().getBody(ILoqKeyResponse.class);
+
+        if (!isUnchanged(iLoqKey)) {
+            return false;
+        }
+
+        AtomicInteger skippedKeyCount = ex.getProperty("skippedILoqKeyCount", AtomicInteger.class);
+        if (skippedKeyCount != null) {
+            skippedKeyCount.incrementAndGet();
+        }
+
+        return true;
+    }
+
+    // The digest is saved with the time the key was last handled in full, as '<digest>:<handled at>'. A skipped key
+    // refreshes the expiration of its digest, so the digest outlives the runs, and the key is handled in full again
+    // once the digest is older than keyDigestMaxAgeSeconds.
+    public boolean isUnchanged(ILoqKeyResponse iLoqKey) throws Exception {
+        if (!skipUnchangedKeys) {
+            return false;
+        }
+
+        String digestKey = ri.getKeyDigestILoqPrefix() + iLoqKey.getFnKeyId();
+        String previousDigest = ri.getRedisWriteBuffer().get(digestKey);
+        int separator = previousDigest == null ? -1 : previousDigest.lastIndexOf(':');
+
+        // A digest saved without the time is handled as changed
+        if (separator < 0) {
+            return false;
+        }
+
+        long handledAt = Long.parseLong(previousDigest.substring(separator + 1));
+
+        if (handledAt + keyDigestMaxAgeSeconds * 1000 < System.currentTimeMillis()
+                || !previousDigest.substring(0, separator).equals(createKeyDigest(iLoqKey))) {
+            return false;
+        }
+
+        ri.getRedisWriteBuffer().setex(digestKey, previousDigest, keyDigestExpirationSeconds);
+
+        return true;
+    }
+
+    public void saveKeyDigest(Exchange ex) throws Exception {
+        if (!skipUnchangedKeys) {
+            return;
+        }
+
+        ILoqKeyResponse iLoqKey = ex.getProperty("currentILoqKey", ILoqKeyResponse.class);
+
+        ri.getRedisWriteBuffer().setex(
+                ri.getKeyDigestILoqPrefix() + iLoqKey.getFnKeyId(),
+                createKeyDigest(iLoqKey) + ":" + System.currentTimeMillis(),
+                keyDigestExpirationSeconds);
+    }
+
     public boolean hasValidSecurityAccesses(Exchange ex) throws Exception {
         Set<ILoqSecurityAccess> securityAccesses = ex.getIn().getBody(Set.class);
 
@@ -245,10 +330,78 @@ public class ILoqKeyProcessor {
         ri.getEfectePersonResolver().resolveEfectePersonIdentifier(iLoqPerson);
     }
 
+    // Collects the unmapped persons of the keys in the body, so that their Efecte persons can be searched with batched
+    // queries before the keys are handled. The iLOQ persons are read through the request cache and are reused when
+    // the keys are handled.
+    public void prefetchEfectePersons(Exchange ex) throws Exception {
+        List<ILoqKeyResponse> iLoqKeys = ex.getIn().getBody(List.class);
+        String cc = ri.getCustomerCodeScope().getCurrentCustomerCode();
+        Set<String> iLoqPersonIds = new LinkedHashSet<>();
+
+        for (ILoqKeyResponse iLoqKey : iLoqKeys) {
+            if (iLoqKey.getPersonId() == null || isUnchanged(iLoqKey)) {
+                continue;
+            }
+
+            iLoqPersonIds.add(iLoqKey.getPersonId());
+        }
+
+        // The mappings are read at once when they are stored in a hash
+        iLoqPersonIds.removeAll(ri.getPersonMappingStore()
+                .getMany(ri.getMappedPersonILoqPrefix(), cc, new ArrayList<>(iLoqPersonIds)).keySet());
+
+        List<ILoqPerson> iLoqPersons = new ArrayList<>();
+
+        for (String iLoqPersonId : iLoqPersonIds) {
+            Exchange personEx = new ExchangeBuilder(ri.getContext())
+                    .withHeader("iLoqPersonId", iLoqPersonId)
+                    .build();
+
+            ri.getTemplate().send(ri.getGetILoqPersonEndpointUri(), personEx);
+
+            // The person is fetched again when its key is handled, which also handles the error
+            ILoqPerson iLoqPerson = personEx.getException() == null
+                    && personEx.getProperty(Exchange.EXCEPTION_CAUGHT) == null
+                            ? personEx.getIn().getBody(ILoqPerson.class)
+                            : null;
+
+            if (iLoqPerson != null) {
+                iLoqPersons.add(iLoqPerson);
+            }
+        }
+
+        if (!iLoqPersons.isEmpty()) {
+            ri.getEfectePersonResolver().prefetchEfectePersons(iLoqPersons);
+        }
+    }
+
     public boolean isMissingAPerson(Exchange ex) {
         ILoqKeyResponse iLoqKey = ex.getProperty("currentILoqKey", ILoqKeyResponse.class);
 
         return iLoqKey.getPersonId() == null;
     }
 
+    // The mapping is read through the person mapping store, as it may be a field of the customer code's hash
+    public boolean isMissingAPersonMapping(Exchange ex) throws Exception {
+        String cc = ex.getProperty("currentCustomerCode", String.class);
+        String iLoqPersonId = ex.getProperty("iLoqPersonId", String.class);
+
+        return ri.getPersonMappingStore().get(ri.getMappedPersonILoqPrefix(), cc, iLoqPersonId) == null;
+    }
+
+    // The previous security access ids are updated by both directions, so any change made through Efecte invalidates the digest as well.
+    // The security accesses of the key are not in the listing, so a change made in iLOQ is noticed from the change
+    // markers of the listed key, e.g. its version code and programming state, which change when the key needs to be
+    // reprogrammed. As a safety net every key is handled in full at least every keyDigestMaxAgeSeconds, which bounds
+    // how long a change made in iLOQ without touching the change markers can go unnoticed.
+    private String createKeyDigest(ILoqKeyResponse iLoqKey) throws Exception {
+        Set<String> securityAccessIds = ri.getRedisWriteBuffer().getSet(ri.getPreviousKeyILoqPrefix() + iLoqKey.getFnKeyId());
+        String sortedSecurityAccessIds = securityAccessIds == null
+                ? ""
+                : String.join(",", new TreeSet<>(securityAccessIds));
+
+        return ri.getHelper().createHashFromJson(
+                ri.getHelper().writeAsJson(iLoqKey) + ":" + sortedSecurityAccessIds);
+    }
+
 }
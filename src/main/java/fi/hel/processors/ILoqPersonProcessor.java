@@ -42,14 +42,20 @@ public class ILoqPersonProcessor {
         iLoqPersonImport.setZoneIds(zoneIds);
         String iLoqPersonId = forwardNewPersonToILoq(iLoqPersonImport);
 
+        if (iLoqPersonImport.getPerson() != null) {
+            ri.getILoqPersonResolver().addPersonToDirectory(iLoqPersonId,
+                    iLoqPersonImport.getPerson().getFirstName(), iLoqPersonImport.getPerson().getLastName());
+        }
+
         String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
 
         if (hasKeyHolder(efecteKey)) {
             EfecteEntityIdentifier efecteEntityIdentifier = new EfecteEntityIdentifier(
                     efecteKeyHolderEntityId, efecteKeyHolderEfecteId);
-            ri.getRedis().set(ri.getMappedPersonEfectePrefix() + cc + ":" + efecteKeyHolderEntityId, iLoqPersonId);
-            ri.getRedis().set(ri.getMappedPersonILoqPrefix() + cc + ":" + iLoqPersonId,
-                    ri.getHelper().writeAsJson(efecteEntityIdentifier));
+            ri.getPersonMappingStore().set(ri.getMappedPersonEfectePrefix(), cc, efecteKeyHolderEntityId,
+                    iLoqPersonId);
+            ri.getPersonMappingStore().set(ri.getMappedPersonILoqPrefix(), cc, iLoqPersonId,
+                    ri.getHelper().writeAsRedisValue(efecteEntityIdentifier));
         } else {
             String outsiderName = efecteKey.getAttributeValue(EnumEfecteAttribute.KEY_OUTSIDER_NAME);
             String outsiderEmail = efecteKey.getAttributeValue(EnumEfecteAttribute.KEY_OUTSIDER_EMAIL);
@@ -57,11 +63,10 @@ public class ILoqPersonProcessor {
             efecteEntityIdentifier.setOutsiderName(outsiderName);
             efecteEntityIdentifier.setOutsiderEmail(outsiderEmail);
 
-            ri.getRedis().set(
-                    ri.getMappedPersonEfectePrefix() + cc + ":" + ri.getHelper().createIdentifier(outsiderEmail, outsiderName),
-                    iLoqPersonId);
-            ri.getRedis().set(ri.getMappedPersonILoqPrefix() + cc + ":" + iLoqPersonId,
-                    ri.getHelper().writeAsJson(efecteEntityIdentifier));
+            ri.getPersonMappingStore().set(ri.getMappedPersonEfectePrefix(), cc,
+                    ri.getHelper().createIdentifier(outsiderEmail, outsiderName), iLoqPersonId);
+            ri.getPersonMappingStore().set(ri.getMappedPersonILoqPrefix(), cc, iLoqPersonId,
+                    ri.getHelper().writeAsRedisValue(efecteEntityIdentifier));
         }
 
         return iLoqPersonId;
@@ -0,0 +1,147 @@
+package fi.hel.processors;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named("iLoqRequestCache")
+public class ILoqRequestCache {
+
+    @Inject
+    ResourceInjector ri;
+    @ConfigProperty(name = "app.configuration.iLoq.requestCaching")
+    boolean requestCaching;
+
+    // Raw iLOQ GET responses of the current run, keyed by "<base url> <path>?<query> <session id>". The session
+    // belongs to a single customer code, so the customer codes handled in parallel never share a response. The
+    // responses are kept as strings so that every caller unmarshals its own copy of the entity.
+    private final Map<String, CompletableFuture<String>> responses = new ConcurrentHashMap<>();
+    // Increased by every reset, so that the requests of a finished run can be told apart
+    private final AtomicLong generation = new AtomicLong();
+
+    public void send(Exchange ex) throws Exception {
+        if (!requestCaching || !"GET".equals(ex.getIn().getHeader(Exchange.HTTP_METHOD, String.class))) {
+            sendToILoq(ex);
+            return;
+        }
+
+        send(ex, generation.get());
+    }
+
+    // Sends a GET ahead of the request that is expected to follow it. A prefetch scheduled before the latest reset is
+    // dropped so that it can not fill the cache of the next run.
+    public void prefetch(Exchange ex, long generation) throws Exception {
+        if (!requestCaching || generation != this.generation.get()) {
+            return;
+        }
+
+        send(ex, generation);
+    }
+
+    public boolean isEnabled() {
+        return requestCaching;
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    private void send(Exchange ex, long generation) throws Exception {
+        String key = createKey(ex);
+        CompletableFuture<String> response = new CompletableFuture<>();
+        CompletableFuture<String> pendingResponse = responses.putIfAbsent(key, response);
+
+        if (pendingResponse != null) {
+            try {
+                // Identical requests made at the same time wait for the first one instead of calling iLOQ again
+                ex.getIn().setBody(pendingResponse.join());
+                return;
+            } catch (CompletionException e) {
+                // The failed request was not cached, this request is sent on its own
+                sendToILoq(ex);
+                return;
+            }
+        }
+
+        try {
+            sendToILoq(ex);
+        } catch (Exception e) {
+            responses.remove(key, response);
+            response.completeExceptionally(e);
+            throw e;
+        }
+
+        String body = ex.getIn().getBody(String.class);
+        ex.getIn().setBody(body);
+        response.complete(body);
+
+        if (generation != this.generation.get()) {
+            responses.remove(key, response);
+        }
+    }
+
+    // Drops the cached responses of the entity the write request targets, e.g. a write to /Keys/{id}/SecurityAccesses
+    // drops /Keys/{id} and everything under it, and a write to /Persons drops every cached person
+    public void invalidate(Exchange ex) {
+        String baseUrl = ex.getIn().getHeader(Exchange.HTTP_URI, String.class);
+        String path = ex.getIn().getHeader(Exchange.HTTP_PATH, String.class);
+        String entityPath = getEntityPath(path);
+
+        responses.keySet().removeIf(key -> {
+            int pathStart = key.indexOf(' ');
+            int queryStart = key.indexOf('?', pathStart);
+            String cachedBaseUrl = key.substring(0, pathStart);
+            String cachedPath = key.substring(pathStart + 1, queryStart);
+
+            return cachedBaseUrl.equals(String.valueOf(baseUrl))
+                    && (cachedPath.equals(entityPath) || cachedPath.startsWith(entityPath + "/"));
+        });
+    }
+
+    public void reset() {
+        generation.incrementAndGet();
+        responses.clear();
+    }
+
+    public int size() {
+        return responses.size();
+    }
+
+    private void sendToILoq(Exchange ex) throws Exception {
+        ri.getTemplate().send(ri.getOldhostEndpoint(), ex);
+
+        Exception exception = ex.getException();
+
+        if (exception != null) {
+            ex.setException(null);
+            throw exception;
+        }
+    }
+
+    private String createKey(Exchange ex) {
+        return ex.getIn().getHeader(Exchange.HTTP_URI, String.class)
+                + " " + ex.getIn().getHeader(Exchange.HTTP_PATH, String.class)
+                + "?" + ex.getIn().getHeader(Exchange.HTTP_QUERY, String.class)
+                + " " + ex.getIn().getHeader("SessionId", String.class);
+    }
+
+    private String getEntityPath(String path) {
+        String[] segments = String.valueOf(path).split("/");
+
+        // ["", "Keys", "{id}", ...]
+        return segments.length > 2
+                ? "/" + segments[1] + "/" + segments[2]
+                : String.valueOf(path);
+    }
+
+}
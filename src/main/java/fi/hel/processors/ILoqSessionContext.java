@@ -0,0 +1,85 @@
+package fi.hel.processors;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named("iLoqSessionContext")
+public class ILoqSessionContext {
+
+    @Inject
+    ResourceInjector ri;
+
+    // The sessions used by this pod, one per customer code scope. Redis is only read when a session is configured,
+    // so the iLOQ calls in between do not need a round trip to Redis.
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public boolean isValid() {
+        return getSession() != null;
+    }
+
+    public String getBaseUrl() throws Exception {
+        Session session = getSession();
+
+        return session != null ? session.baseUrl : ri.getRedis().get(ri.getILoqCurrentBaseUrlPrefix());
+    }
+
+    public String getSessionId() throws Exception {
+        Session session = getSession();
+
+        return session != null ? session.sessionId : ri.getRedis().get(ri.getILoqCurrentSessionIdPrefix());
+    }
+
+    public String getCustomerCode() {
+        Session session = getSession();
+
+        return session != null ? session.customerCode : null;
+    }
+
+    public boolean hasCurrentSession() throws Exception {
+        return ri.getRedis().get(ri.getILoqCurrentSessionIdPrefix()) != null;
+    }
+
+    // Called after a session has been configured and its state has been saved to Redis
+    public void load() throws Exception {
+        String baseUrl = ri.getRedis().get(ri.getILoqCurrentBaseUrlPrefix());
+        String sessionId = ri.getRedis().get(ri.getILoqCurrentSessionIdPrefix());
+        String customerCode = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
+
+        if (baseUrl == null || sessionId == null) {
+            invalidate();
+        } else {
+            this.sessions.put(ri.getCustomerCodeScope().getSlot(), new Session(customerCode, baseUrl, sessionId));
+        }
+    }
+
+    public void invalidate() {
+        this.sessions.remove(ri.getCustomerCodeScope().getSlot());
+    }
+
+    public void markCustomerCodeChanged() throws Exception {
+        invalidate();
+        ri.getRedis().set(ri.getILoqCurrentCustomerCodeHasChangedPrefix(), "true");
+    }
+
+    private Session getSession() {
+        return this.sessions.get(ri.getCustomerCodeScope().getSlot());
+    }
+
+    private static class Session {
+        private final String customerCode;
+        private final String baseUrl;
+        private final String sessionId;
+
+        Session(String customerCode, String baseUrl, String sessionId) {
+            this.customerCode = customerCode;
+            this.baseUrl = baseUrl;
+            this.sessionId = sessionId;
+        }
+    }
+
+}
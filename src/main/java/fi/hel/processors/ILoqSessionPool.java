@@ -0,0 +1,166 @@
+package fi.hel.processors;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.camel.Exchange;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import fi.hel.models.ILoqSession;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@ApplicationScoped
+@Named("iLoqSessionPool")
+public class ILoqSessionPool {
+
+    @Inject
+    ResourceInjector ri;
+    @ConfigProperty(name = "app.configuration.iLoq.sessionPooling")
+    boolean sessionPooling;
+    @ConfigProperty(name = "app.configuration.iLoq.sessionMaxAgeSeconds")
+    long sessionMaxAgeSeconds;
+    @ConfigProperty(name = "app.configuration.iLoq.sessionMaxIdleSeconds")
+    long sessionMaxIdleSeconds;
+
+    // One session per customer code. The sessions are persisted to Redis so that both controllers and the following runs can reuse them.
+    private final Map<String, ILoqSession> sessions = new ConcurrentHashMap<>();
+    // The session in use, one per customer code scope
+    private final Map<String, ILoqSession> activeSessions = new ConcurrentHashMap<>();
+
+    public synchronized boolean activatePooledSession() throws Exception {
+        String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
+        ILoqSession session = getSession(cc);
+
+        if (session == null || session.getSessionId() == null || !isUsable(session)) {
+            return false;
+        }
+
+        touchActiveSession();
+        session.setLastUsedAt(System.currentTimeMillis());
+        this.activeSessions.put(ri.getCustomerCodeScope().getSlot(), session);
+
+        ri.getRedis().set(ri.getILoqCurrentBaseUrlPrefix(), session.getBaseUrl());
+        ri.getRedis().set(ri.getILoqCurrentSessionIdPrefix(), session.getSessionId());
+        ri.getRedis().set(ri.getILoqCurrentCustomerCodeHasChangedPrefix(), "false");
+
+        return true;
+    }
+
+    public boolean hasPooledConnectionInfo() throws Exception {
+        String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
+        ILoqSession session = getSession(cc);
+
+        return session != null && session.getBaseUrl() != null && session.getLockGroupId() != null;
+    }
+
+    public String getPooledBaseUrl() throws Exception {
+        return getSession(ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix())).getBaseUrl();
+    }
+
+    public String getPooledLockGroupId() throws Exception {
+        return getSession(ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix())).getLockGroupId();
+    }
+
+    // The session is refreshed before it reaches the maximum age, even in the middle of a run
+    public boolean isActiveSessionFresh() {
+        ILoqSession session = this.activeSessions.get(ri.getCustomerCodeScope().getSlot());
+
+        return session == null
+                || System.currentTimeMillis() - session.getCreatedAt() < sessionMaxAgeSeconds * 1000;
+    }
+
+    public synchronized void savePooledSession(Exchange ex) throws Exception {
+        if (!sessionPooling) {
+            return;
+        }
+
+        String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
+
+        if (cc == null) {
+            return;
+        }
+
+        touchActiveSession();
+
+        ILoqSession session = new ILoqSession(
+                cc,
+                ri.getRedis().get(ri.getILoqCurrentBaseUrlPrefix()),
+                ri.getRedis().get(ri.getILoqCurrentSessionIdPrefix()),
+                ex.getProperty("iLoqLockGroupId", String.class),
+                System.currentTimeMillis());
+
+        this.sessions.put(cc, session);
+        this.activeSessions.put(ri.getCustomerCodeScope().getSlot(), session);
+        persistSession(session);
+    }
+
+    public synchronized void releaseCurrentSession() throws Exception {
+        ILoqSession session = getSession(ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix()));
+
+        if (session != null) {
+            session.setLastUsedAt(System.currentTimeMillis());
+            persistSession(session);
+        }
+
+        this.activeSessions.remove(ri.getCustomerCodeScope().getSlot());
+    }
+
+    // The connection info is kept, so a new session can be created without resolving the base url and the lock group again
+    public synchronized void invalidateCurrentSession() throws Exception {
+        ILoqSession session = getSession(ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix()));
+
+        if (session != null) {
+            session.setSessionId(null);
+            persistSession(session);
+        }
+
+        this.activeSessions.remove(ri.getCustomerCodeScope().getSlot());
+    }
+
+    public void resetCache() {
+        this.sessions.clear();
+        this.activeSessions.clear();
+    }
+
+    private ILoqSession getSession(String cc) throws Exception {
+        if (!sessionPooling || cc == null) {
+            return null;
+        }
+
+        ILoqSession session = this.sessions.get(cc);
+
+        if (session == null) {
+            String json = ri.getRedis().get(ri.getILoqSessionPrefix() + cc);
+
+            if (json != null) {
+                session = ri.getHelper().writeAsPojo(json, ILoqSession.class);
+                this.sessions.put(cc, session);
+            }
+        }
+
+        return session;
+    }
+
+    private boolean isUsable(ILoqSession session) {
+        long now = System.currentTimeMillis();
+
+        return now - session.getCreatedAt() < sessionMaxAgeSeconds * 1000
+                && now - session.getLastUsedAt() < sessionMaxIdleSeconds * 1000;
+    }
+
+    private void touchActiveSession() throws Exception {
+        ILoqSession session = this.activeSessions.get(ri.getCustomerCodeScope().getSlot());
+
+        if (session != null) {
+            session.setLastUsedAt(System.currentTimeMillis());
+            persistSession(session);
+        }
+    }
+
+    private void persistSession(ILoqSession session) throws Exception {
+        ri.getRedis().set(ri.getILoqSessionPrefix() + session.getCustomerCode(), ri.getHelper().writeAsJson(session));
+    }
+
+}
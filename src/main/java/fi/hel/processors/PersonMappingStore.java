@@ -0,0 +1,172 @@
+package fi.hel.processors;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+// Stores the person mappings of the customer codes. The prefix is the direction of the mapping, i.e. the mapped
+// person prefix of Efecte or iLOQ.
+//
+// By default each mapping is a Redis string of its own, '<prefix><customer code>:<person id>'. With hashPersonMappings
+// the mappings of a customer code and direction are the fields of a single Redis hash, '<prefix><customer code>', which
+// takes a fraction of the memory of the separate keys and can be read in bulk.
+//
+// The hash layout can be taken into use online. Until the customer code has been migrated, a mapping missing from
+// the hash is moved from its string key when it is read, and migrate moves the rest of the string keys in batches.
+@ApplicationScoped
+@Named("personMappingStore")
+public class PersonMappingStore {
+
+    private static final Logger LOG = Logger.getLogger(PersonMappingStore.class);
+
+    @Inject
+    ResourceInjector ri;
+    @ConfigProperty(name = "app.name")
+    String appName;
+    @ConfigProperty(name = "app.configuration.redis.hashPersonMappings")
+    boolean hashPersonMappings;
+    @ConfigProperty(name = "app.configuration.redis.scanCount")
+    int scanCount;
+
+    // The hashes whose string keys have been moved by this pod. New mappings are only written to the hashes.
+    private final Set<String> migratedHashes = ConcurrentHashMap.newKeySet();
+
+    public String get(String prefix, String cc, String personId) throws Exception {
+        if (!hashPersonMappings) {
+            return ri.getRedis().get(getKey(prefix, cc, personId));
+        }
+
+        String hash = getHash(prefix, cc);
+        String value = ri.getRedisCommands().getHashField(hash, personId);
+
+        if (value == null && !migratedHashes.contains(hash)
+                && ri.getRedisScripts().moveToHash(hash, Map.of(getKey(prefix, cc, personId), personId)) > 0) {
+            value = ri.getRedisCommands().getHashField(hash, personId);
+        }
+
+        return value;
+    }
+
+    // Returns the mappings of the persons that have one. The hash fields are read with a single HMGET.
+    public Map<String, String> getMany(String prefix, String cc, List<String> personIds) throws Exception {
+        Map<String, String> values = new LinkedHashMap<>();
+
+        if (!hashPersonMappings) {
+            for (String personId : personIds) {
+                String value = get(prefix, cc, personId);
+
+                if (value != null) {
+                    values.put(personId, value);
+                }
+            }
+
+            return values;
+        }
+
+        List<String> hashValues = ri.getRedisCommands().getHashFields(getHash(prefix, cc), personIds);
+
+        for (int i = 0; i < personIds.size(); i++) {
+            // The mappings not moved to the hash yet are read one by one
+            String value = hashValues.get(i) != null ? hashValues.get(i) : get(prefix, cc, personIds.get(i));
+
+            if (value != null) {
+                values.put(personIds.get(i), value);
+            }
+        }
+
+        return values;
+    }
+
+    // Reads all the mappings of the customer code in the direction of the prefix, e.g. to warm up a cache. The hash is
+    // read with HGETALL, or with HSCAN when it has more than scanCount fields.
+    public Map<String, String> getAll(String prefix, String cc) throws Exception {
+        Map<String, String> values = new HashMap<>();
+        String keyPrefix = getKey(prefix, cc, "");
+
+        if (hashPersonMappings) {
+            values.putAll(ri.getRedisCommands().getHash(getHash(prefix, cc), scanCount));
+
+            if (migratedHashes.contains(getHash(prefix, cc))) {
+                return values;
+            }
+        }
+
+        ri.getRedisCommands().scanValues(keyPrefix, scanCount).forEach((key, value) -> values
+                .putIfAbsent(key.substring(keyPrefix.length()), value));
+
+        return values;
+    }
+
+    public void set(String prefix, String cc, String personId, String value) throws Exception {
+        if (!hashPersonMappings) {
+            ri.getRedis().set(getKey(prefix, cc, personId), value);
+            return;
+        }
+
+        // A string key left over is not read anymore, as the hash is read first, and it is removed by the migration
+        ri.getRedisCommands().setHashField(getHash(prefix, cc), personId, value);
+    }
+
+    // Moves the string keys of the customer code into the hashes of both directions
+    public void migrateCurrentCustomerCode() throws Exception {
+        if (!hashPersonMappings) {
+            return;
+        }
+
+        String cc = ri.getCustomerCodeScope().getCurrentCustomerCode();
+
+        migrate(ri.getMappedPersonEfectePrefix(), cc);
+        migrate(ri.getMappedPersonILoqPrefix(), cc);
+    }
+
+    // The string keys are listed with SCAN and moved in batches of scanCount keys, each with a single script.
+    // Returns the number of the moved keys.
+    public long migrate(String prefix, String cc) throws Exception {
+        String hash = getHash(prefix, cc);
+
+        if (!hashPersonMappings || migratedHashes.contains(hash)) {
+            return 0;
+        }
+
+        String keyPrefix = getKey(prefix, cc, "");
+        List<String> keys = ri.getRedisCommands().scanKeys(keyPrefix, scanCount);
+        long moved = 0;
+
+        for (int first = 0; first < keys.size(); first += scanCount) {
+            Map<String, String> fieldsByKey = new LinkedHashMap<>();
+
+            for (String key : keys.subList(first, Math.min(first + scanCount, keys.size()))) {
+                fieldsByKey.put(key, key.substring(keyPrefix.length()));
+            }
+
+            moved += ri.getRedisScripts().moveToHash(hash, fieldsByKey);
+        }
+
+        migratedHashes.add(hash);
+
+        if (moved > 0) {
+            LOG.infof("%s :: PersonMappingStore :: Moved %d person mappings to the hash '%s'", appName, moved, hash);
+        }
+
+        return moved;
+    }
+
+    private String getKey(String prefix, String cc, String personId) {
+        return prefix + cc + ":" + personId;
+    }
+
+    private String getHash(String prefix, String cc) {
+        return prefix + cc;
+    }
+
+}
@@ -0,0 +1,400 @@
+package fi.hel.processors;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.jboss.logging.Logger;
+
+import com.devikone.transports.Redis;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.params.XAddParams;
+import redis.clients.jedis.params.XAutoClaimParams;
+import redis.clients.jedis.params.XPendingParams;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.resps.StreamEntry;
+import redis.clients.jedis.resps.StreamPendingEntry;
+import redis.clients.jedis.util.Pool;
+
+// The Redis commands that the Redis transport does not provide. The connections are configured from the same
+// environment variables as the Redis transport in IBRedisProducer, but they are pooled separately, so the commands
+// that block for a while do not take the connections of the synchronization.
+@ApplicationScoped
+public class RedisCommands {
+
+    private static final Logger LOG = Logger.getLogger(RedisCommands.class);
+
+    private Pool<Jedis> pool;
+
+    ////////////
+    // Stream //
+    ////////////
+
+    // Appends an entry to the stream and trims the stream to about maxLength entries. Returns the id of the entry.
+    public String appendToStream(String stream, Map<String, String> fields, long maxLength) {
+        return execute(jedis -> jedis.xadd(stream,
+                XAddParams.xAddParams().maxLen(maxLength).approximateTrimming(), fields).toString());
+    }
+
+    // Creates the consumer group and the stream, unless the group exists already. New groups start from the entries
+    // appended after the group was created.
+    public void createConsumerGroup(String stream, String group) {
+        execute(jedis -> {
+            try {
+                return jedis.xgroupCreate(stream, group, StreamEntryID.LAST_ENTRY, true);
+            } catch (JedisDataException e) {
+                if (e.getMessage() != null && e.getMessage().startsWith("BUSYGROUP")) {
+                    return null;
+                }
+
+                throw e;
+            }
+        });
+    }
+
+    // Reads the entries that have not been delivered to any consumer of the group yet
+    public List<StreamEntry> readFromConsumerGroup(String stream, String group, String consumer, int count) {
+        List<Map.Entry<String, List<StreamEntry>>> result = execute(jedis -> jedis.xreadGroup(group, consumer,
+                XReadGroupParams.xReadGroupParams().count(count),
+                Map.of(stream, StreamEntryID.UNRECEIVED_ENTRY)));
+
+        List<StreamEntry> entries = new ArrayList<>();
+
+        if (result != null) {
+            for (Map.Entry<String, List<StreamEntry>> streamEntries : result) {
+                entries.addAll(streamEntries.getValue());
+            }
+        }
+
+        return entries;
+    }
+
+    // Transfers the entries that have been delivered to a consumer but not acknowledged within minIdleTime to the
+    // given consumer. Those are the entries of a consumer that failed or of a pod that was stopped.
+    public List<StreamEntry> claimIdleEntries(String stream, String group, String consumer, Duration minIdleTime,
+            int count) {
+        Map.Entry<StreamEntryID, List<StreamEntry>> result = execute(jedis -> jedis.xautoclaim(stream, group,
+                consumer, minIdleTime.toMillis(), new StreamEntryID(),
+                XAutoClaimParams.xAutoClaimParams().count(count)));
+
+        return result == null || result.getValue() == null ? new ArrayList<>() : new ArrayList<>(result.getValue());
+    }
+
+    public long getStreamLength(String stream) {
+        return execute(jedis -> jedis.xlen(stream));
+    }
+
+    // Returns how many times the pending entries have been delivered to the consumers of the group, the claims
+    // included. The entries are read with a single pipeline, and the entries not pending anymore are left out.
+    public Map<StreamEntryID, Long> getDeliveryCounts(String stream, String group, List<StreamEntryID> ids) {
+        return execute(jedis -> {
+            Map<StreamEntryID, Response<List<StreamPendingEntry>>> responses = new LinkedHashMap<>();
+            Pipeline pipeline = jedis.pipelined();
+
+            for (StreamEntryID id : ids) {
+                responses.put(id, pipeline.xpending(stream, group, XPendingParams.xPendingParams(id, id, 1)));
+            }
+
+            pipeline.sync();
+
+            Map<StreamEntryID, Long> deliveryCounts = new HashMap<>();
+
+            for (Response<List<StreamPendingEntry>> response : responses.values()) {
+                for (StreamPendingEntry pendingEntry : response.get()) {
+                    deliveryCounts.put(pendingEntry.getID(), pendingEntry.getDeliveredTimes());
+                }
+            }
+
+            return deliveryCounts;
+        });
+    }
+
+    // Acknowledges the entries and removes them from the stream
+    public void acknowledge(String stream, String group, List<StreamEntryID> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        StreamEntryID[] entryIds = ids.toArray(new StreamEntryID[0]);
+
+        execute(jedis -> {
+            jedis.xack(stream, group, entryIds);
+            return jedis.xdel(stream, entryIds);
+        });
+    }
+
+    // Moves the entries to the target stream in a single transaction. The entries are appended with their original
+    // id and the reason, and then acknowledged and removed from the stream.
+    public void moveToStream(String stream, String group, List<StreamEntry> entries, String targetStream,
+            long maxLength, String reason) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        StreamEntryID[] entryIds = entries.stream().map(StreamEntry::getID).toArray(StreamEntryID[]::new);
+
+        execute(jedis -> {
+            Transaction transaction = jedis.multi();
+
+            for (StreamEntry entry : entries) {
+                Map<String, String> fields = new HashMap<>();
+
+                if (entry.getFields() != null) {
+                    fields.putAll(entry.getFields());
+                }
+
+                fields.put("entryId", entry.getID().toString());
+                fields.put("reason", reason);
+                transaction.xadd(targetStream, XAddParams.xAddParams().maxLen(maxLength).approximateTrimming(),
+                        fields);
+            }
+
+            transaction.xack(stream, group, entryIds);
+            transaction.xdel(stream, entryIds);
+
+            return transaction.exec();
+        });
+    }
+
+    // Returns how long ago the oldest and the newest entry of the stream were appended, measured with the clock of
+    // Redis that also created the entry ids. Returns null when the stream is empty.
+    public StreamAge getStreamAge(String stream) {
+        return execute(jedis -> {
+            List<StreamEntry> oldest = jedis.xrange(stream, "-", "+", 1);
+            List<StreamEntry> newest = jedis.xrevrange(stream, "+", "-", 1);
+
+            if (oldest == null || oldest.isEmpty() || newest == null || newest.isEmpty()) {
+                return null;
+            }
+
+            List<String> time = jedis.time();
+            long now = Long.parseLong(time.get(0)) * 1000 + Long.parseLong(time.get(1)) / 1000;
+
+            return new StreamAge(
+                    Duration.ofMillis(Math.max(0, now - oldest.get(0).getID().getTime())),
+                    Duration.ofMillis(Math.max(0, now - newest.get(0).getID().getTime())));
+        });
+    }
+
+    public record StreamAge(Duration oldestEntry, Duration newestEntry) {
+    }
+
+    //////////
+    // Hash //
+    //////////
+
+    public String getHashField(String hash, String field) {
+        return execute(jedis -> jedis.hget(hash, field));
+    }
+
+    // Returns the values in the order of the fields, with null for the missing fields
+    public List<String> getHashFields(String hash, List<String> fields) {
+        if (fields.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return execute(jedis -> jedis.hmget(hash, fields.toArray(new String[0])));
+    }
+
+    public void setHashField(String hash, String field, String value) {
+        execute(jedis -> jedis.hset(hash, field, value));
+    }
+
+    // Replaces all the fields of the hash in a single transaction, so the hash is never read half written
+    public void replaceHash(String hash, Map<String, String> fields) {
+        execute(jedis -> {
+            Transaction transaction = jedis.multi();
+            transaction.del(hash);
+
+            if (!fields.isEmpty()) {
+                transaction.hset(hash, fields);
+            }
+
+            return transaction.exec();
+        });
+    }
+
+    // Reads all the fields of the hash. A hash of at most count fields is read with a single HGETALL, and a larger
+    // one with HSCAN, so reading it does not block Redis.
+    public Map<String, String> getHash(String hash, int count) {
+        return execute(jedis -> {
+            if (jedis.hlen(hash) <= count) {
+                return jedis.hgetAll(hash);
+            }
+
+            Map<String, String> fields = new HashMap<>();
+            ScanParams scanParams = new ScanParams().count(count);
+            String cursor = ScanParams.SCAN_POINTER_START;
+
+            do {
+                ScanResult<Map.Entry<String, String>> scanResult = jedis.hscan(hash, cursor, scanParams);
+
+                for (Map.Entry<String, String> field : scanResult.getResult()) {
+                    fields.put(field.getKey(), field.getValue());
+                }
+
+                cursor = scanResult.getCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+
+            return fields;
+        });
+    }
+
+    //////////
+    // Scan //
+    //////////
+
+    // Lists the keys that start with the prefix
+    public List<String> scanKeys(String prefix, int count) {
+        return execute(jedis -> {
+            List<String> keys = new ArrayList<>();
+
+            scan(jedis, prefix, count, keys::addAll);
+
+            return keys;
+        });
+    }
+
+    // Reads the string values of the keys that start with the prefix
+    public Map<String, String> scanValues(String prefix, int count) {
+        return scanAndRead(prefix, count, Pipeline::get);
+    }
+
+    // Reads the members of the sets whose keys start with the prefix
+    public Map<String, Set<String>> scanSets(String prefix, int count) {
+        return scanAndRead(prefix, count, Pipeline::smembers);
+    }
+
+    // Removes the keys that start with the prefix. Each batch of scanned keys is removed with a single UNLINK, which
+    // frees the memory in the background. Returns the number of the removed keys.
+    public long purgeByPrefix(String prefix, int count) {
+        return execute(jedis -> {
+            long[] removed = { 0 };
+
+            scan(jedis, prefix, count, keys -> removed[0] += jedis.unlink(keys.toArray(new String[0])));
+
+            return removed[0];
+        });
+    }
+
+    // The values of each batch of scanned keys are read with a single pipeline
+    private <T> Map<String, T> scanAndRead(String prefix, int count,
+            BiFunction<Pipeline, String, Response<T>> read) {
+        return execute(jedis -> {
+            Map<String, T> values = new HashMap<>();
+
+            scan(jedis, prefix, count, keys -> {
+                Map<String, Response<T>> responses = new HashMap<>();
+                Pipeline pipeline = jedis.pipelined();
+
+                for (String key : keys) {
+                    responses.put(key, read.apply(pipeline, key));
+                }
+
+                pipeline.sync();
+
+                for (Map.Entry<String, Response<T>> response : responses.entrySet()) {
+                    T value = response.getValue().get();
+
+                    // A key removed between the scan and the read is left out
+                    if (value != null) {
+                        values.put(response.getKey(), value);
+                    }
+                }
+            });
+
+            return values;
+        });
+    }
+
+    // The keys are listed with SCAN, so Redis is not blocked like with KEYS. The count is a hint of how many keys
+    // Redis goes through per call. The batches without matching keys are not passed on.
+    private void scan(Jedis jedis, String prefix, int count, Consumer<List<String>> batch) {
+        ScanParams scanParams = new ScanParams().match(prefix + "*").count(count);
+        String cursor = ScanParams.SCAN_POINTER_START;
+
+        do {
+            ScanResult<String> scanResult = jedis.scan(cursor, scanParams);
+
+            if (!scanResult.getResult().isEmpty()) {
+                batch.accept(scanResult.getResult());
+            }
+
+            cursor = scanResult.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    ////////////
+    // Common //
+    ////////////
+
+    public <T> T execute(Function<Jedis, T> command) {
+        try (Jedis jedis = getPool().getResource()) {
+            return command.apply(jedis);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private synchronized Pool<Jedis> getPool() {
+        if (pool == null) {
+            pool = createPool(System.getenv());
+        }
+
+        return pool;
+    }
+
+    private Pool<Jedis> createPool(Map<String, String> env) {
+        var poolConfig = Redis.buildPoolConfig(4, 2, 0, false, false, false, Duration.ofSeconds(60),
+                Duration.ofSeconds(30), 3, true);
+        String redisPassword = blankToNull(env.get("REDIS_PASSWORD"));
+        String sentinelPassword = blankToNull(env.get("REDIS_SENTINEL_PASSWORD"));
+
+        if (Boolean.parseBoolean(env.get("REDIS_USE_SENTINEL"))) {
+            LOG.info("RedisCommands :: Connecting to Redis through Sentinel");
+
+            return new JedisSentinelPool(
+                    env.get("REDIS_SENTINEL_MASTER"),
+                    Set.of(HostAndPort.from(env.get("REDIS_SENTINEL_HOST") + ":" + env.get("REDIS_SENTINEL_PORT"))),
+                    poolConfig,
+                    DefaultJedisClientConfig.builder().password(redisPassword).build(),
+                    DefaultJedisClientConfig.builder().password(sentinelPassword).build());
+        }
+
+        String redisHost = env.getOrDefault("REDIS_HOST", "localhost");
+        int redisPort = env.get("REDIS_PORT") != null ? Integer.parseInt(env.get("REDIS_PORT")) : 6379;
+
+        return new JedisPool(poolConfig, new HostAndPort(redisHost, redisPort),
+                DefaultJedisClientConfig.builder().password(redisPassword).build());
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+}
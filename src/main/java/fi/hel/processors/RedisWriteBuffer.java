@@ -0,0 +1,393 @@
+package fi.hel.processors;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import redis.clients.jedis.Transaction;
+
+// Collects the writes of the key mappings, the previous key infos and the key digests, and writes them to Redis as a
+// single MULTI/EXEC transaction at the checkpoints of a run or when writeBehindBatchSize keys have been written. Only
+// the last write of each Redis key is kept. The reads of the buffered keys go through get and getSet, so a run sees
+// its own writes before they have been flushed. The writes left by a failed run are flushed at the next checkpoint.
+//
+// The writes that belong together are added with a single call, so they are always flushed in the same transaction.
+// Without buffering they are written with the Lua scripts of RedisScripts, so they are atomic in both modes.
+//
+// The key mappings and their removal are written at once also when the writes are buffered. They record changes
+// already made in Efecte and iLOQ, e.g. a created key card, and if they were lost with a pod that dies before the
+// flush, the next run would fail on the missing mapping or create the key card again. Only the writes that a later
+// run can rebuild, the previous key infos and the digests, are buffered.
+//
+// A run can preload the key mappings and the previous key infos into a snapshot. The reads of the preloaded keys are
+// then answered from memory, and a write that would not change the value is not sent to Redis at all. The snapshot
+// is kept up to date by the writes of the buffer, and it is dropped when the run ends.
+@ApplicationScoped
+@Named("redisWriteBuffer")
+public class RedisWriteBuffer {
+
+    private static final Logger LOG = Logger.getLogger(RedisWriteBuffer.class);
+
+    @Inject
+    ResourceInjector ri;
+    @ConfigProperty(name = "app.name")
+    String appName;
+    @ConfigProperty(name = "app.configuration.redis.writeBehindBatchSize")
+    int writeBehindBatchSize;
+    @ConfigProperty(name = "app.configuration.redis.preloadMappings")
+    boolean preloadMappings;
+    @ConfigProperty(name = "app.configuration.redis.scanCount")
+    int scanCount;
+
+    private interface PendingWrite {
+    }
+
+    // An expiration of 0 keeps the value without expiring it
+    private record SetValue(String value, long expirationSeconds) implements PendingWrite {
+    }
+
+    private record ReplaceSet(Set<String> members) implements PendingWrite {
+    }
+
+    private record Delete() implements PendingWrite {
+    }
+
+    private static final PendingWrite ABSENT = new Delete();
+
+    private final Map<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+    // The values of the preloaded keys as they are in Redis. A preloaded key missing from the snapshot does not exist.
+    private final Map<String, PendingWrite> snapshot = new HashMap<>();
+    private List<String> snapshotPrefixes = List.of();
+
+    public synchronized void set(String key, String value) throws Exception {
+        SetValue setValue = new SetValue(value, 0);
+
+        if (isUnchanged(key, setValue)) {
+            return;
+        }
+
+        remember(key, setValue);
+
+        if (isWriteThrough()) {
+            ri.getRedis().set(key, value);
+            return;
+        }
+
+        add(key, setValue);
+        flushIfFull();
+    }
+
+    public synchronized void setAll(Map<String, String> values) throws Exception {
+        Map<String, String> changedValues = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            SetValue setValue = new SetValue(entry.getValue(), 0);
+
+            if (!isUnchanged(entry.getKey(), setValue)) {
+                changedValues.put(entry.getKey(), entry.getValue());
+                remember(entry.getKey(), setValue);
+            }
+        }
+
+        if (changedValues.isEmpty()) {
+            return;
+        }
+
+        if (isWriteThrough()) {
+            ri.getRedisScripts().setAll(changedValues);
+            return;
+        }
+
+        for (Map.Entry<String, String> entry : changedValues.entrySet()) {
+            add(entry.getKey(), new SetValue(entry.getValue(), 0));
+        }
+
+        flushIfFull();
+    }
+
+    // Writes the values at once with a single script, whether the writes are buffered or not. A pending write of the
+    // same key is dropped, as it is older.
+    public synchronized void setAllNow(Map<String, String> values) throws Exception {
+        Map<String, String> changedValues = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            SetValue setValue = new SetValue(entry.getValue(), 0);
+
+            if (pendingWrites.remove(entry.getKey()) != null || !isUnchanged(entry.getKey(), setValue)) {
+                changedValues.put(entry.getKey(), entry.getValue());
+                remember(entry.getKey(), setValue);
+            }
+        }
+
+        if (!changedValues.isEmpty()) {
+            ri.getRedisScripts().setAll(changedValues);
+        }
+    }
+
+    // Sets the value and replaces the members of the set instead of adding to them
+    public synchronized void setAndReplaceSet(String key, String value, String setKey, Set<String> members)
+            throws Exception {
+        SetValue setValue = new SetValue(value, 0);
+        ReplaceSet replaceSet = new ReplaceSet(Set.copyOf(members));
+
+        if (isUnchanged(key, setValue) && isUnchanged(setKey, replaceSet)) {
+            return;
+        }
+
+        remember(key, setValue);
+        remember(setKey, replaceSet);
+
+        if (isWriteThrough()) {
+            ri.getRedisScripts().setAndReplaceSet(key, value, setKey, members);
+            return;
+        }
+
+        add(key, setValue);
+        add(setKey, replaceSet);
+        flushIfFull();
+    }
+
+    // Written at once, as the removed keys include the key mappings. The pending writes of the keys are dropped, so
+    // a later flush does not bring them back.
+    public synchronized void deleteAndSetex(List<String> deletedKeys, String key, String value,
+            long expirationSeconds) throws Exception {
+        for (String deletedKey : deletedKeys) {
+            pendingWrites.remove(deletedKey);
+            remember(deletedKey, ABSENT);
+        }
+
+        pendingWrites.remove(key);
+        ri.getRedisScripts().deleteAndSetex(deletedKeys, key, value, expirationSeconds);
+    }
+
+    public synchronized void setex(String key, String value, long expirationSeconds) throws Exception {
+        if (isWriteThrough()) {
+            ri.getRedis().setex(key, value, expirationSeconds);
+            return;
+        }
+
+        add(key, new SetValue(value, expirationSeconds));
+        flushIfFull();
+    }
+
+    public synchronized void del(String key) throws Exception {
+        if (isUnchanged(key, ABSENT)) {
+            return;
+        }
+
+        remember(key, ABSENT);
+
+        if (isWriteThrough()) {
+            ri.getRedis().del(key);
+            return;
+        }
+
+        add(key, new Delete());
+        flushIfFull();
+    }
+
+    public synchronized String get(String key) throws Exception {
+        PendingWrite knownValue = getKnownValue(key);
+
+        if (knownValue == null) {
+            return ri.getRedis().get(key);
+        }
+
+        return knownValue instanceof SetValue setValue ? setValue.value() : null;
+    }
+
+    public synchronized Set<String> getSet(String key) throws Exception {
+        PendingWrite knownValue = getKnownValue(key);
+
+        if (knownValue == null) {
+            return ri.getRedis().getSet(key);
+        }
+
+        return knownValue instanceof ReplaceSet replaceSet ? new HashSet<>(replaceSet.members()) : new HashSet<>();
+    }
+
+    // Reads the key mappings and the previous key infos into the snapshot. The buffer is not locked during the scan,
+    // as no other run writes these keys while the leader route is held. The snapshot is dropped when the exchange of
+    // the run completes, also when the run fails.
+    public void preload(Exchange ex) {
+        if (!preloadMappings) {
+            return;
+        }
+
+        List<String> prefixes = List.of(
+                ri.getMappedKeyILoqPrefix(),
+                ri.getPreviousKeyEfectePrefix(),
+                ri.getPreviousKeyILoqPrefix());
+        Map<String, PendingWrite> values = new HashMap<>();
+
+        ri.getRedisCommands().scanValues(ri.getMappedKeyILoqPrefix(), scanCount)
+                .forEach((key, value) -> values.put(key, new SetValue(value, 0)));
+        ri.getRedisCommands().scanValues(ri.getPreviousKeyEfectePrefix(), scanCount)
+                .forEach((key, value) -> values.put(key, new SetValue(value, 0)));
+        ri.getRedisCommands().scanSets(ri.getPreviousKeyILoqPrefix(), scanCount)
+                .forEach((key, members) -> values.put(key, new ReplaceSet(Set.copyOf(members))));
+
+        synchronized (this) {
+            snapshot.clear();
+            snapshot.putAll(values);
+            snapshotPrefixes = prefixes;
+        }
+
+        ex.getExchangeExtension().addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(Exchange exchange) {
+                clearSnapshot();
+            }
+        });
+
+        LOG.infof("%s :: RedisWriteBuffer :: Preloaded %d key mappings and previous key infos", appName,
+                values.size());
+    }
+
+    public synchronized void clearSnapshot() {
+        snapshot.clear();
+        snapshotPrefixes = List.of();
+    }
+
+    // The buffer is kept locked until the transaction has been executed, so the reads never fall between the buffer
+    // and Redis
+    public synchronized void flush() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+
+        int count = pendingWrites.size();
+
+        ri.getRedisCommands().execute(jedis -> {
+            Transaction transaction = jedis.multi();
+
+            for (Map.Entry<String, PendingWrite> entry : pendingWrites.entrySet()) {
+                String key = entry.getKey();
+
+                if (entry.getValue() instanceof SetValue setValue) {
+                    if (setValue.expirationSeconds() > 0) {
+                        transaction.setex(key, setValue.expirationSeconds(), setValue.value());
+                    } else {
+                        transaction.set(key, setValue.value());
+                    }
+                } else if (entry.getValue() instanceof ReplaceSet replaceSet) {
+                    transaction.del(key);
+
+                    if (!replaceSet.members().isEmpty()) {
+                        transaction.sadd(key, replaceSet.members().toArray(new String[0]));
+                    }
+                } else {
+                    transaction.del(key);
+                }
+            }
+
+            return transaction.exec();
+        });
+
+        pendingWrites.clear();
+        LOG.debugf("%s :: RedisWriteBuffer :: Flushed %d buffered Redis writes", appName, count);
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingWrites.size();
+    }
+
+    @PreDestroy
+    void close() {
+        try {
+            flush();
+        } catch (Exception e) {
+            LOG.errorf("%s :: RedisWriteBuffer :: Flushing %d buffered Redis writes failed on shutdown: %s", appName,
+                    pendingWrites.size(), e.getMessage());
+        }
+    }
+
+    // The pending write of the key, or its value in the snapshot when the key has been preloaded. Returns null when
+    // the key has to be read from Redis.
+    private PendingWrite getKnownValue(String key) {
+        PendingWrite pendingWrite = pendingWrites.get(key);
+
+        if (pendingWrite != null) {
+            return pendingWrite;
+        }
+
+        if (isPreloaded(key)) {
+            return snapshot.getOrDefault(key, ABSENT);
+        }
+
+        return null;
+    }
+
+    private boolean isUnchanged(String key, PendingWrite write) {
+        PendingWrite knownValue = getKnownValue(key);
+
+        if (knownValue == null) {
+            return false;
+        }
+
+        if (write instanceof SetValue setValue) {
+            return knownValue instanceof SetValue knownSetValue
+                    && knownSetValue.expirationSeconds() == 0
+                    && Objects.equals(knownSetValue.value(), setValue.value());
+        }
+
+        if (write instanceof ReplaceSet replaceSet) {
+            return knownValue instanceof ReplaceSet knownReplaceSet
+                    && knownReplaceSet.members().equals(replaceSet.members());
+        }
+
+        return knownValue instanceof Delete;
+    }
+
+    private void remember(String key, PendingWrite write) {
+        if (!isPreloaded(key)) {
+            return;
+        }
+
+        if (write instanceof Delete) {
+            snapshot.remove(key);
+        } else {
+            snapshot.put(key, write);
+        }
+    }
+
+    private boolean isPreloaded(String key) {
+        for (String prefix : snapshotPrefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void add(String key, PendingWrite pendingWrite) {
+        // Moved to the end, so the writes are flushed in the order of their last change
+        pendingWrites.remove(key);
+        pendingWrites.put(key, pendingWrite);
+    }
+
+    private void flushIfFull() {
+        if (pendingWrites.size() >= writeBehindBatchSize) {
+            flush();
+        }
+    }
+
+    private boolean isWriteThrough() {
+        return writeBehindBatchSize <= 1;
+    }
+
+}
@@ -4,10 +4,14 @@ import org.apache.camel.CamelContext;
 import org.apache.camel.ProducerTemplate;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.devikone.service.RedisScripts;
 import com.devikone.transports.Redis;
 
 import fi.hel.configurations.ConfigProvider;
+import fi.hel.configurations.CustomerCodeScope;
+import fi.hel.mappers.EfecteEntityReader;
 import fi.hel.mappers.EfecteKeyMapper;
+import fi.hel.mappers.ILoqKeyListReader;
 import fi.hel.mappers.ILoqKeyMapper;
 import fi.hel.mappers.ILoqPersonMapper;
 import fi.hel.resolvers.EfectePersonResolver;
@@ -38,6 +42,18 @@ public class ResourceInjector {
     @Inject
     ILoqKeyMapper iLoqKeyMapper;
     @Inject
+    ILoqKeyListReader iLoqKeyListReader;
+    @Inject
+    EfecteEntityReader efecteEntityReader;
+    @Inject
+    RedisCommands redisCommands;
+    @Inject
+    RedisWriteBuffer redisWriteBuffer;
+    @Inject
+    RedisScripts redisScripts;
+    @Inject
+    PersonMappingStore personMappingStore;
+    @Inject
     ILoqPersonMapper iLoqPersonMapper;
     @Inject
     EfecteKeyProcessor efecteKeyProcessor;
@@ -50,6 +66,14 @@ public class ResourceInjector {
     @Inject
     AuditExceptionProcessor auditExceptionProcessor;
     @Inject
+    ILoqSessionPool iLoqSessionPool;
+    @Inject
+    ILoqSessionContext iLoqSessionContext;
+    @Inject
+    CustomerCodeScope customerCodeScope;
+    @Inject
+    ILoqRequestCache iLoqRequestCache;
+    @Inject
     Helper helper;
 
     ///////////////////////
@@ -57,6 +81,7 @@ public class ResourceInjector {
     ///////////////////////
 
     // Redis prefixes:
+    // The iLoqCurrent* prefixes are resolved per customer code when a customer code scope is active
     @ConfigProperty(name = "app.redis.prefix.maxUpdated")
     String maxUpdatedPrefix;
     @ConfigProperty(name = "app.redis.prefix.iLoqCurrentBaseUrl")
@@ -99,6 +124,14 @@ public class ResourceInjector {
     String auditRecordKeyPrefix;
     @ConfigProperty(name = "app.redis.prefix.auditRecord.iLoq.person")
     String auditRecordPersonPrefix;
+    @ConfigProperty(name = "app.redis.prefix.keyDigest.iLoq")
+    String keyDigestILoqPrefix;
+    @ConfigProperty(name = "app.redis.prefix.keyDigest.efecte")
+    String keyDigestEfectePrefix;
+    @ConfigProperty(name = "app.redis.prefix.iLoqPersonDirectory")
+    String iLoqPersonDirectoryPrefix;
+    @ConfigProperty(name = "app.redis.prefix.iLoqSession")
+    String iLoqSessionPrefix;
 
     // Routes Redis:
     @ConfigProperty(name = "app.routes.redis.saveILoqBaseUrlToRedis")
@@ -113,6 +146,12 @@ public class ResourceInjector {
     // Routes Efecte:
     @ConfigProperty(name = "app.routes.efecte.getEfecteEntity")
     String getEfecteEntityEndpointUri;
+    @ConfigProperty(name = "app.routes.efecte.processEfecteImportBatch")
+    String processEfecteImportBatchEndpointUri;
+
+    // Routes controller:
+    @ConfigProperty(name = "app.routes.controller.iLoq.completeEfecteKeyUpdate")
+    String completeEfecteKeyUpdateEndpointUri;
 
     // Routes iLOQ:
     @ConfigProperty(name = "app.routes.iLoq.configureILoqSession")
@@ -176,6 +215,30 @@ public class ResourceInjector {
         return this.iLoqKeyMapper;
     }
 
+    public ILoqKeyListReader getILoqKeyListReader() {
+        return this.iLoqKeyListReader;
+    }
+
+    public EfecteEntityReader getEfecteEntityReader() {
+        return this.efecteEntityReader;
+    }
+
+    public RedisCommands getRedisCommands() {
+        return this.redisCommands;
+    }
+
+    public RedisWriteBuffer getRedisWriteBuffer() {
+        return this.redisWriteBuffer;
+    }
+
+    public RedisScripts getRedisScripts() {
+        return this.redisScripts;
+    }
+
+    public PersonMappingStore getPersonMappingStore() {
+        return this.personMappingStore;
+    }
+
     public ILoqPersonMapper getILoqPersonMapper() {
         return this.iLoqPersonMapper;
     }
@@ -193,11 +256,11 @@ public class ResourceInjector {
     }
 
     public String getILoqCurrentBaseUrlPrefix() {
-        return this.iLoqCurrentBaseUrlPrefix;
+        return this.customerCodeScope.scopeKey(this.iLoqCurrentBaseUrlPrefix);
     }
 
     public String getILoqCurrentSessionIdPrefix() {
-        return this.iLoqCurrentSessionIdPrefix;
+        return this.customerCodeScope.scopeKey(this.iLoqCurrentSessionIdPrefix);
     }
 
     public String getMappedKeyEfectePrefix() {
@@ -265,15 +328,15 @@ public class ResourceInjector {
     }
 
     public String getILoqCurrentCustomerCodePrefix() {
-        return this.iLoqCurrentCustomerCodePrefix;
+        return this.customerCodeScope.scopeKey(this.iLoqCurrentCustomerCodePrefix);
     }
 
     public String getILoqCurrentCustomerCodePasswordPrefix() {
-        return this.iLoqCurrentCustomerCodePasswordPrefix;
+        return this.customerCodeScope.scopeKey(this.iLoqCurrentCustomerCodePasswordPrefix);
     }
 
     public String getILoqCurrentCustomerCodeHasChangedPrefix() {
-        return this.iLoqCurrentCustomerCodeHasChangedPrefix;
+        return this.customerCodeScope.scopeKey(this.iLoqCurrentCustomerCodeHasChangedPrefix);
     }
 
     public String getSaveILoqSessionStatusToRedisEndpointUri() {
@@ -292,6 +355,14 @@ public class ResourceInjector {
         return this.getEfecteEntityEndpointUri;
     }
 
+    public String getProcessEfecteImportBatchEndpointUri() {
+        return this.processEfecteImportBatchEndpointUri;
+    }
+
+    public String getCompleteEfecteKeyUpdateEndpointUri() {
+        return this.completeEfecteKeyUpdateEndpointUri;
+    }
+
     public EfecteKeyResolver getEfecteKeyResolver() {
         return this.efecteKeyResolver;
     }
@@ -316,6 +387,22 @@ public class ResourceInjector {
         return this.auditExceptionProcessor;
     }
 
+    public ILoqSessionPool getILoqSessionPool() {
+        return this.iLoqSessionPool;
+    }
+
+    public ILoqSessionContext getILoqSessionContext() {
+        return this.iLoqSessionContext;
+    }
+
+    public CustomerCodeScope getCustomerCodeScope() {
+        return this.customerCodeScope;
+    }
+
+    public ILoqRequestCache getILoqRequestCache() {
+        return this.iLoqRequestCache;
+    }
+
     public EfectePersonResolver getEfectePersonResolver() {
         return this.efectePersonResolver;
     }
@@ -364,4 +451,20 @@ public class ResourceInjector {
         return this.auditRecordPersonPrefix;
     }
 
+    public String getKeyDigestILoqPrefix() {
+        return this.keyDigestILoqPrefix;
+    }
+
+    public String getKeyDigestEfectePrefix() {
+        return this.keyDigestEfectePrefix;
+    }
+
+    public String getILoqPersonDirectoryPrefix() {
+        return this.iLoqPersonDirectoryPrefix;
+    }
+
+    public String getILoqSessionPrefix() {
+        return this.iLoqSessionPrefix;
+    }
+
 }
@@ -4,9 +4,6 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
-
-import org.json.JSONObject;
 
 import fi.hel.models.EfecteEntity;
 import fi.hel.models.EfecteEntityIdentifier;
@@ -15,7 +12,6 @@ import fi.hel.models.EnrichedILoqKey;
 import fi.hel.models.ILoqPerson;
 import fi.hel.models.ILoqSecurityAccess;
 import fi.hel.models.builders.EfecteEntityBuilder;
-import fi.hel.models.enumerations.EnumEfecteAttribute;
 import fi.hel.processors.ResourceInjector;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -51,10 +47,10 @@ public class EfecteKeyResolver {
             // efectePersonIdentifier = "firstsName lastName" or an EfecteEntityIdentifier json, meaning no "Key Holder" entity was found
             // therefore we want to build the equal Efecte key with an outsider to also check that possibility
             entityBuilder.withIsOutsider(true);
-            if (isEfecteEntityIdentifierJson(efectePersonIdentifier)) {
+            EfecteEntityIdentifier efecteEntityIdentifier = readOutsiderIdentifier(efectePersonIdentifier);
+
+            if (efecteEntityIdentifier != null) {
                 // Person has been mapped, but is an outsider
-                EfecteEntityIdentifier efecteEntityIdentifier = ri.getHelper().writeAsPojo(efectePersonIdentifier,
-                        EfecteEntityIdentifier.class);
                 entityBuilder
                         .withOutsiderEmail(efecteEntityIdentifier.getOutsiderEmail())
                         .withOutsiderName(efecteEntityIdentifier.getOutsiderName());
@@ -74,25 +70,14 @@ public class EfecteKeyResolver {
     public EfecteEntity findMatchingEfecteKey(
             EfecteEntity builtKey, List<EfecteEntity> efecteKeys)
             throws Exception {
-        if (hasKeyHolder(builtKey)) {
-            for (EfecteEntity key : efecteKeys) {
-                if (hasKeyHolder(key)) {
-                    if (hasMatchingKeyHolder(builtKey, key) && hasMatchingSecurityAccesses(builtKey, key)) {
-                        return key;
-                    }
-                }
-            }
-        } else {
-            for (EfecteEntity key : efecteKeys) {
-                if (!hasKeyHolder(key)) {
-                    if (hasMatchingOutsider(builtKey, key) && hasMatchingSecurityAccesses(builtKey, key)) {
-                        return key;
-                    }
-                }
-            }
-        }
+        return claimMatchingEfecteKey(builtKey, new UnmappedEfecteKeyIndex(efecteKeys));
+    }
 
-        return null;
+    // The matched key card is removed from the index
+    public EfecteEntity claimMatchingEfecteKey(
+            EfecteEntity builtKey, UnmappedEfecteKeyIndex efecteKeys)
+            throws Exception {
+        return efecteKeys.claim(builtKey);
     }
 
     public Set<String> getNewEfecteSecurityAccessEntityIds(Set<ILoqSecurityAccess> iLoqSecurityAccesses)
@@ -120,61 +105,6 @@ public class EfecteKeyResolver {
         return references;
     }
 
-    private boolean hasMatchingKeyHolder(EfecteEntity builtKey, EfecteEntity key) throws Exception {
-        String builtKeyKeyHolderId = builtKey.getAttributeReferences(EnumEfecteAttribute.KEY_HOLDER).get(0).getId();
-        String keyKeyHolderId = key.getAttributeReferences(EnumEfecteAttribute.KEY_HOLDER).get(0).getId();
-
-        return keyKeyHolderId.equals(builtKeyKeyHolderId);
-    }
-
-    private boolean hasMatchingOutsider(EfecteEntity builtKey, EfecteEntity key) throws Exception {
-        String builtKeyOutsiderName = builtKey.getAttributeValue(EnumEfecteAttribute.KEY_OUTSIDER_NAME);
-
-        if (hasMappedOutsider(builtKey)) {
-            String builtKeyOutsiderEmail = builtKey.getAttributeValue(EnumEfecteAttribute.KEY_OUTSIDER_EMAIL);
-
-            try {
-                String keyOutsiderEmail = key.getAttributeValue(EnumEfecteAttribute.KEY_OUTSIDER_EMAIL);
-                String keyOutsiderName = key.getAttributeValue(EnumEfecteAttribute.KEY_OUTSIDER_NAME);
-
-                return keyOutsiderEmail.equals(builtKeyOutsiderEmail) && keyOutsiderName.equals(builtKeyOutsiderName);
-            } catch (Exception e) {
-                return false;
-            }
-        } else {
-            try {
-                String keyOutsiderName = key.getAttributeValue(EnumEfecteAttribute.KEY_OUTSIDER_NAME);
-
-                return keyOutsiderName.equals(builtKeyOutsiderName);
-            } catch (Exception e) {
-                return false;
-            }
-        }
-    }
-
-    private boolean hasMatchingSecurityAccesses(EfecteEntity builtKey, EfecteEntity key) throws Exception {
-        List<EfecteReference> keySecurityAccesses = key.getAttributeReferences(EnumEfecteAttribute.KEY_SECURITY_ACCESS);
-        List<EfecteReference> builtKeySecurityAccesses = builtKey
-                .getAttributeReferences(EnumEfecteAttribute.KEY_SECURITY_ACCESS);
-
-        if (keySecurityAccesses == null && builtKeySecurityAccesses == null) {
-            return true;
-        }
-
-        if (keySecurityAccesses == null || builtKeySecurityAccesses == null) {
-            return false;
-        }
-
-        Set<String> keySecurityAccessEntityIds = keySecurityAccesses.stream()
-                .map(sa -> sa.getId())
-                .collect(Collectors.toSet());
-        Set<String> builtKeySecurityAccessEntityIds = builtKeySecurityAccesses.stream()
-                .map(sa -> sa.getId())
-                .collect(Collectors.toSet());
-
-        return keySecurityAccessEntityIds.equals(builtKeySecurityAccessEntityIds);
-    }
-
     private boolean isValidEntityId(String entityId) {
         try {
             Integer.parseInt(entityId);
@@ -184,30 +114,23 @@ public class EfecteKeyResolver {
         }
     }
 
-    private boolean isEfecteEntityIdentifierJson(String input) {
-        try {
-            new JSONObject(input);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
-    }
+    // The mapped outsider is stored either as JSON or in the compact format, so it is read with the helper instead
+    // of checking the format. Returns null for a plain outsider name.
+    private EfecteEntityIdentifier readOutsiderIdentifier(String input) {
+        EfecteEntityIdentifier efecteEntityIdentifier;
 
-    private boolean hasKeyHolder(EfecteEntity key) throws Exception {
         try {
-            key.getAttributeReferences(EnumEfecteAttribute.KEY_HOLDER);
-            return true;
+            efecteEntityIdentifier = ri.getHelper().writeAsPojo(input, EfecteEntityIdentifier.class);
         } catch (Exception e) {
-            return false;
+            return null;
         }
-    }
 
-    private boolean hasMappedOutsider(EfecteEntity key) throws Exception {
-        try {
-            key.getAttributeReferences(EnumEfecteAttribute.KEY_OUTSIDER_EMAIL);
-            return true;
-        } catch (Exception e) {
-            return false;
+        if (efecteEntityIdentifier == null
+                || (efecteEntityIdentifier.getOutsiderName() == null
+                        && efecteEntityIdentifier.getOutsiderEmail() == null)) {
+            return null;
         }
+
+        return efecteEntityIdentifier;
     }
 }
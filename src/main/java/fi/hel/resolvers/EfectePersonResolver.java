@@ -1,9 +1,17 @@
 package fi.hel.resolvers;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.builder.ExchangeBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
 
 import fi.hel.models.EfecteEntity;
 import fi.hel.models.EfecteEntityIdentifier;
@@ -13,13 +21,25 @@ import fi.hel.models.enumerations.EnumEfecteAttribute;
 import fi.hel.processors.ResourceInjector;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 
 @ApplicationScoped
+@Named("efectePersonResolver")
 @SuppressWarnings("unchecked")
 public class EfectePersonResolver {
 
+    private static final Logger LOG = Logger.getLogger(EfectePersonResolver.class);
+
     @Inject
     ResourceInjector ri;
+    @ConfigProperty(name = "app.name")
+    String appName;
+    @ConfigProperty(name = "app.configuration.efecte.personQueryMaxLength")
+    int personQueryMaxLength;
+
+    // The Efecte persons found by name during the run, keyed by the customer code and the normalized name. Every key
+    // of the same person uses the same search result.
+    private final Map<String, List<EfecteEntity>> efectePersonsByName = new ConcurrentHashMap<>();
 
     ////////////////////
     // iLOQ -> Efecte //
@@ -29,14 +49,15 @@ public class EfectePersonResolver {
         String iLoqPersonId = iLoqPerson.getPersonId();
 
         String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
-        String efectePersonIdentifierJson = ri.getRedis().get(ri.getMappedPersonILoqPrefix() + cc + ":" + iLoqPersonId);
+        String efectePersonIdentifierJson = ri.getPersonMappingStore().get(ri.getMappedPersonILoqPrefix(), cc,
+                iLoqPersonId);
         String efectePersonIdentifierValue = null;
 
         if (efectePersonIdentifierJson == null) {
             String firstName = getNormalizedString(iLoqPerson.getFirstName());
             String lastName = getNormalizedString(iLoqPerson.getLastName());
 
-            List<EfecteEntity> efectePersons = getEfectePerson(firstName, lastName);
+            List<EfecteEntity> efectePersons = findEfectePersons(cc, firstName, lastName);
 
             if (efectePersons.isEmpty()) {
                 return firstName + " " + lastName;
@@ -60,7 +81,9 @@ public class EfectePersonResolver {
             EfecteEntityIdentifier efecteEntityIdentifier = ri.getHelper().writeAsPojo(efectePersonIdentifierJson,
                     EfecteEntityIdentifier.class);
 
-            if (efecteEntityIdentifier.getOutsiderEmail() != null) {
+            // The outsider is passed on as stored, in JSON or in the compact format, and read by EfecteKeyResolver
+            if (efecteEntityIdentifier.getOutsiderName() != null
+                    || efecteEntityIdentifier.getOutsiderEmail() != null) {
                 efectePersonIdentifierValue = efectePersonIdentifierJson;
             } else {
                 efectePersonIdentifierValue = efecteEntityIdentifier.getEntityId();
@@ -70,6 +93,129 @@ public class EfectePersonResolver {
         return efectePersonIdentifierValue;
     }
 
+    // Searches the Efecte persons of the given iLOQ persons with OR queries, as many names per query as fit in
+    // personQueryMaxLength. A name whose query fails is left to be searched on its own by
+    // resolveEfectePersonIdentifier.
+    public void prefetchEfectePersons(List<ILoqPerson> iLoqPersons) throws Exception {
+        String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
+        Map<String, String> nameConditions = new LinkedHashMap<>();
+
+        for (ILoqPerson iLoqPerson : iLoqPersons) {
+            if (iLoqPerson.getFirstName() == null || iLoqPerson.getLastName() == null) {
+                continue;
+            }
+
+            String firstName = getNormalizedString(iLoqPerson.getFirstName());
+            String lastName = getNormalizedString(iLoqPerson.getLastName());
+            String nameKey = createNameKey(cc, firstName, lastName);
+
+            if (!efectePersonsByName.containsKey(nameKey) && !nameConditions.containsKey(nameKey)) {
+                nameConditions.put(nameKey, "($%s$ = '%s' AND $%s$ = '%s')".formatted(
+                        EnumEfecteAttribute.PERSON_FIRSTNAME.getCode(), ri.getHelper().urlEncode(firstName),
+                        EnumEfecteAttribute.PERSON_LASTNAME.getCode(), ri.getHelper().urlEncode(lastName)));
+            }
+        }
+
+        String queryStart = "SELECT entity FROM entity WHERE template.code = 'person' AND (";
+        Map<String, String> chunk = new LinkedHashMap<>();
+        int chunkLength = queryStart.length() + 1;
+
+        for (Map.Entry<String, String> nameCondition : nameConditions.entrySet()) {
+            int conditionLength = nameCondition.getValue().length() + " OR ".length();
+
+            if (!chunk.isEmpty() && chunkLength + conditionLength > personQueryMaxLength) {
+                searchEfectePersons(cc, queryStart, chunk);
+                chunk = new LinkedHashMap<>();
+                chunkLength = queryStart.length() + 1;
+            }
+
+            chunk.put(nameCondition.getKey(), nameCondition.getValue());
+            chunkLength += conditionLength;
+        }
+
+        if (!chunk.isEmpty()) {
+            searchEfectePersons(cc, queryStart, chunk);
+        }
+    }
+
+    public void resetCache() {
+        this.efectePersonsByName.clear();
+    }
+
+    private void searchEfectePersons(String cc, String queryStart, Map<String, String> nameConditions)
+            throws Exception {
+        String query = queryStart + String.join(" OR ", nameConditions.values()) + ")";
+
+        Exchange ex = new ExchangeBuilder(ri.getContext())
+                .withProperty("efecteEntityType", "person")
+                .withProperty("efecteQuery", query)
+                .build();
+
+        ri.getTemplate().send(ri.getGetEfecteEntityEndpointUri(), ex);
+
+        if (ex.getProperty(Exchange.EXCEPTION_CAUGHT) != null) {
+            LOG.warnf("%s :: EfectePersonResolver :: Searching %d Efecte persons with a single query failed, "
+                    + "the persons are searched one at a time", appName, nameConditions.size());
+            return;
+        }
+
+        Map<String, List<EfecteEntity>> efectePersons = new HashMap<>();
+
+        for (String nameKey : nameConditions.keySet()) {
+            efectePersons.put(nameKey, new ArrayList<>());
+        }
+
+        List<EfecteEntity> foundPersons = ex.getIn().getBody(List.class);
+
+        if (foundPersons != null) {
+            for (EfecteEntity efectePerson : foundPersons) {
+                String nameKey = createNameKey(cc, efectePerson);
+                List<EfecteEntity> matchingPersons = nameKey == null ? null : efectePersons.get(nameKey);
+
+                if (matchingPersons != null) {
+                    matchingPersons.add(efectePerson);
+                }
+            }
+        }
+
+        efectePersonsByName.putAll(efectePersons);
+    }
+
+    private List<EfecteEntity> findEfectePersons(String cc, String firstName, String lastName) throws Exception {
+        String nameKey = createNameKey(cc, firstName, lastName);
+        List<EfecteEntity> efectePersons = efectePersonsByName.get(nameKey);
+
+        if (efectePersons == null) {
+            efectePersons = getEfectePerson(firstName, lastName);
+
+            if (efectePersons != null) {
+                efectePersonsByName.put(nameKey, efectePersons);
+            }
+        }
+
+        return efectePersons;
+    }
+
+    // The case is ignored, so that the search results are found whatever the case of the names is in Efecte
+    private String createNameKey(String cc, String firstName, String lastName) {
+        return cc + ":" + (firstName + "|" + lastName).toLowerCase(Locale.ROOT);
+    }
+
+    private String createNameKey(String cc, EfecteEntity efectePerson) {
+        try {
+            String firstName = efectePerson.getAttributeValue(EnumEfecteAttribute.PERSON_FIRSTNAME);
+            String lastName = efectePerson.getAttributeValue(EnumEfecteAttribute.PERSON_LASTNAME);
+
+            if (firstName == null || lastName == null) {
+                return null;
+            }
+
+            return createNameKey(cc, getNormalizedString(firstName), getNormalizedString(lastName));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     private List<EfecteEntity> getEfectePerson(String firstName, String lastName) throws Exception {
         String query = """
                 SELECT entity
@@ -104,13 +250,10 @@ public class EfectePersonResolver {
         String entityId = efecteKeyHolder.getId();
         String efecteId = efecteKeyHolder.getAttributeValue(EnumEfecteAttribute.PERSON_EFECTE_ID);
         EfecteEntityIdentifier efecteEntityIdentifier = new EfecteEntityIdentifier(entityId, efecteId);
-        String efecteEntityIdentifierJson = ri.getHelper().writeAsJson(efecteEntityIdentifier);
-
-        String efectePrefix = ri.getMappedPersonEfectePrefix() + cc + ":" + entityId;
-        String iLoqPrefix = ri.getMappedPersonILoqPrefix() + cc + ":" + iLoqPersonId;
+        String efecteEntityIdentifierJson = ri.getHelper().writeAsRedisValue(efecteEntityIdentifier);
 
-        ri.getRedis().set(efectePrefix, iLoqPersonId);
-        ri.getRedis().set(iLoqPrefix, efecteEntityIdentifierJson);
+        ri.getPersonMappingStore().set(ri.getMappedPersonEfectePrefix(), cc, entityId, iLoqPersonId);
+        ri.getPersonMappingStore().set(ri.getMappedPersonILoqPrefix(), cc, iLoqPersonId, efecteEntityIdentifierJson);
     }
 
     private String getNormalizedString(String str) {
@@ -1,15 +1,21 @@
 package fi.hel.resolvers;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.builder.ExchangeBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import fi.hel.models.EfecteEntity;
 import fi.hel.models.EfecteEntityIdentifier;
 import fi.hel.models.ILoqPerson;
+import fi.hel.models.ILoqPersonDirectory;
 import fi.hel.models.ILoqPersonImport;
 import fi.hel.models.enumerations.EnumEfecteAttribute;
 import fi.hel.processors.ResourceInjector;
@@ -25,12 +31,23 @@ public class ILoqPersonResolver {
 
     @Inject
     ResourceInjector ri;
+    @ConfigProperty(name = "app.configuration.iLoq.personDirectoryMaxAgeSeconds")
+    long personDirectoryMaxAgeSeconds;
+    @ConfigProperty(name = "app.configuration.redis.scanCount")
+    int scanCount;
 
     ////////////////////
     // Efecte -> iLOQ //
     ////////////////////
 
-    private List<ILoqPerson> iLoqPersons;
+    // The field of the persisted directory hash that holds the time of the last full refresh. The other fields are
+    // the normalized names, which always contain '|'.
+    private static final String REFRESHED_AT_FIELD = "refreshedAt";
+
+    // Person directories by customer code. They are persisted to Redis as a hash of the person ids by name, so that a
+    // created person is saved by setting a single field, and fully refreshed at most once per run.
+    private Map<String, ILoqPersonDirectory> personDirectories = new ConcurrentHashMap<>();
+    private Set<String> refreshedCustomerCodes = ConcurrentHashMap.newKeySet();
 
     public String resolveILoqPersonId(String keyHolderEntityId)
             throws Exception {
@@ -48,11 +65,7 @@ public class ILoqPersonResolver {
         String firstName = efectePerson.getAttributeValue(EnumEfecteAttribute.PERSON_FIRSTNAME);
         String lastName = efectePerson.getAttributeValue(EnumEfecteAttribute.PERSON_LASTNAME);
 
-        if (iLoqPersons == null) {
-            iLoqPersons = listILoqPersons();
-        }
-
-        iLoqPersonId = findMatchingPersonId(iLoqPersons, firstName, lastName);
+        iLoqPersonId = findMatchingPersonId(firstName, lastName);
 
         if (iLoqPersonId != null) {
             updateILoqPersonExternalId(iLoqPersonId, keyHolderEntityId);
@@ -62,9 +75,9 @@ public class ILoqPersonResolver {
                     keyHolderEntityId, personEfecteId);
 
             String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
-            ri.getRedis().set(ri.getMappedPersonEfectePrefix() + cc + ":" + keyHolderEntityId, iLoqPersonId);
-            ri.getRedis().set(ri.getMappedPersonILoqPrefix() + cc + ":" + iLoqPersonId,
-                    ri.getHelper().writeAsJson(efecteEntityIdentifier));
+            ri.getPersonMappingStore().set(ri.getMappedPersonEfectePrefix(), cc, keyHolderEntityId, iLoqPersonId);
+            ri.getPersonMappingStore().set(ri.getMappedPersonILoqPrefix(), cc, iLoqPersonId,
+                    ri.getHelper().writeAsRedisValue(efecteEntityIdentifier));
         }
 
         return iLoqPersonId;
@@ -82,12 +95,8 @@ public class ILoqPersonResolver {
             return null;
         }
 
-        if (iLoqPersons == null) {
-            iLoqPersons = listILoqPersons();
-        }
-
         Map<String, String> nameMap = getName(outsiderName);
-        iLoqPersonId = findMatchingPersonId(iLoqPersons, nameMap.get("firstName"), nameMap.get("lastName"));
+        iLoqPersonId = findMatchingPersonId(nameMap.get("firstName"), nameMap.get("lastName"));
 
         if (iLoqPersonId != null) {
             updateILoqPersonExternalId(iLoqPersonId, uniqueIdentifier);
@@ -97,17 +106,38 @@ public class ILoqPersonResolver {
             efecteEntityIdentifier.setOutsiderEmail(outsiderEmail);
 
             String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
-            ri.getRedis().set(
-                    ri.getMappedPersonEfectePrefix() + cc + ":" + uniqueIdentifier, iLoqPersonId);
-            ri.getRedis().set(ri.getMappedPersonILoqPrefix() + cc + ":" + iLoqPersonId,
-                    ri.getHelper().writeAsJson(efecteEntityIdentifier));
+            ri.getPersonMappingStore().set(ri.getMappedPersonEfectePrefix(), cc, uniqueIdentifier, iLoqPersonId);
+            ri.getPersonMappingStore().set(ri.getMappedPersonILoqPrefix(), cc, iLoqPersonId,
+                    ri.getHelper().writeAsRedisValue(efecteEntityIdentifier));
         }
 
         return iLoqPersonId;
     }
 
+    public void addPersonToDirectory(String iLoqPersonId, String firstName, String lastName) throws Exception {
+        String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
+        ILoqPersonDirectory directory = personDirectories.get(cc);
+
+        if (directory == null) {
+            directory = readPersonDirectory(cc);
+        }
+
+        // Without a directory there is nothing to keep up to date, the next full refresh will include the person
+        if (directory == null) {
+            return;
+        }
+
+        directory.addPerson(iLoqPersonId, firstName, lastName);
+        personDirectories.put(cc, directory);
+
+        ri.getRedisCommands().setHashField(getPersonDirectoryHash(cc),
+                ILoqPersonDirectory.createNameKey(firstName, lastName),
+                String.join(",", directory.findPersonIds(firstName, lastName)));
+    }
+
     public void resetCache() {
-        this.iLoqPersons = null;
+        this.personDirectories.clear();
+        this.refreshedCustomerCodes.clear();
     }
 
     private void updateILoqPersonExternalId(String iLoqPersonId, String externalId) throws Exception {
@@ -140,7 +170,7 @@ public class ILoqPersonResolver {
 
     private String getMappedId(String externalId) throws Exception {
         String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
-        String iLoqPersonId = ri.getRedis().get(ri.getMappedPersonEfectePrefix() + cc + ":" + externalId);
+        String iLoqPersonId = ri.getPersonMappingStore().get(ri.getMappedPersonEfectePrefix(), cc, externalId);
 
         if (iLoqPersonId != null) {
             return iLoqPersonId;
@@ -150,7 +180,7 @@ public class ILoqPersonResolver {
 
         if (iLoqPersonsByExternalId.size() == 1) {
             iLoqPersonId = iLoqPersonsByExternalId.get(0).getPersonId();
-            ri.getRedis().set(ri.getMappedPersonEfectePrefix() + cc + ":" + externalId, iLoqPersonId);
+            ri.getPersonMappingStore().set(ri.getMappedPersonEfectePrefix(), cc, externalId, iLoqPersonId);
 
             return iLoqPersonId;
         } else if (iLoqPersonsByExternalId.size() > 1) {
@@ -218,19 +248,24 @@ public class ILoqPersonResolver {
         return list;
     }
 
-    private String findMatchingPersonId(List<ILoqPerson> iLoqPersons, String firstName, String lastName)
-            throws Exception {
-        List<ILoqPerson> filteredPersons = iLoqPersons.stream()
-                .filter(person -> getNormalizedString(person.getFirstName()).equals(getNormalizedString(firstName))
-                        && getNormalizedString(person.getLastName()).equals(getNormalizedString(lastName)))
-                .toList();
+    private String findMatchingPersonId(String firstName, String lastName) throws Exception {
+        String cc = ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix());
+        List<String> matchingPersonIds = getPersonDirectory(cc).findPersonIds(firstName, lastName);
+
+        // iLOQ does not offer a change feed, so persons added, removed or renamed outside of the integration are
+        // found by refreshing the whole directory. Until it has been refreshed during the run, a single match is only
+        // trusted after the person has been confirmed from iLOQ.
+        if (!refreshedCustomerCodes.contains(cc)
+                && (matchingPersonIds.size() != 1 || !isCurrentPerson(matchingPersonIds.get(0), firstName, lastName))) {
+            matchingPersonIds = refreshPersonDirectory(cc).findPersonIds(firstName, lastName);
+        }
 
-        if (filteredPersons.isEmpty()) {
+        if (matchingPersonIds.isEmpty()) {
             System.out.println("No matching persons found");
             return null;
         }
 
-        if (filteredPersons.size() > 1) {
+        if (matchingPersonIds.size() > 1) {
             System.out.println("Multiple matches found");
             ri.getRedis().set(ri.getAuditMessagePrefix(),
                     "Could not find a unique match for the key holder named '" + firstName + " "
@@ -240,11 +275,93 @@ public class ILoqPersonResolver {
 
         System.out.println("Found one match");
 
-        return filteredPersons.get(0).getPersonId();
+        return matchingPersonIds.get(0);
+    }
+
+    // The person is read with the same request as in updateILoqPersonExternalId, so with the request caching the
+    // confirmation does not cost an extra call to iLOQ
+    private boolean isCurrentPerson(String iLoqPersonId, String firstName, String lastName) {
+        Exchange ex = new ExchangeBuilder(ri.getContext())
+                .withProperty("iLoqPersonId", iLoqPersonId)
+                .build();
+
+        ri.getTemplate().send(ri.getGetILoqPersonEndpointUri(), ex);
+
+        if (ex.getException() != null || ex.getProperty(Exchange.EXCEPTION_CAUGHT) != null) {
+            return false;
+        }
+
+        ILoqPerson iLoqPerson = ex.getIn().getBody(ILoqPerson.class);
+
+        return iLoqPerson != null
+                && ILoqPersonDirectory.createNameKey(iLoqPerson.getFirstName(), iLoqPerson.getLastName())
+                        .equals(ILoqPersonDirectory.createNameKey(firstName, lastName));
+    }
+
+    private ILoqPersonDirectory getPersonDirectory(String cc) throws Exception {
+        ILoqPersonDirectory directory = personDirectories.get(cc);
+
+        if (directory == null) {
+            directory = readPersonDirectory(cc);
+        }
+
+        if (directory == null) {
+            return refreshPersonDirectory(cc);
+        }
+
+        personDirectories.put(cc, directory);
+
+        return directory;
+    }
+
+    private ILoqPersonDirectory refreshPersonDirectory(String cc) throws Exception {
+        ILoqPersonDirectory directory = new ILoqPersonDirectory(System.currentTimeMillis());
+
+        for (ILoqPerson iLoqPerson : listILoqPersons()) {
+            directory.addPerson(iLoqPerson.getPersonId(), iLoqPerson.getFirstName(), iLoqPerson.getLastName());
+        }
+
+        personDirectories.put(cc, directory);
+        refreshedCustomerCodes.add(cc);
+        savePersonDirectory(cc, directory);
+
+        return directory;
+    }
+
+    private ILoqPersonDirectory readPersonDirectory(String cc) throws Exception {
+        Map<String, String> fields = new HashMap<>(
+                ri.getRedisCommands().getHash(getPersonDirectoryHash(cc), scanCount));
+        String refreshedAt = fields.remove(REFRESHED_AT_FIELD);
+
+        if (refreshedAt == null
+                || Long.parseLong(refreshedAt) + personDirectoryMaxAgeSeconds * 1000 < System.currentTimeMillis()) {
+            return null;
+        }
+
+        ILoqPersonDirectory directory = new ILoqPersonDirectory(Long.parseLong(refreshedAt));
+
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            directory.getPersons().put(field.getKey(), new ArrayList<>(Arrays.asList(field.getValue().split(","))));
+        }
+
+        return directory;
+    }
+
+    // The directory was persisted as a single JSON value before, which is removed once the hash has been written
+    private void savePersonDirectory(String cc, ILoqPersonDirectory directory) throws Exception {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(REFRESHED_AT_FIELD, String.valueOf(directory.getRefreshedAt()));
+
+        for (Map.Entry<String, List<String>> person : directory.getPersons().entrySet()) {
+            fields.put(person.getKey(), String.join(",", person.getValue()));
+        }
+
+        ri.getRedisCommands().replaceHash(getPersonDirectoryHash(cc), fields);
+        ri.getRedis().del(ri.getILoqPersonDirectoryPrefix() + cc);
     }
 
-    private String getNormalizedString(String str) {
-        return str.trim().replaceAll("\\s+", " ").toLowerCase();
+    private String getPersonDirectoryHash(String cc) {
+        return ri.getILoqPersonDirectoryPrefix() + cc + ":persons";
     }
 
     private Map<String, String> getName(String keyHolderName) {
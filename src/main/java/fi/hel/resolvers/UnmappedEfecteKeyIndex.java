@@ -0,0 +1,186 @@
+package fi.hel.resolvers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import fi.hel.models.EfecteEntity;
+import fi.hel.models.EfecteReference;
+import fi.hel.models.enumerations.EnumEfecteAttribute;
+
+// The unmapped Efecte key cards of a single address, indexed by the fields an iLOQ key is matched with: the key
+// holder or the outsider, and the security accesses. A key card that has been matched is claimed, i.e. removed from
+// the index, so that it can not be matched with another iLOQ key.
+public class UnmappedEfecteKeyIndex {
+
+    private final Map<String, List<EfecteEntity>> efecteKeysByMatchKey = new HashMap<>();
+    private final Map<EfecteEntity, List<String>> matchKeysByEfecteKey = new IdentityHashMap<>();
+
+    public UnmappedEfecteKeyIndex(List<EfecteEntity> efecteKeys) {
+        if (efecteKeys != null) {
+            efecteKeys.forEach(this::add);
+        }
+    }
+
+    public synchronized void add(EfecteEntity efecteKey) {
+        List<String> matchKeys = createMatchKeys(efecteKey);
+
+        for (String matchKey : matchKeys) {
+            efecteKeysByMatchKey.computeIfAbsent(matchKey, k -> new ArrayList<>()).add(efecteKey);
+        }
+
+        matchKeysByEfecteKey.put(efecteKey, matchKeys);
+    }
+
+    // Returns the first indexed key card matching the built key, in the order the key cards were listed
+    public synchronized EfecteEntity claim(EfecteEntity builtKey) {
+        String lookupKey = createLookupKey(builtKey);
+        List<EfecteEntity> candidates = lookupKey == null ? null : efecteKeysByMatchKey.get(lookupKey);
+
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+
+        EfecteEntity efecteKey = candidates.get(0);
+
+        for (String matchKey : matchKeysByEfecteKey.remove(efecteKey)) {
+            List<EfecteEntity> indexed = efecteKeysByMatchKey.get(matchKey);
+            indexed.removeIf(candidate -> candidate == efecteKey);
+
+            if (indexed.isEmpty()) {
+                efecteKeysByMatchKey.remove(matchKey);
+            }
+        }
+
+        return efecteKey;
+    }
+
+    public synchronized int size() {
+        return matchKeysByEfecteKey.size();
+    }
+
+    // A key card with a key holder is matched by the key holder. A key card of an outsider is matched by the name
+    // alone or, when the built key has a mapped outsider, by both the name and the email.
+    private static List<String> createMatchKeys(EfecteEntity efecteKey) {
+        List<String> matchKeys = new ArrayList<>();
+        String securityAccesses = getSecurityAccessFingerprint(efecteKey);
+
+        if (securityAccesses == null) {
+            return matchKeys;
+        }
+
+        if (hasAttribute(efecteKey, EnumEfecteAttribute.KEY_HOLDER)) {
+            String keyHolderId = getKeyHolderId(efecteKey);
+
+            if (keyHolderId != null) {
+                matchKeys.add(createHolderKey(keyHolderId, securityAccesses));
+            }
+
+            return matchKeys;
+        }
+
+        String outsiderName = getAttributeValue(efecteKey, EnumEfecteAttribute.KEY_OUTSIDER_NAME);
+        String outsiderEmail = getAttributeValue(efecteKey, EnumEfecteAttribute.KEY_OUTSIDER_EMAIL);
+
+        if (outsiderName != null) {
+            matchKeys.add(createOutsiderKey(outsiderName, securityAccesses));
+
+            if (outsiderEmail != null) {
+                matchKeys.add(createMappedOutsiderKey(outsiderName, outsiderEmail, securityAccesses));
+            }
+        }
+
+        return matchKeys;
+    }
+
+    private static String createLookupKey(EfecteEntity builtKey) {
+        String securityAccesses = getSecurityAccessFingerprint(builtKey);
+
+        if (securityAccesses == null) {
+            return null;
+        }
+
+        if (hasAttribute(builtKey, EnumEfecteAttribute.KEY_HOLDER)) {
+            String keyHolderId = getKeyHolderId(builtKey);
+
+            return keyHolderId == null ? null : createHolderKey(keyHolderId, securityAccesses);
+        }
+
+        String outsiderName = getAttributeValue(builtKey, EnumEfecteAttribute.KEY_OUTSIDER_NAME);
+
+        if (outsiderName == null) {
+            return null;
+        }
+
+        if (hasAttribute(builtKey, EnumEfecteAttribute.KEY_OUTSIDER_EMAIL)) {
+            String outsiderEmail = getAttributeValue(builtKey, EnumEfecteAttribute.KEY_OUTSIDER_EMAIL);
+
+            return outsiderEmail == null ? null
+                    : createMappedOutsiderKey(outsiderName, outsiderEmail, securityAccesses);
+        }
+
+        return createOutsiderKey(outsiderName, securityAccesses);
+    }
+
+    private static String createHolderKey(String keyHolderId, String securityAccesses) {
+        return String.join("\n", "holder", keyHolderId, securityAccesses);
+    }
+
+    private static String createOutsiderKey(String outsiderName, String securityAccesses) {
+        return String.join("\n", "outsider", outsiderName, securityAccesses);
+    }
+
+    private static String createMappedOutsiderKey(String outsiderName, String outsiderEmail,
+            String securityAccesses) {
+        return String.join("\n", "mappedOutsider", outsiderName, outsiderEmail, securityAccesses);
+    }
+
+    // The security accesses are compared as sets of entity ids. A key without security accesses only matches another
+    // key without them. Returns null when the security accesses can not be read.
+    private static String getSecurityAccessFingerprint(EfecteEntity efecteKey) {
+        try {
+            List<EfecteReference> securityAccesses = efecteKey
+                    .getAttributeReferences(EnumEfecteAttribute.KEY_SECURITY_ACCESS);
+
+            if (securityAccesses == null) {
+                return "none";
+            }
+
+            return securityAccesses.stream()
+                    .map(sa -> sa.getId())
+                    .distinct()
+                    .sorted()
+                    .collect(Collectors.joining(",", "[", "]"));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String getKeyHolderId(EfecteEntity efecteKey) {
+        try {
+            return efecteKey.getAttributeReferences(EnumEfecteAttribute.KEY_HOLDER).get(0).getId();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String getAttributeValue(EfecteEntity efecteKey, EnumEfecteAttribute attribute) {
+        try {
+            return efecteKey.getAttributeValue(attribute);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean hasAttribute(EfecteEntity efecteKey, EnumEfecteAttribute attribute) {
+        try {
+            efecteKey.getAttributeReferences(attribute);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -1,14 +1,12 @@
 package fi.hel.routes;
 
-import java.util.ArrayList;
-
 import org.apache.camel.Exchange;
 import org.apache.camel.Predicate;
 import org.apache.camel.builder.PredicateBuilder;
 import org.apache.camel.builder.endpoint.EndpointRouteBuilder;
-import org.apache.camel.component.jacksonxml.JacksonXMLDataFormat;
+import org.apache.camel.builder.endpoint.dsl.HttpEndpointBuilderFactory.HttpEndpointBuilder;
 
-import fi.hel.models.EfecteEntitySet;
+import fi.hel.exceptions.EfecteSearchException;
 import fi.hel.models.enumerations.EnumDirection;
 import fi.hel.processors.ResourceInjector;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -44,9 +42,7 @@ public class EfecteRouteBuilder extends EndpointRouteBuilder {
         from("direct:sendEfecteRequest")
             .routeId("direct:sendEfecteRequest")
             .to("{{app.routes.efecte.setEfecteAuthorization}}")
-            .to(https("{{EFECTE_BASE_URL}}")
-                .sslContextParameters(ri.getConfigProvider().getSSLContextParameters())
-                .x509HostnameVerifier(ri.getConfigProvider().getHostnameVerifier()))
+            .to(efecteEndpoint())
             .choice()
                 .when(sendingRequestFailed())
                     .choice()
@@ -63,6 +59,23 @@ public class EfecteRouteBuilder extends EndpointRouteBuilder {
             .removeHeaders("*")
         ;
 
+        // Imports several entities with a single request. The import report is evaluated by the EfecteImportBatcher,
+        // which sends the updates of a failed batch again one at a time.
+        from("direct:processEfecteImportBatch")
+            .routeId("direct:processEfecteImportBatch")
+            .log("{{app.name}} :: processEfecteImportBatch :: Handling a batched Efecte payload (Entity type: ${header.efecteEntityType}, Operation: ${header.efecteOperation})")
+            .setHeaders(
+                    Exchange.HTTP_METHOD, constant("POST"),
+                    Exchange.HTTP_PATH, simple("${header.efectePath}"),
+                    Exchange.HTTP_QUERY, simple("${header.efecteQuery}"))
+            .setBody(simple("${header.efectePayload}"))
+            .marshal().jacksonXml()
+            .to("{{app.routes.efecte.setEfecteAuthorization}}")
+            .to(efecteEndpoint())
+            .convertBodyTo(String.class)
+            .removeHeaders("*")
+        ;
+
         from("direct:getEfecteEntity")
             .routeId("direct:getEfecteEntity")
             .log("{{app.name}} :: getEfecteEntity :: Getting Efecte ${header.efecteEntityType} with query '${header.efecteQuery}'")
@@ -70,24 +83,47 @@ public class EfecteRouteBuilder extends EndpointRouteBuilder {
                     Exchange.HTTP_METHOD, constant("GET"),
                     Exchange.HTTP_PATH, simple("/search.ws"),
                     Exchange.HTTP_QUERY, simple("query=${header.efecteQuery}"))
-            .to("{{app.routes.efecte.sendEfecteRequest}}")
+            .choice()
+                .when(exchangeProperty("efecteSearchMaxResults").isNotNull())
+                    .setHeader(Exchange.HTTP_QUERY, simple("query=${header.efecteQuery}&firstResult=${header.efecteSearchFirstResult}&maxResults=${header.efecteSearchMaxResults}"))
+            .end()
+            .to("{{app.routes.efecte.sendEfecteSearchRequest}}")
             .to("{{app.routes.efecte.convertToEfecteEntity}}")
         ;
 
+        // The search responses are not read into a String to look for errors, the EfecteEntityReader detects them
+        // while it streams the entities
+        from("direct:sendEfecteSearchRequest")
+            .routeId("direct:sendEfecteSearchRequest")
+            .to("{{app.routes.efecte.setEfecteAuthorization}}")
+            .to(efecteEndpoint())
+            .removeHeaders("*")
+        ;
+
         from("direct:convertToEfecteEntity")
             .routeId("direct:convertToEfecteEntity")
-            .unmarshal(new JacksonXMLDataFormat(EfecteEntitySet.class))
-            .setBody(simple("${body.entities}"))
+            .doTry()
+                .bean(ri.getEfecteEntityReader(), "readEfecteEntities")
+            .doCatch(EfecteSearchException.class)
+                .setProperty("auditMessage", simple("The Efecte request was invalid. Server response: ${exception.message}"))
+                .bean(ri.getAuditExceptionProcessor(),
+                        "throwAuditException(" + EnumDirection.ILOQ + ", " + EnumDirection.EFECTE + ", ${header.entityId}, ${header.efecteId}, ${header.iLoqId}, ${header.auditMessage})")
+            .end()
             .choice()
                 .when(simple("${body.size} > 0"))
                     .log("{{app.name}} :: convertToEfecteEntity :: Found ${body.size} entities")
                 .otherwise()
                     .log("{{app.name}} :: convertToEfecteEntity :: No entities found")
-                    .setBody(constant(new ArrayList<>()))
             .end()
         ;
     }
 
+    private HttpEndpointBuilder efecteEndpoint() {
+        return https("{{EFECTE_BASE_URL}}")
+                .sslContextParameters(ri.getConfigProvider().getSSLContextParameters())
+                .x509HostnameVerifier(ri.getConfigProvider().getHostnameVerifier());
+    }
+
     private Predicate sendingRequestFailed() {
         return PredicateBuilder.or(
             requestContainsErrors(),
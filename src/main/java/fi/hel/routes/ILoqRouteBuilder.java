@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Predicate;
+import org.apache.camel.builder.PredicateBuilder;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.jackson.JacksonDataFormat;
 import org.apache.camel.component.jackson.ListJacksonDataFormat;
@@ -35,17 +36,44 @@ public class ILoqRouteBuilder extends RouteBuilder {
             .choice()
                 .when(hasExistingValidILoqSession())
                     .to("{{app.routes.iLoq.setILoqHeaders}}")
+                .when(method(ri.getILoqSessionPool(), "activatePooledSession"))
+                    .log("{{app.name}} :: configureILoqSession : Reusing pooled iLOQ session")
+                    .bean(ri.getILoqSessionContext(), "load")
+                    .to("{{app.routes.iLoq.setILoqHeaders}}")
+                .when(method(ri.getILoqSessionPool(), "hasPooledConnectionInfo"))
+                    .to("{{app.routes.iLoq.refreshILoqSession}}")
                 .otherwise()
                     .log("{{app.name}} :: configureILoqSession : Configuring new iLOQ session")
                     .to("{{app.routes.redis.getILoqCredentials}}")
                     .to("{{app.routes.iLoq.getILoqUri}}")
                     .to("{{app.routes.iLoq.createILoqSession}}")
                     .to("{{app.routes.iLoq.getILoqLockGroups}}")
+                    .setProperty("iLoqLockGroupId", body())
                     .to("{{app.routes.iLoq.setILoqLockGroup}}")
                     .to("{{app.routes.redis.saveILoqSessionStatusToRedis}}")
+                    .bean(ri.getILoqSessionContext(), "load")
+                    .bean(ri.getILoqSessionPool(), "savePooledSession")
             .end()
         ;
 
+        // Creates a new session with the base url and the lock group cached by the session pool
+        from("direct:refreshILoqSession")
+            .routeId("direct:refreshILoqSession")
+            .log("{{app.name}} :: refreshILoqSession : Refreshing pooled iLOQ session")
+            .to("{{app.routes.redis.getILoqCredentials}}")
+            .setBody(method(ri.getILoqSessionPool(), "getPooledBaseUrl"))
+            .to("{{app.routes.redis.saveILoqBaseUrlToRedis}}")
+            .to("{{app.routes.iLoq.createILoqSession}}")
+            .setHeader("SessionId", simple("${body}"))
+            .setProperty("iLoqLockGroupId", method(ri.getILoqSessionPool(), "getPooledLockGroupId"))
+            .setBody(exchangeProperty("iLoqLockGroupId"))
+            .to("{{app.routes.iLoq.setILoqLockGroup}}")
+            .to("{{app.routes.redis.saveILoqSessionStatusToRedis}}")
+            .bean(ri.getILoqSessionContext(), "load")
+            .bean(ri.getILoqSessionPool(), "savePooledSession")
+            .to("{{app.routes.iLoq.setILoqHeaders}}")
+        ;
+
         from("direct:getILoqUri")
             .routeId("direct:getILoqUri")
             .setHeaders(
@@ -112,9 +140,9 @@ public class ILoqRouteBuilder extends RouteBuilder {
         from("direct:setILoqHeaders")
             .routeId("direct:setILoqHeaders")
             .setHeaders(
-                Exchange.HTTP_URI, method(ri.getRedis(), "get({{app.redis.prefix.iLoqCurrentBaseUrl}})"),
+                Exchange.HTTP_URI, method(ri.getILoqSessionContext(), "getBaseUrl"),
                 Exchange.CONTENT_TYPE, constant("application/json"),
-                "SessionId", method(ri.getRedis(), "get({{app.redis.prefix.iLoqCurrentSessionId}})")
+                "SessionId", method(ri.getILoqSessionContext(), "getSessionId")
             )
         ;
 
@@ -142,8 +170,7 @@ public class ILoqRouteBuilder extends RouteBuilder {
                 Exchange.HTTP_PATH, constant("/Keys")
             )
             .to("{{app.endpoints.oldhost}}")
-            .unmarshal(new ListJacksonDataFormat(ILoqKeyResponse.class))
-            .convertBodyTo(List.class)
+            .bean(ri.getILoqKeyListReader(), "readILoqKeys")
             .removeHeaders("*")
         ;
 
@@ -155,7 +182,7 @@ public class ILoqRouteBuilder extends RouteBuilder {
                 Exchange.HTTP_PATH, simple("/Keys/${header.iLoqKeyId}/SecurityAccesses"),
                 Exchange.HTTP_QUERY, constant("mode=1")
             )
-            .to("{{app.endpoints.oldhost}}")
+            .bean(ri.getILoqRequestCache(), "send")
             .setBody().jsonpath("$.SecurityAccesses")
             .marshal().json()
             .unmarshal(new ListJacksonDataFormat(ILoqSecurityAccess.class))
@@ -185,7 +212,7 @@ public class ILoqRouteBuilder extends RouteBuilder {
                 Exchange.HTTP_METHOD, constant("GET"),
                 Exchange.HTTP_PATH, simple("/Keys/${header.iLoqKeyId}")
             )
-            .to("{{app.endpoints.oldhost}}")
+            .bean(ri.getILoqRequestCache(), "send")
             .unmarshal(new JacksonDataFormat(ILoqKeyResponse.class))
             .convertBodyTo(ILoqKeyResponse.class)
         ;
@@ -199,7 +226,7 @@ public class ILoqRouteBuilder extends RouteBuilder {
                 Exchange.HTTP_PATH, simple("/Persons/${header.iLoqPersonId}")
             )
             .setBody(simple(null))
-            .to("{{app.endpoints.oldhost}}")
+            .bean(ri.getILoqRequestCache(), "send")
             .unmarshal(new JacksonDataFormat(ILoqPerson.class))
             .convertBodyTo(ILoqPerson.class)
             .removeHeaders("*")
@@ -215,7 +242,7 @@ public class ILoqRouteBuilder extends RouteBuilder {
                 Exchange.HTTP_QUERY, simple("externalPersonIds=${header.externalPersonId}")
             )
             .doTry()
-                .to("{{app.endpoints.oldhost}}")
+                .bean(ri.getILoqRequestCache(), "send")
                 .doCatch(HttpOperationFailedException.class)
                     .choice()
                         .when(resultContainsNoPersons())
@@ -240,6 +267,7 @@ public class ILoqRouteBuilder extends RouteBuilder {
                 Exchange.HTTP_PATH, constant("/Persons")
             )
             .to("{{app.endpoints.oldhost}}")
+            .bean(ri.getILoqRequestCache(), "invalidate")
             .log("{{app.name}} :: processILoqPerson :: Processing succeeded")
             .choice()
                 .when(simple("${header.method} == 'POST'"))
@@ -266,6 +294,7 @@ public class ILoqRouteBuilder extends RouteBuilder {
                 .bean(ri.getAuditExceptionProcessor(),
                         "throwAuditException(${header.from}, ${header.to}, ${header.efecteKeyEntityId}, ${header.efecteKeyEfecteId}, ${header.iLoqKeyId}, ${header.auditMessage})")
             .end()
+            .bean(ri.getILoqRequestCache(), "invalidate")
             .log("{{app.name}} :: processILoqKey :: Processing succeeded")
             .removeHeaders("*")
         ;
@@ -292,6 +321,7 @@ public class ILoqRouteBuilder extends RouteBuilder {
                 .bean(ri.getAuditExceptionProcessor(),
                         "throwAuditException(" + EnumDirection.EFECTE + ", " + EnumDirection.ILOQ + ", ${header.efecteKeyEntityId}, ${header.efecteKeyEfecteId}, ${header.iLoqKeyId}, ${header.auditMessage})")
             .end()
+            .bean(ri.getILoqRequestCache(), "invalidate")
             .log("{{app.name}} :: updateILoqKeySecurityAccesses :: Updating succeeded")
             .removeHeaders("*")
         ;
@@ -310,6 +340,7 @@ public class ILoqRouteBuilder extends RouteBuilder {
                 Exchange.HTTP_PATH, simple("/Keys/${header.iLoqKeyId}/UpdateMainZone")
             )
             .to("{{app.endpoints.oldhost}}")
+            .bean(ri.getILoqRequestCache(), "invalidate")
             .log("{{app.name}} :: updateMainZone :: Updating succeeded")
             .removeHeaders("*")
         ;
@@ -369,7 +400,9 @@ public class ILoqRouteBuilder extends RouteBuilder {
     }
 
     private Predicate hasExistingValidILoqSession() {
-        return method(ri.getRedis(), "get({{app.redis.prefix.iLoqCurrentCustomerCodeHasChanged}})").isEqualTo("false");
+        return PredicateBuilder.and(
+                method(ri.getILoqSessionContext(), "isValid"),
+                method(ri.getILoqSessionPool(), "isActiveSessionFresh"));
     }
 
     private Predicate resultContainsNoPersons() {
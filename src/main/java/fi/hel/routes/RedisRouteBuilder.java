@@ -1,8 +1,12 @@
 package fi.hel.routes;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.camel.builder.RouteBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import fi.hel.models.EfecteEntityIdentifier;
 import fi.hel.models.PreviousEfecteKey;
@@ -16,6 +20,10 @@ public class RedisRouteBuilder extends RouteBuilder {
 
     @Inject
     ResourceInjector ri;
+    @ConfigProperty(name = "DELETED_KEY_EXPIRATION_SECONDS")
+    long deletedKeyExpirationSeconds;
+    @ConfigProperty(name = "app.configuration.redis.scanCount")
+    int scanCount;
 
     @Override
     public void configure() throws Exception {
@@ -45,34 +53,40 @@ public class RedisRouteBuilder extends RouteBuilder {
 
         from("direct:getILoqCredentials")
             .routeId("direct:getILoqCredentials")
-            .setProperty("customerCode", method(ri.getRedis(), "get({{app.redis.prefix.iLoqCurrentCustomerCode}})"))
-            .setProperty("customerCodePassword", method(ri.getRedis(), "get({{app.redis.prefix.iLoqCurrentCustomerCodePassword}})"))
+            .process(exchange -> {
+                exchange.setProperty("customerCode", ri.getRedis().get(ri.getILoqCurrentCustomerCodePrefix()));
+                exchange.setProperty("customerCodePassword", ri.getRedis().get(ri.getILoqCurrentCustomerCodePasswordPrefix()));
+            })
         ;
 
         from("direct:saveILoqBaseUrlToRedis")
             .routeId("direct:saveILoqBaseUrlToRedis")
             .log("{{app.name}} :: saveILoqBaseUrlToRedis :: Configured base url: ${body}")
-            .bean(ri.getRedis(), "set('{{app.redis.prefix.iLoqCurrentBaseUrl}}', '${body}')")
+            .process(exchange -> ri.getRedis().set(ri.getILoqCurrentBaseUrlPrefix(), exchange.getIn().getBody(String.class)))
         ;
 
         from("direct:saveILoqSessionIdToRedis")
             .routeId("direct:saveILoqSessionIdToRedis")
             .log("{{app.name}} :: saveILoqSessionIdToRedis :: Saved new session id to Redis")
-            .bean(ri.getRedis(), "set('{{app.redis.prefix.iLoqCurrentSessionId}}', '${body}')")
+            .process(exchange -> ri.getRedis().set(ri.getILoqCurrentSessionIdPrefix(), exchange.getIn().getBody(String.class)))
         ;
 
         from("direct:saveILoqSessionStatusToRedis")
             .routeId("direct:saveILoqSessionStatusToRedis")
-            .bean(ri.getRedis(), "set('{{app.redis.prefix.iLoqCurrentCustomerCodeHasChanged}}', 'false')")
+            .process(exchange -> ri.getRedis().set(ri.getILoqCurrentCustomerCodeHasChangedPrefix(), "false"))
         ;
 
         from("direct:removeCurrentILoqSessionRelatedKeys")
             .routeId("direct:removeCurrentILoqSessionRelatedKeys")
-            .bean(ri.getRedis(), "del({{app.redis.prefix.iLoqCurrentBaseUrl}})")
-            .bean(ri.getRedis(), "del({{app.redis.prefix.iLoqCurrentSessionId}})")
-            .bean(ri.getRedis(), "del({{app.redis.prefix.iLoqCurrentCustomerCode}})")
-            .bean(ri.getRedis(), "del({{app.redis.prefix.iLoqCurrentCustomerCodePassword}})")
-            .bean(ri.getRedis(), "del({{app.redis.prefix.iLoqCurrentCustomerCodeHasChanged}})")
+            // The current keys are resolved through the ResourceInjector to respect the customer code scope
+            .process(exchange -> {
+                ri.getRedis().del(ri.getILoqCurrentBaseUrlPrefix());
+                ri.getRedis().del(ri.getILoqCurrentSessionIdPrefix());
+                ri.getRedis().del(ri.getILoqCurrentCustomerCodePrefix());
+                ri.getRedis().del(ri.getILoqCurrentCustomerCodePasswordPrefix());
+                ri.getRedis().del(ri.getILoqCurrentCustomerCodeHasChangedPrefix());
+            })
+            .bean(ri.getILoqSessionContext(), "invalidate")
         ;
 
         from("direct:saveMappedKeys")
@@ -85,8 +99,12 @@ public class RedisRouteBuilder extends RouteBuilder {
 
                 EfecteEntityIdentifier efecteEntityIdentifier = new EfecteEntityIdentifier(entityId, efecteId);
 
-                ri.getRedis().set(ri.getMappedKeyEfectePrefix() + efecteId, iLoqId);
-                ri.getRedis().set(ri.getMappedKeyILoqPrefix() + iLoqId, ri.getHelper().writeAsJson(efecteEntityIdentifier));
+                Map<String, String> mappedKeys = new LinkedHashMap<>();
+                mappedKeys.put(ri.getMappedKeyEfectePrefix() + efecteId, iLoqId);
+                mappedKeys.put(ri.getMappedKeyILoqPrefix() + iLoqId, ri.getHelper().writeAsRedisValue(efecteEntityIdentifier));
+
+                // Both directions of the mapping are written at once
+                ri.getRedisWriteBuffer().setAllNow(mappedKeys);
             })
         ;
 
@@ -99,12 +117,15 @@ public class RedisRouteBuilder extends RouteBuilder {
                 PreviousEfecteKey newPreviousEfecteKey = exchange.getProperty("newPreviousEfecteKey", PreviousEfecteKey.class);
                 Set<String> newILoqSecurityAccessIds = exchange.getProperty("newILoqSecurityAccessIds", Set.class);
 
-                ri.getRedis().set(ri.getPreviousKeyEfectePrefix() + efecteId, ri.getHelper().writeAsJson(newPreviousEfecteKey));
-                
+                String previousEfecteKeyPrefix = ri.getPreviousKeyEfectePrefix() + efecteId;
+                String newPreviousEfecteKeyJson = ri.getHelper().writeAsRedisValue(newPreviousEfecteKey);
+
                 if (newILoqSecurityAccessIds != null && !newILoqSecurityAccessIds.isEmpty()) {
-                    // Deleting the previous iLOQ key since the value is a Set (full update instead of patching)
-                    ri.getRedis().del(ri.getPreviousKeyILoqPrefix() + iLoqId);
-                    ri.getRedis().addSet(ri.getPreviousKeyILoqPrefix() + iLoqId, newILoqSecurityAccessIds.toArray(new String[0]));
+                    // Replacing the previous iLOQ key since the value is a Set (full update instead of patching)
+                    ri.getRedisWriteBuffer().setAndReplaceSet(previousEfecteKeyPrefix, newPreviousEfecteKeyJson,
+                            ri.getPreviousKeyILoqPrefix() + iLoqId, newILoqSecurityAccessIds);
+                } else {
+                    ri.getRedisWriteBuffer().set(previousEfecteKeyPrefix, newPreviousEfecteKeyJson);
                 }
             })
         ;
@@ -112,20 +133,33 @@ public class RedisRouteBuilder extends RouteBuilder {
         from("direct:deleteKey")
             .routeId("direct:deleteKey")
             .log("{{app.name}} :: deleteKey :: Removing all Redis keys related to the previously disabled iLOQ key")
-            .bean(ri.getRedis(), "del({{app.redis.prefix.previousKey.efecte}}${header.efecteKeyEfecteId})")
-            .bean(ri.getRedis(), "del({{app.redis.prefix.previousKey.iLoq}}${header.iLoqKeyId})")
-            .bean(ri.getRedis(), "del({{app.redis.prefix.mapped.key.efecte}}${header.efecteKeyEfecteId})")
-            .bean(ri.getRedis(), "del({{app.redis.prefix.mapped.key.iLoq}}${header.iLoqKeyId})")
+            .setProperty("deletedKey")
+                .simple("{{app.redis.prefix.temp.deleted.key}}${date-with-timezone:now:Europe/Helsinki:yyyy-MM-dd_HH:mm}:${exchangeProperty.efecteKeyEfecteId}")
+            // The keys are removed through the write buffer, so a pending write does not bring them back
+            .process(exchange -> {
+                String efecteId = exchange.getProperty("efecteKeyEfecteId", String.class);
+                String iLoqId = exchange.getProperty("iLoqKeyId", String.class);
 
-            .bean(ri.getRedis(), "setex('{{app.redis.prefix.temp.deleted.key}}${date-with-timezone:now:Europe/Helsinki:yyyy-MM-dd_HH:mm}:${header.efecteKeyEfecteId}', '${header.iLoqKeyId}', {{DELETED_KEY_EXPIRATION_SECONDS}})")
+                ri.getRedisWriteBuffer().deleteAndSetex(
+                        List.of(
+                                ri.getPreviousKeyEfectePrefix() + efecteId,
+                                ri.getPreviousKeyILoqPrefix() + iLoqId,
+                                ri.getMappedKeyEfectePrefix() + efecteId,
+                                ri.getMappedKeyILoqPrefix() + iLoqId,
+                                ri.getKeyDigestILoqPrefix() + iLoqId,
+                                ri.getKeyDigestEfectePrefix() + efecteId),
+                        exchange.getProperty("deletedKey", String.class),
+                        iLoqId,
+                        deletedKeyExpirationSeconds);
+            })
         ;
 
         from("direct:removeTempKeys")
             .routeId("direct:removeTempKeys")
-            .bean(ri.getRedis(), "getAllKeys({{app.redis.prefix.temp.efecte.person}}*)")
-            .split(body())
-                .bean(ri.getRedis(), "del(${body})")
-            .end()
+            // Scanned in batches instead of listing all the keys at once, which would block Redis for the other pods
+            .process(exchange -> exchange.getIn().setBody(
+                    ri.getRedisCommands().purgeByPrefix(ri.getTempEfectePersonPrefix(), scanCount)))
+            .log("{{app.name}} :: removeTempKeys :: Removed ${body} temporary Redis keys")
         ;
     }
 }
@@ -0,0 +1,119 @@
+package com.devikone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.devikone.service.RedisScripts;
+
+import fi.hel.processors.RedisCommands;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+@QuarkusTest
+@SuppressWarnings("unchecked")
+public class RedisScriptsTest {
+
+    @Inject
+    RedisScripts redisScripts;
+    @InjectMock
+    RedisCommands redisCommands;
+
+    private Jedis jedis;
+
+    @BeforeEach
+    void setup() {
+        jedis = mock(Jedis.class);
+        when(redisCommands.execute(any())).thenAnswer(invocation -> {
+            Function<Jedis, Object> command = invocation.getArgument(0);
+            return command.apply(jedis);
+        });
+    }
+
+    @Test
+    @DisplayName("setAll")
+    void testShouldSetAllTheValuesWithASingleScript() throws Exception {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("mapped:efecte:KEY-001", "abc-123");
+        values.put("mapped:iLoq:abc-123", "{\"entityId\":\"1\"}");
+
+        redisScripts.setAll(values);
+
+        verify(jedis).evalsha(
+                anyString(),
+                eq(List.of("mapped:efecte:KEY-001", "mapped:iLoq:abc-123")),
+                eq(List.of("abc-123", "{\"entityId\":\"1\"}")));
+    }
+
+    @Test
+    @DisplayName("setAndReplaceSet")
+    void testShouldPassTheMembersOfTheSetAfterTheValue() throws Exception {
+        redisScripts.setAndReplaceSet("previous:efecte:KEY-001", "json", "previous:iLoq:abc-123", Set.of("11"));
+
+        verify(jedis).evalsha(
+                anyString(),
+                eq(List.of("previous:efecte:KEY-001", "previous:iLoq:abc-123")),
+                eq(List.of("json", "11")));
+    }
+
+    @Test
+    @DisplayName("deleteAndSetex")
+    void testShouldPassTheKeyToSetAfterTheDeletedKeys() throws Exception {
+        redisScripts.deleteAndSetex(List.of("a", "b"), "deleted", "abc-123", 60);
+
+        verify(jedis).evalsha(anyString(), eq(List.of("a", "b", "deleted")), eq(List.of("abc-123", "60")));
+    }
+
+    @Test
+    @DisplayName("moveToHash")
+    void testShouldPassTheHashBeforeTheKeysToMove() throws Exception {
+        Map<String, String> fieldsByKey = new LinkedHashMap<>();
+        fieldsByKey.put("mapped:cc:1", "1");
+        fieldsByKey.put("mapped:cc:2", "2");
+        when(jedis.evalsha(anyString(), anyList(), anyList())).thenReturn(2L);
+
+        long moved = redisScripts.moveToHash("mapped:cc", fieldsByKey);
+
+        assertThat(moved).isEqualTo(2);
+        verify(jedis).evalsha(anyString(), eq(List.of("mapped:cc", "mapped:cc:1", "mapped:cc:2")),
+                eq(List.of("1", "2")));
+    }
+
+    @Test
+    @DisplayName("eval")
+    void testShouldSendTheScriptWhenRedisDoesNotHaveItCached() throws Exception {
+        when(jedis.evalsha(anyString(), anyList(), anyList())).thenThrow(new JedisNoScriptException("NOSCRIPT"));
+
+        redisScripts.deleteAndSetex(List.of("a"), "deleted", "abc-123", 60);
+
+        verify(jedis).eval(anyString(), eq(List.of("a", "deleted")), eq(List.of("abc-123", "60")));
+    }
+
+    @Test
+    @DisplayName("eval")
+    void testShouldNotSendTheScriptWhenRedisHasItCached() throws Exception {
+        redisScripts.setAll(Map.of("a", "1"));
+
+        verify(jedis, never()).eval(anyString(), anyList(), anyList());
+    }
+
+}
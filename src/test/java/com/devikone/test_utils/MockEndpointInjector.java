@@ -25,6 +25,8 @@ public class MockEndpointInjector {
     MockEndpoint setEfecteAuthorization;
     @EndpointInject("{{app.routes.efecte.sendEfecteRequest}}")
     MockEndpoint sendEfecteRequest;
+    @EndpointInject("{{app.routes.efecte.sendEfecteSearchRequest}}")
+    MockEndpoint sendEfecteSearchRequest;
     @EndpointInject("{{app.routes.efecte.getEfecteEntity}}")
     MockEndpoint getEfecteEntity;
     @EndpointInject("{{app.routes.efecte.convertToEfecteEntity}}")
@@ -128,6 +130,10 @@ public class MockEndpointInjector {
         return this.sendEfecteRequest;
     }
 
+    public MockEndpoint getSendEfecteSearchRequest() {
+        return this.sendEfecteSearchRequest;
+    }
+
     public MockEndpoint getGetEfecteEntity() {
         return this.getEfecteEntity;
     }
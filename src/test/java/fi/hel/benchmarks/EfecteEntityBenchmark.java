@@ -0,0 +1,107 @@
+package fi.hel.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fi.hel.models.EfecteAttribute;
+import fi.hel.models.EfecteEntity;
+import fi.hel.models.builders.EfecteAttributeBuilder;
+import fi.hel.models.enumerations.EnumEfecteAttribute;
+
+// The attribute lookups made for a single Efecte key card during its validation, matching and mapping. The baseline
+// is the earlier lookup, which searched the attribute list and read the profile from the config on every comparison.
+//
+// Run with: mvn -Pbenchmark test-compile exec:exec
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-DQUARKUS_PROFILE=test")
+public class EfecteEntityBenchmark {
+
+    private static final List<EnumEfecteAttribute> LOOKUPS_PER_KEY = List.of(
+            EnumEfecteAttribute.KEY_EFECTE_ID,
+            EnumEfecteAttribute.KEY_EFECTE_ID,
+            EnumEfecteAttribute.KEY_TYPE,
+            EnumEfecteAttribute.KEY_STATE,
+            EnumEfecteAttribute.KEY_STATE,
+            EnumEfecteAttribute.KEY_HOLDER,
+            EnumEfecteAttribute.KEY_HOLDER,
+            EnumEfecteAttribute.KEY_HOLDER,
+            EnumEfecteAttribute.KEY_STREET_ADDRESS,
+            EnumEfecteAttribute.KEY_STREET_ADDRESS,
+            EnumEfecteAttribute.KEY_SECURITY_ACCESS,
+            EnumEfecteAttribute.KEY_SECURITY_ACCESS,
+            EnumEfecteAttribute.KEY_SECURITY_ACCESS,
+            EnumEfecteAttribute.KEY_IS_OUTSIDER,
+            EnumEfecteAttribute.KEY_IS_OUTSIDER,
+            EnumEfecteAttribute.KEY_OUTSIDER_NAME,
+            EnumEfecteAttribute.KEY_OUTSIDER_EMAIL,
+            EnumEfecteAttribute.KEY_VALIDITY_DATE,
+            EnumEfecteAttribute.KEY_VALIDITY_DATE,
+            EnumEfecteAttribute.KEY_EXTERNAL_ID,
+            EnumEfecteAttribute.KEY_EXTERNAL_ID,
+            EnumEfecteAttribute.KEY_UPDATED);
+
+    private List<EfecteAttribute> attributes;
+
+    @Setup
+    public void setup() {
+        attributes = new ArrayList<>();
+
+        for (EnumEfecteAttribute attribute : EnumEfecteAttribute.values()) {
+            if (attribute.name().startsWith("KEY_")) {
+                attributes.add(new EfecteAttributeBuilder()
+                        .withId(attribute.getId())
+                        .withCode(attribute.getCode())
+                        .withValue("value of " + attribute.getCode())
+                        .withReference("1234", "reference of " + attribute.getCode())
+                        .build());
+            }
+        }
+    }
+
+    @Benchmark
+    public void baseline(Blackhole blackhole) {
+        for (EnumEfecteAttribute lookup : LOOKUPS_PER_KEY) {
+            blackhole.consume(attributes.stream()
+                    .filter(attribute -> attribute.getId().equals(getIdFromConfig(lookup)))
+                    .findFirst()
+                    .orElse(null));
+        }
+    }
+
+    // A new entity per key, so the cost of copying the attribute list and building the index is included
+    @Benchmark
+    public void indexed(Blackhole blackhole) throws Exception {
+        EfecteEntity efecteEntity = new EfecteEntity("1");
+        efecteEntity.setAttributes(attributes);
+
+        for (EnumEfecteAttribute lookup : LOOKUPS_PER_KEY) {
+            blackhole.consume(efecteEntity.getAttributeReferences(lookup));
+        }
+    }
+
+    // Reads the profile on every call, like EnumEfecteAttribute.getId() did
+    private static String getIdFromConfig(EnumEfecteAttribute attribute) {
+        ConfigProvider.getConfig().getConfigValue("QUARKUS_PROFILE").getValue();
+
+        return attribute.getId();
+    }
+
+}
@@ -0,0 +1,84 @@
+package fi.hel.mappers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import fi.hel.exceptions.EfecteSearchException;
+import fi.hel.models.EfecteEntity;
+import fi.hel.models.enumerations.EnumEfecteAttribute;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+public class EfecteEntityReaderTest {
+
+    @Inject
+    EfecteEntityReader efecteEntityReader;
+
+    @Test
+    @DisplayName("readEfecteEntities")
+    void testShouldPassTheEntitiesToTheConsumerOneAtATime() throws Exception {
+        String response = """
+                <?xml version="1.0" encoding="UTF-8" ?>
+                <entityset>
+                    <entity id="1" name="first">
+                        <template id="322" name="Avain" code="avain"/>
+                        <group code="avaimet"/>
+                        <attribute id="2929" name="Kulkualue" code="avain_kulkualue">
+                            <reference id="11" name="Lääkehuone"/>
+                            <reference id="12" name="Kellari"/>
+                        </attribute>
+                    </entity>
+                    <entity id="2" name="second">
+                        <template id="322" name="Avain" code="avain"/>
+                        <attribute id="2937" name="Efecte ID" code="efecteid">
+                            <value>KEY-000123</value>
+                        </attribute>
+                    </entity>
+                </entityset>
+                """;
+        List<EfecteEntity> result = new ArrayList<>();
+
+        efecteEntityReader.readEfecteEntities(toInputStream(response), result::add);
+
+        assertThat(result).hasSize(2);
+        assertThat(result.get(0).getId()).isEqualTo("1");
+        assertThat(result.get(0).getName()).isEqualTo("first");
+        assertThat(result.get(0).getTemplate().getCode()).isEqualTo("avain");
+        assertThat(result.get(0).getAttributeReferences(EnumEfecteAttribute.KEY_SECURITY_ACCESS))
+                .extracting(reference -> reference.getId())
+                .containsExactly("11", "12");
+        assertThat(result.get(1).getAttributeValue(EnumEfecteAttribute.KEY_EFECTE_ID)).isEqualTo("KEY-000123");
+    }
+
+    @Test
+    @DisplayName("readEfecteEntities")
+    void testShouldThrowAnEfecteSearchExceptionWhenTheResponseIsAnError() throws Exception {
+        String response = """
+                <?xml version="1.0" encoding="utf-8"?>
+                <error>
+                    <code>efe-3001</code>
+                    <description>Invalid search query</description>
+                </error>
+                """;
+
+        assertThatThrownBy(() -> efecteEntityReader.readEfecteEntities(toInputStream(response), entity -> {
+        }))
+                .isInstanceOf(EfecteSearchException.class)
+                .hasMessage("Efecte search failed: efe-3001 Invalid search query");
+    }
+
+    private InputStream toInputStream(String response) {
+        return new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
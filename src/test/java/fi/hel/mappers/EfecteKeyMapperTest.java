@@ -243,6 +243,59 @@ public class EfecteKeyMapperTest {
         assertThat(keyHolderAttribute.getValues().get(0)).isEqualTo(expectedEfecteId);
     }
 
+    @Test
+    @DisplayName("buildNewEfecteEntitySet")
+    void testShouldSetTheEfecteKeyHolderInTheCompactFormatToTheEntitySet() throws Exception {
+        String iLoqPersonId = "abc-123";
+        EnrichedILoqKey enrichedILoqKey = new EnrichedILoqKey();
+        enrichedILoqKey.setPerson(new ILoqPerson(iLoqPersonId));
+        enrichedILoqKey.setSecurityAccesses(Set.of(new ILoqSecurityAccess("irrelevant")));
+
+        String expectedEfecteId = "PER_00123";
+        Helper realHelper = new Helper();
+
+        when(redis.get(anyString())).thenReturn("~1|5:123459:PER_00123--");
+        when(helper.writeAsPojo(any(), any()))
+                .thenAnswer(i -> realHelper.writeAsPojo(i.getArgument(0), i.getArgument(1)));
+
+        EfecteEntitySetImport result = efecteKeyMapper.buildNewEfecteEntitySetImport(enrichedILoqKey);
+
+        EfecteAttributeImport keyHolderAttribute = result.getEntity()
+                .getAttributeByType(EnumEfecteAttribute.KEY_HOLDER);
+
+        assertThat(keyHolderAttribute.getValues()).containsExactly(expectedEfecteId);
+        verifyNoInteractions(auditExceptionProcessor);
+    }
+
+    @Test
+    @DisplayName("buildNewEfecteEntitySet")
+    void testShouldThrowAnAuditExceptionWhenTheKeyHolderInTheCompactFormatIsAnOutsider() throws Exception {
+        String iLoqPersonId = "abc-123";
+        String iLoqKeyId = "xyz-456";
+        EnrichedILoqKey enrichedILoqKey = new EnrichedILoqKey(iLoqKeyId);
+        enrichedILoqKey.setPerson(new ILoqPerson(iLoqPersonId));
+        enrichedILoqKey.setSecurityAccesses(Set.of(new ILoqSecurityAccess("irrelevant")));
+
+        String expectedAuditMessage = "The iLOQ person (%s) is an outsider, and we currently don't create Efecte keys for outsiders."
+                .formatted(iLoqPersonId);
+        Helper realHelper = new Helper();
+
+        when(redis.get(anyString())).thenReturn("~1|--10:John Smith23:john.smith@outsider.com");
+        when(helper.writeAsPojo(any(), any()))
+                .thenAnswer(i -> realHelper.writeAsPojo(i.getArgument(0), i.getArgument(1)));
+        doAnswer(i -> {
+            throw new Exception();
+        }).when(auditExceptionProcessor).throwAuditException(any(), any(), any(), any(), any(), any());
+
+        try {
+            efecteKeyMapper.buildNewEfecteEntitySetImport(enrichedILoqKey);
+        } catch (Exception e) {
+        }
+
+        verify(auditExceptionProcessor).throwAuditException(
+                EnumDirection.ILOQ, EnumDirection.EFECTE, null, null, iLoqKeyId, expectedAuditMessage);
+    }
+
     @Test
     @DisplayName("buildNewEfecteEntitySet")
     void testShouldSetTheExternalIdAttribute_BuildNewEfecteEntitySet() throws Exception {
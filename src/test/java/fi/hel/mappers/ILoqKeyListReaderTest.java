@@ -0,0 +1,136 @@
+package fi.hel.mappers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.devikone.test_utils.TestUtils;
+
+import fi.hel.models.ILoqKeyResponse;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+@SuppressWarnings("unchecked")
+public class ILoqKeyListReaderTest {
+
+    @Inject
+    ILoqKeyListReader iLoqKeyListReader;
+    @Inject
+    TestUtils testUtils;
+
+    @Test
+    @DisplayName("readILoqKeys")
+    void testShouldBindTheFieldsUsedByTheSynchronization() throws Exception {
+        String response = """
+                [
+                    {
+                        "Description": "description",
+                        "ExpireDate": "2025-01-01T00:00:00",
+                        "FNKey_ID": "abc-123",
+                        "InfoText": "KEY-000123",
+                        "IsProgrammed": true,
+                        "KeyTypeMask": 264,
+                        "Person_ID": "def-456",
+                        "ProgrammingState": 0,
+                        "ROM_ID": "rom",
+                        "RealEstate_ID": "ghi-789",
+                        "Stamp": "stamp",
+                        "StampSource": 1,
+                        "State": 1,
+                        "TagKey": "tag",
+                        "TagKeyHex": "hex",
+                        "TagKeySource": 1,
+                        "VersionCode": "version"
+                    }
+                ]
+                """;
+        Exchange ex = testUtils.createExchange(response);
+
+        iLoqKeyListReader.readILoqKeys(ex);
+
+        List<ILoqKeyResponse> result = ex.getIn().getBody(List.class);
+        ILoqKeyResponse iLoqKey = result.get(0);
+
+        assertThat(result).hasSize(1);
+        assertThat(iLoqKey.getDescription()).isEqualTo("description");
+        assertThat(iLoqKey.getFnKeyId()).isEqualTo("abc-123");
+        assertThat(iLoqKey.getInfoText()).isEqualTo("KEY-000123");
+        assertThat(iLoqKey.getPersonId()).isEqualTo("def-456");
+        assertThat(iLoqKey.getRomId()).isEqualTo("rom");
+        assertThat(iLoqKey.getRealEstateId()).isEqualTo("ghi-789");
+        assertThat(iLoqKey.getStamp()).isEqualTo("stamp");
+        assertThat(iLoqKey.getState()).isEqualTo(1);
+        assertThat(iLoqKey.getTagKey()).isEqualTo("tag");
+        assertThat(iLoqKey.getExpireDate()).isEqualTo("2025-01-01T00:00:00");
+        assertThat(iLoqKey.getProgrammingState()).isEqualTo(0);
+        assertThat(iLoqKey.getVersionCode()).isEqualTo("version");
+        assertThat(iLoqKey.getTagKeyHex()).isNull();
+    }
+
+    @Test
+    @DisplayName("readILoqKeys")
+    void testShouldDropTheKeysOfUnverifiedRealEstates() throws Exception {
+        String response = """
+                [
+                    {"FNKey_ID": "1", "RealEstate_ID": "verified", "Person_ID": null},
+                    {"FNKey_ID": "2", "RealEstate_ID": "unverified", "Nested": {"foo": ["bar"]}},
+                    {"RealEstate_ID": "verified", "FNKey_ID": "3", "State": null}
+                ]
+                """;
+        Exchange ex = testUtils.createExchange(response);
+        ex.setProperty("verifiedILoqRealEstateIds", List.of("verified"));
+
+        iLoqKeyListReader.readILoqKeys(ex);
+
+        List<ILoqKeyResponse> result = ex.getIn().getBody(List.class);
+
+        assertThat(result).extracting(ILoqKeyResponse::getFnKeyId).containsExactly("1", "3");
+        assertThat(result.get(0).getPersonId()).isNull();
+        assertThat(result.get(1).getState()).isNull();
+        assertThat(ex.getProperty("iLoqKeyTotalCount")).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("readILoqKeys")
+    void testShouldKeepAllKeysWhenTheRealEstatesAreNotDefined() throws Exception {
+        String response = """
+                [{"FNKey_ID": "1", "RealEstate_ID": "foo"}, {"FNKey_ID": "2", "RealEstate_ID": "bar"}]
+                """;
+        Exchange ex = testUtils.createExchange(response);
+
+        iLoqKeyListReader.readILoqKeys(ex);
+
+        List<ILoqKeyResponse> result = ex.getIn().getBody(List.class);
+
+        assertThat(result).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("readILoqKeys")
+    void testShouldReturnAnEmptyListWhenTheResponseIsEmpty() throws Exception {
+        Exchange ex = testUtils.createExchange("[]");
+
+        iLoqKeyListReader.readILoqKeys(ex);
+
+        List<ILoqKeyResponse> result = ex.getIn().getBody(List.class);
+
+        assertThat(result).isEmpty();
+        assertThat(ex.getProperty("iLoqKeyTotalCount")).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("readILoqKeys")
+    void testShouldThrowAnExceptionWhenTheResponseIsNotAList() throws Exception {
+        Exchange ex = testUtils.createExchange("{\"Message\": \"Invalid session id\"}");
+
+        assertThatThrownBy(() -> iLoqKeyListReader.readILoqKeys(ex))
+                .hasMessageContaining("Expected the iLOQ key listing to be a JSON array");
+    }
+
+}
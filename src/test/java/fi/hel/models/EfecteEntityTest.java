@@ -1,7 +1,9 @@
 package fi.hel.models;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.DisplayName;
@@ -67,6 +69,82 @@ public class EfecteEntityTest {
         assertThat(securityAccessReference).isNull();
     }
 
+    @Test
+    @DisplayName("getAttributeValue")
+    void testShouldFindTheAttributesAddedAfterTheFirstLookup() throws Exception {
+        List<EfecteAttribute> attributes = new ArrayList<>();
+        attributes.add(buildEfecteAttributeWithValue("2937", "KEY-000123"));
+        EfecteEntity efecteEntity = new EfecteEntity();
+        efecteEntity.setAttributes(attributes);
+
+        assertThat(efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_EFECTE_ID)).isEqualTo("KEY-000123");
+        assertThatThrownBy(() -> efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_EXTERNAL_ID))
+                .hasMessageContaining("No attribute found");
+
+        efecteEntity.getAttributes()
+                .add(buildEfecteAttributeWithValue(EnumEfecteAttribute.KEY_EXTERNAL_ID.getId(), "abc-123"));
+
+        assertThat(efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_EXTERNAL_ID)).isEqualTo("abc-123");
+    }
+
+    @Test
+    @DisplayName("getAttributeValue")
+    void testShouldFindTheAttributeThatReplacedAnotherAfterTheFirstLookup() throws Exception {
+        EfecteEntity efecteEntity = new EfecteEntity();
+        efecteEntity.setAttributes(List.of(
+                buildEfecteAttributeWithValue("2937", "KEY-000123"),
+                buildEfecteAttributeWithValue(EnumEfecteAttribute.KEY_EXTERNAL_ID.getId(), "abc-123")));
+
+        assertThat(efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_EFECTE_ID)).isEqualTo("KEY-000123");
+
+        // The size of the list stays the same
+        efecteEntity.getAttributes().remove(0);
+        efecteEntity.getAttributes().add(buildEfecteAttributeWithValue("2937", "KEY-000456"));
+
+        assertThat(efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_EFECTE_ID)).isEqualTo("KEY-000456");
+
+        efecteEntity.getAttributes().set(1, buildEfecteAttributeWithValue("2937", "KEY-000789"));
+
+        assertThat(efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_EFECTE_ID)).isEqualTo("KEY-000789");
+    }
+
+    @Test
+    @DisplayName("getAttributeValue")
+    void testShouldNotSeeTheChangesOfTheListTheAttributesWereSetFrom() throws Exception {
+        List<EfecteAttribute> attributes = new ArrayList<>();
+        attributes.add(buildEfecteAttributeWithValue("2937", "KEY-000123"));
+        EfecteEntity efecteEntity = new EfecteEntity();
+        efecteEntity.setAttributes(attributes);
+
+        attributes.set(0, buildEfecteAttributeWithValue("2937", "KEY-000456"));
+
+        assertThat(efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_EFECTE_ID)).isEqualTo("KEY-000123");
+    }
+
+    @Test
+    @DisplayName("getAttributeValue")
+    void testShouldFindTheAttributesOfTheReplacedAttributeList() throws Exception {
+        EfecteEntity efecteEntity = new EfecteEntity();
+        efecteEntity.setAttributes(List.of(buildEfecteAttributeWithValue("2937", "KEY-000123")));
+
+        assertThat(efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_EFECTE_ID)).isEqualTo("KEY-000123");
+
+        efecteEntity.setAttributes(List.of(buildEfecteAttributeWithValue("2937", "KEY-000456")));
+
+        assertThat(efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_EFECTE_ID)).isEqualTo("KEY-000456");
+    }
+
+    @Test
+    @DisplayName("getAttributeValue")
+    void testShouldReturnTheFirstAttributeWithTheId() throws Exception {
+        EfecteEntity efecteEntity = new EfecteEntity();
+        efecteEntity.setAttributes(List.of(
+                buildEfecteAttributeWithValue("2937", "KEY-000123"),
+                buildEfecteAttributeWithValue("2937", "KEY-000456")));
+
+        assertThat(efecteEntity.getAttributeValue(EnumEfecteAttribute.KEY_EFECTE_ID)).isEqualTo("KEY-000123");
+    }
+
     private EfecteAttribute buildEfecteAttributeWithValue(String attributeId, String value) {
         return new EfecteAttributeBuilder()
                 .withId(attributeId)
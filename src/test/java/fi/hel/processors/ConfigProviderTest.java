@@ -133,6 +133,40 @@ public class ConfigProviderTest {
         assertThat(result).containsExactly(testILoqRealEstateId);
     }
 
+    @Test
+    @DisplayName("getConfiguredILoqRealEstateIds")
+    void testShouldResolveTheCustomerConfigurationFromTheCustomerCodeScope() throws Exception {
+        ri.getCustomerCodeScope().enter(testCustomerCode2);
+
+        try {
+            List<String> result = configProvider.getConfiguredILoqRealEstateIds();
+
+            assertThat(result).containsExactly("irrelevant");
+            verifyNoInteractions(redis);
+        } finally {
+            ri.getCustomerCodeScope().exit();
+        }
+    }
+
+    @Test
+    @DisplayName("saveCurrentCredentialsToRedis")
+    void testShouldSaveTheCurrentCredentialsOfTheCustomerCodeScopeToItsOwnKeys() throws Exception {
+        String globalCustomerCodePrefix = ri.getILoqCurrentCustomerCodePrefix();
+
+        ri.getCustomerCodeScope().enter(testCustomerCode1);
+
+        try {
+            configProvider.saveCurrentCredentialsToRedis(testCustomerCode1);
+
+            assertThat(ri.getILoqCurrentCustomerCodePrefix())
+                    .isEqualTo(globalCustomerCodePrefix + ":" + testCustomerCode1);
+            verify(redis).set(globalCustomerCodePrefix + ":" + testCustomerCode1, testCustomerCode1);
+            verify(redis).set(ri.getILoqCurrentCustomerCodePasswordPrefix(), testCustomerPassword1);
+        } finally {
+            ri.getCustomerCodeScope().exit();
+        }
+    }
+
     @Test
     @DisplayName("isValidEfecteAddress")
     void testShouldReturnTrueForValidEfecteAddresses() throws Exception {
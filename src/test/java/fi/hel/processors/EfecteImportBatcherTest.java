@@ -0,0 +1,193 @@
+package fi.hel.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.quarkus.test.CamelQuarkusTestSupport;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.devikone.test_utils.TestUtils;
+
+import fi.hel.models.EfecteAttributeImport;
+import fi.hel.models.EfecteEntityImport;
+import fi.hel.models.EfecteEntitySetBatchImport;
+import fi.hel.models.EfecteEntitySetImport;
+import fi.hel.models.enumerations.EnumEfecteAttribute;
+import fi.hel.models.enumerations.EnumEfecteTemplate;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+public class EfecteImportBatcherTest extends CamelQuarkusTestSupport {
+
+    @Inject
+    ResourceInjector ri;
+    @Inject
+    TestUtils testUtils;
+
+    private EfecteImportBatcher efecteImportBatcher;
+    private MockEndpoint processEfecteImportBatchMock;
+    private MockEndpoint completeEfecteKeyUpdateMock;
+
+    @Override
+    protected void doPreSetup() throws Exception {
+        super.doPostSetup();
+        testConfiguration().withUseRouteBuilder(false);
+    }
+
+    @Override
+    protected void doPostSetup() throws Exception {
+        super.doPostSetup();
+        MockEndpoint.resetMocks(context);
+        processEfecteImportBatchMock = getMockEndpoint("mock:processEfecteImportBatch");
+        completeEfecteKeyUpdateMock = getMockEndpoint("mock:completeEfecteKeyUpdate");
+
+        // The batching is turned off in the test profile
+        efecteImportBatcher = new EfecteImportBatcher();
+        efecteImportBatcher.ri = ri;
+        efecteImportBatcher.appName = "test";
+        efecteImportBatcher.importBatchSize = 2;
+    }
+
+    @Test
+    @DisplayName("add")
+    void testShouldNotSendTheUpdatesBeforeTheBatchIsFull() throws Exception {
+        processEfecteImportBatchMock.expectedMessageCount(0);
+
+        efecteImportBatcher.add(createKeyUpdate("KEY-001"));
+
+        processEfecteImportBatchMock.assertIsSatisfied();
+        assertThat(efecteImportBatcher.getPendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("add")
+    void testShouldSendTheUpdatesOfAFullBatchWithASingleRequest() throws Exception {
+        processEfecteImportBatchMock.whenAnyExchangeReceived(
+                exchange -> exchange.getIn().setBody(createImportReport(2)));
+
+        processEfecteImportBatchMock.expectedMessageCount(1);
+        processEfecteImportBatchMock.expectedPropertyReceived("efecteOperation", "update");
+        processEfecteImportBatchMock.expectedPropertyReceived("efectePath", "/dataCardImport.ws");
+        processEfecteImportBatchMock.expectedPropertyReceived("efecteQuery", "folderCode=avaimet&updateDataCards=true");
+
+        efecteImportBatcher.add(createKeyUpdate("KEY-001"));
+        efecteImportBatcher.add(createKeyUpdate("KEY-002"));
+
+        processEfecteImportBatchMock.assertIsSatisfied();
+
+        EfecteEntitySetBatchImport payload = processEfecteImportBatchMock.getReceivedExchanges().get(0)
+                .getProperty("efectePayload", EfecteEntitySetBatchImport.class);
+
+        assertThat(payload.getEntities()).hasSize(2);
+        assertThat(efecteImportBatcher.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("add")
+    void testShouldCompleteTheKeysOfAnImportedBatch() throws Exception {
+        processEfecteImportBatchMock.whenAnyExchangeReceived(
+                exchange -> exchange.getIn().setBody(createImportReport(2)));
+
+        completeEfecteKeyUpdateMock.expectedMessageCount(2);
+        completeEfecteKeyUpdateMock.expectedPropertyValuesReceivedInAnyOrder("efecteImportFailed", List.of(false, false));
+        completeEfecteKeyUpdateMock.expectedPropertyValuesReceivedInAnyOrder("iLoqKeyId", List.of("KEY-001", "KEY-002"));
+
+        efecteImportBatcher.add(createKeyUpdate("KEY-001"));
+        efecteImportBatcher.add(createKeyUpdate("KEY-002"));
+
+        completeEfecteKeyUpdateMock.assertIsSatisfied();
+    }
+
+    @Test
+    @DisplayName("add")
+    void testShouldSendTheUpdatesOneAtATimeWhenTheBatchWasNotFullyImported() throws Exception {
+        processEfecteImportBatchMock.whenAnyExchangeReceived(
+                exchange -> exchange.getIn().setBody(createImportReport(1)));
+
+        completeEfecteKeyUpdateMock.expectedMessageCount(2);
+        completeEfecteKeyUpdateMock.expectedPropertyValuesReceivedInAnyOrder("efecteImportFailed", List.of(true, true));
+
+        efecteImportBatcher.add(createKeyUpdate("KEY-001"));
+        efecteImportBatcher.add(createKeyUpdate("KEY-002"));
+
+        completeEfecteKeyUpdateMock.assertIsSatisfied();
+    }
+
+    @Test
+    @DisplayName("add")
+    void testShouldSendTheUpdatesOneAtATimeWhenTheBatchContainsErrors() throws Exception {
+        processEfecteImportBatchMock.whenAnyExchangeReceived(exchange -> exchange.getIn().setBody("""
+                <entity-import-report>
+                    <entities-updated>2</entities-updated>
+                    <error>irrelevant error</error>
+                </entity-import-report>
+                """));
+
+        completeEfecteKeyUpdateMock.expectedMessageCount(2);
+        completeEfecteKeyUpdateMock.expectedPropertyValuesReceivedInAnyOrder("efecteImportFailed", List.of(true, true));
+
+        efecteImportBatcher.add(createKeyUpdate("KEY-001"));
+        efecteImportBatcher.add(createKeyUpdate("KEY-002"));
+
+        completeEfecteKeyUpdateMock.assertIsSatisfied();
+    }
+
+    @Test
+    @DisplayName("flush")
+    void testShouldSendTheRemainingUpdates() throws Exception {
+        processEfecteImportBatchMock.whenAnyExchangeReceived(
+                exchange -> exchange.getIn().setBody(createImportReport(1)));
+
+        processEfecteImportBatchMock.expectedMessageCount(1);
+        completeEfecteKeyUpdateMock.expectedMessageCount(1);
+        completeEfecteKeyUpdateMock.expectedPropertyReceived("efecteImportFailed", false);
+
+        efecteImportBatcher.add(createKeyUpdate("KEY-001"));
+        efecteImportBatcher.flush();
+
+        MockEndpoint.assertIsSatisfied(processEfecteImportBatchMock, completeEfecteKeyUpdateMock);
+        assertThat(efecteImportBatcher.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("reset")
+    void testShouldDropTheRemainingUpdates() throws Exception {
+        processEfecteImportBatchMock.expectedMessageCount(0);
+
+        efecteImportBatcher.add(createKeyUpdate("KEY-001"));
+        efecteImportBatcher.reset();
+        efecteImportBatcher.flush();
+
+        processEfecteImportBatchMock.assertIsSatisfied();
+        assertThat(efecteImportBatcher.getPendingCount()).isEqualTo(0);
+    }
+
+    private Exchange createKeyUpdate(String efecteId) {
+        EfecteEntityImport entity = new EfecteEntityImport(EnumEfecteTemplate.KEY, List.of(
+                new EfecteAttributeImport(EnumEfecteAttribute.KEY_EFECTE_ID, efecteId)));
+
+        Exchange ex = testUtils.createExchange(null);
+        ex.setProperty("efectePayload", new EfecteEntitySetImport(entity));
+        ex.setProperty("efecteEntityType", "key");
+        ex.setProperty("efecteOperation", "update");
+        ex.setProperty("efecteQuery", "folderCode=avaimet&updateDataCards=true");
+        ex.setProperty("iLoqKeyId", efecteId);
+
+        return ex;
+    }
+
+    private String createImportReport(int updatedCount) {
+        return """
+                <entity-import-report>
+                    <entities-created>0</entities-created>
+                    <entities-updated>%d</entities-updated>
+                </entity-import-report>
+                """.formatted(updatedCount);
+    }
+
+}
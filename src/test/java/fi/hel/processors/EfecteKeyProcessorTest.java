@@ -4,20 +4,26 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.camel.Exchange;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import com.devikone.service.RedisScripts;
 import com.devikone.test_utils.MockEndpointInjector;
 import com.devikone.test_utils.TestUtils;
 import com.devikone.transports.Redis;
@@ -25,6 +31,7 @@ import com.devikone.transports.Redis;
 import fi.hel.configurations.ConfigProvider;
 import fi.hel.mappers.EfecteKeyMapper;
 import fi.hel.mappers.ILoqKeyMapper;
+import fi.hel.models.EfecteAttribute;
 import fi.hel.models.EfecteAttributeImport;
 import fi.hel.models.EfecteEntity;
 import fi.hel.models.EfecteEntityIdentifier;
@@ -38,6 +45,7 @@ import fi.hel.models.ILoqKeyResponse;
 import fi.hel.models.ILoqPerson;
 import fi.hel.models.ILoqSecurityAccess;
 import fi.hel.models.PreviousEfecteKey;
+import fi.hel.models.builders.EfecteAttributeBuilder;
 import fi.hel.models.builders.EfecteEntityBuilder;
 import fi.hel.models.enumerations.EnumEfecteAttribute;
 import fi.hel.models.enumerations.EnumEfecteKeyState;
@@ -71,6 +79,8 @@ public class EfecteKeyProcessorTest {
     ConfigProvider configProvider;
     @InjectMock
     ILoqKeyMapper iLoqKeyMapper;
+    @InjectMock
+    RedisScripts redisScripts;
 
     static final String TEST_CC = "test-customer-code";
 
@@ -274,6 +284,87 @@ public class EfecteKeyProcessorTest {
         assertThat(updatedPreviousEfecteKey.getValidityDate()).isEqualTo(validityDate);
     }
 
+    @Test
+    @DisplayName("isProcessedVersion")
+    void testShouldReturnTrueWhenTheKeyDigestMatches() throws Exception {
+        String efecteId = "KEY-000123";
+        Exchange ex = createProcessedVersionExchange(efecteId, createKeyCardAttributes("2"));
+
+        when(redis.get(ri.getKeyDigestEfectePrefix() + efecteId)).thenReturn("digest");
+        when(helper.createHashFromJson(anyString())).thenReturn("digest");
+
+        boolean result = efecteKeyProcessor.isProcessedVersion(ex);
+
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    @DisplayName("isProcessedVersion")
+    void testShouldReturnFalseWhenTheKeyDoesNotHaveADigest() throws Exception {
+        String efecteId = "KEY-000123";
+        Exchange ex = createProcessedVersionExchange(efecteId, createKeyCardAttributes("2"));
+
+        when(redis.get(ri.getKeyDigestEfectePrefix() + efecteId)).thenReturn(null);
+
+        boolean result = efecteKeyProcessor.isProcessedVersion(ex);
+
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    @DisplayName("isProcessedVersion")
+    void testShouldReturnFalseWhenTheKeyDigestHasChanged() throws Exception {
+        String efecteId = "KEY-000123";
+        Exchange ex = createProcessedVersionExchange(efecteId, createKeyCardAttributes("2"));
+
+        when(redis.get(ri.getKeyDigestEfectePrefix() + efecteId)).thenReturn("old digest");
+        when(helper.createHashFromJson(anyString())).thenReturn("new digest");
+
+        boolean result = efecteKeyProcessor.isProcessedVersion(ex);
+
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    @DisplayName("saveProcessedVersion")
+    void testShouldSaveTheKeyDigestWithAnExpirationTime() throws Exception {
+        String efecteId = "KEY-000123";
+        Exchange ex = createProcessedVersionExchange(efecteId, createKeyCardAttributes("2"));
+
+        when(helper.createHashFromJson(anyString())).thenReturn("digest");
+
+        efecteKeyProcessor.saveProcessedVersion(ex);
+
+        verify(redis).setex(ri.getKeyDigestEfectePrefix() + efecteId, "digest", 86400);
+    }
+
+    @Test
+    @DisplayName("saveProcessedVersion")
+    void testShouldLeaveTheUpdateTimeAndTheUnknownAttributesOutOfTheKeyDigest() throws Exception {
+        String efecteId = "KEY-000123";
+        List<EfecteAttribute> searchedAttributes = new ArrayList<>(createKeyCardAttributes("2"));
+        searchedAttributes.add(createAttribute(EnumEfecteAttribute.KEY_UPDATED.getId(), "01.01.2024 12:00"));
+        List<EfecteAttribute> webhookAttributes = new ArrayList<>(createKeyCardAttributes("2"));
+        webhookAttributes.add(0, createAttribute("9999", "irrelevant"));
+        webhookAttributes.add(createAttribute(EnumEfecteAttribute.KEY_UPDATED.getId(), "01.01.2024 12:05"));
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+
+        when(redis.get(ri.getPreviousKeyEfectePrefix() + efecteId)).thenReturn("{\"state\":\"Aktiivinen\"}");
+
+        efecteKeyProcessor.saveProcessedVersion(createProcessedVersionExchange(efecteId, searchedAttributes));
+        efecteKeyProcessor.saveProcessedVersion(createProcessedVersionExchange(efecteId, webhookAttributes));
+        efecteKeyProcessor.saveProcessedVersion(
+                createProcessedVersionExchange(efecteId, createKeyCardAttributes("3")));
+
+        verify(helper, times(3)).createHashFromJson(captor.capture());
+
+        List<String> digested = captor.getAllValues();
+
+        assertThat(digested.get(0)).isEqualTo(digested.get(1));
+        assertThat(digested.get(0)).contains("{\"state\":\"Aktiivinen\"}");
+        assertThat(digested.get(2)).isNotEqualTo(digested.get(0));
+    }
+
     ////////////////////
     // iLOQ -> Efecte //
     ////////////////////
@@ -440,6 +531,110 @@ public class EfecteKeyProcessorTest {
         mocked.getGetEfecteEntity().assertIsSatisfied();
     }
 
+    @Test
+    @DisplayName("buildEfecteKey - key IS NOT previously mapped")
+    void testShouldListTheEfecteKeysOfAllTheConfiguredAddressesWithASingleQuery() throws Exception {
+        String expectedEfecteQuery = """
+                SELECT entity
+                FROM entity
+                WHERE
+                    template.code = 'avain'
+                    AND $avain_tyyppi$ = 'iLOQ'
+                    AND ($avain_katuosoite$ = 'encoded-1' OR $avain_katuosoite$ = 'encoded-2')
+                    AND $avain_external_id$ IS NULL
+                """.replaceAll("\\s+", " ").trim();
+
+        EnrichedILoqKey enrichedILoqKey1 = new EnrichedILoqKey("irrelevant");
+        enrichedILoqKey1.setRealEstateId("real-estate-1");
+        enrichedILoqKey1.setSecurityAccesses(Set.of(new ILoqSecurityAccess("1")));
+        EnrichedILoqKey enrichedILoqKey2 = new EnrichedILoqKey("irrelevant");
+        enrichedILoqKey2.setRealEstateId("real-estate-2");
+        enrichedILoqKey2.setSecurityAccesses(Set.of(new ILoqSecurityAccess("2")));
+
+        setDefaultResponses();
+        when(redis.get(any())).thenReturn(null);
+        when(configProvider.getConfiguredILoqRealEstateIds()).thenReturn(List.of("real-estate-1", "real-estate-2"));
+        when(configProvider.getEfecteAddressNameByILoqRealEstateId("real-estate-1")).thenReturn("Testikatu 1");
+        when(configProvider.getEfecteAddressNameByILoqRealEstateId("real-estate-2")).thenReturn("Testikatu 2");
+        when(helper.urlEncode("Testikatu 1")).thenReturn("encoded-1");
+        when(helper.urlEncode("Testikatu 2")).thenReturn("encoded-2");
+
+        mocked.getGetEfecteEntity().expectedMessageCount(1);
+        mocked.getGetEfecteEntity().expectedPropertyReceived("efecteQuery", expectedEfecteQuery);
+        mocked.getGetEfecteEntity().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(List.of(
+                createUnmappedEfecteKey("Testikatu 1", "100"),
+                createUnmappedEfecteKey("Testikatu 2", "200"),
+                createUnmappedEfecteKey("Testikatu 2", "300"))));
+
+        for (EnrichedILoqKey key : List.of(enrichedILoqKey1, enrichedILoqKey2)) {
+            Exchange ex = testUtils.createExchange();
+            ex.setProperty("enrichedILoqKey", key);
+
+            efecteKeyProcessor.buildEfecteKey(ex);
+        }
+
+        mocked.getGetEfecteEntity().assertIsSatisfied();
+        verify(efecteKeyResolver).claimMatchingEfecteKey(any(), argThat(efecteKeys -> efecteKeys.size() == 1));
+        verify(efecteKeyResolver).claimMatchingEfecteKey(any(), argThat(efecteKeys -> efecteKeys.size() == 2));
+    }
+
+    @Test
+    @DisplayName("buildEfecteKey - key IS NOT previously mapped")
+    void testShouldSplitTheListingOfTheEfecteKeysWhenTheQueryWouldBeTooLong() throws Exception {
+        EfecteKeyProcessor processor = new EfecteKeyProcessor();
+        processor.ri = ri;
+        processor.skipProcessedVersions = true;
+        processor.keyDigestExpirationSeconds = 86400;
+        processor.keyQueryMaxLength = 180;
+
+        String expectedEfecteQuery = """
+                SELECT entity
+                FROM entity
+                WHERE
+                    template.code = 'avain'
+                    AND $avain_tyyppi$ = 'iLOQ'
+                    AND $avain_katuosoite$ = '%s'
+                    AND $avain_external_id$ IS NULL
+                """.replaceAll("\\s+", " ").trim();
+
+        EnrichedILoqKey enrichedILoqKey1 = new EnrichedILoqKey("irrelevant");
+        enrichedILoqKey1.setRealEstateId("real-estate-1");
+        enrichedILoqKey1.setSecurityAccesses(Set.of(new ILoqSecurityAccess("1")));
+        EnrichedILoqKey enrichedILoqKey2 = new EnrichedILoqKey("irrelevant");
+        enrichedILoqKey2.setRealEstateId("real-estate-2");
+        enrichedILoqKey2.setSecurityAccesses(Set.of(new ILoqSecurityAccess("2")));
+
+        setDefaultResponses();
+        when(redis.get(any())).thenReturn(null);
+        when(configProvider.getConfiguredILoqRealEstateIds()).thenReturn(List.of("real-estate-1", "real-estate-2"));
+        when(configProvider.getEfecteAddressNameByILoqRealEstateId("real-estate-1")).thenReturn("Testikatu 1");
+        when(configProvider.getEfecteAddressNameByILoqRealEstateId("real-estate-2")).thenReturn("Testikatu 2");
+        when(helper.urlEncode("Testikatu 1")).thenReturn("encoded-1");
+        when(helper.urlEncode("Testikatu 2")).thenReturn("encoded-2");
+
+        mocked.getGetEfecteEntity().expectedMessageCount(2);
+        mocked.getGetEfecteEntity().message(0).exchangeProperty("efecteQuery")
+                .isEqualTo(expectedEfecteQuery.formatted("encoded-1"));
+        mocked.getGetEfecteEntity().message(1).exchangeProperty("efecteQuery")
+                .isEqualTo(expectedEfecteQuery.formatted("encoded-2"));
+        mocked.getGetEfecteEntity().whenExchangeReceived(1, exchange -> exchange.getIn().setBody(List.of(
+                createUnmappedEfecteKey("Testikatu 1", "100"))));
+        mocked.getGetEfecteEntity().whenExchangeReceived(2, exchange -> exchange.getIn().setBody(List.of(
+                createUnmappedEfecteKey("Testikatu 2", "200"),
+                createUnmappedEfecteKey("Testikatu 2", "300"))));
+
+        for (EnrichedILoqKey key : List.of(enrichedILoqKey1, enrichedILoqKey2)) {
+            Exchange ex = testUtils.createExchange();
+            ex.setProperty("enrichedILoqKey", key);
+
+            processor.buildEfecteKey(ex);
+        }
+
+        mocked.getGetEfecteEntity().assertIsSatisfied();
+        verify(efecteKeyResolver).claimMatchingEfecteKey(any(), argThat(efecteKeys -> efecteKeys.size() == 1));
+        verify(efecteKeyResolver).claimMatchingEfecteKey(any(), argThat(efecteKeys -> efecteKeys.size() == 2));
+    }
+
     @Test
     @DisplayName("buildEfecteKey - key IS NOT previously mapped")
     void testShouldBuildAnEqualEfecteKey() throws Exception {
@@ -487,7 +682,8 @@ public class EfecteKeyProcessorTest {
 
         efecteKeyProcessor.buildEfecteKey(ex);
 
-        verify(efecteKeyResolver).findMatchingEfecteKey(expectedBuiltMatch, expectedEfecteKeys);
+        verify(efecteKeyResolver).claimMatchingEfecteKey(
+                eq(expectedBuiltMatch), argThat(efecteKeys -> efecteKeys.size() == expectedEfecteKeys.size()));
     }
 
     @Test
@@ -503,7 +699,7 @@ public class EfecteKeyProcessorTest {
         ex.setProperty("enrichedILoqKey", enrichedILoqKey);
         setDefaultResponses();
         when(redis.get(anyString())).thenReturn(null);
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any())).thenReturn(null);
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any())).thenReturn(null);
 
         verifyNoInteractions(efecteKeyMapper);
 
@@ -533,7 +729,7 @@ public class EfecteKeyProcessorTest {
         efecteEntitySetImport.setEntity(entityImport);
 
         when(redis.get(anyString())).thenReturn(null);
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any())).thenReturn(null);
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any())).thenReturn(null);
         when(efecteKeyMapper.buildNewEfecteEntitySetImport(enrichedILoqKey)).thenReturn(efecteEntitySetImport);
 
         verifyNoInteractions(efecteKeyResolver);
@@ -576,7 +772,7 @@ public class EfecteKeyProcessorTest {
                 validityDate);
 
         when(redis.get(any())).thenReturn(null);
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any())).thenReturn(null);
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any())).thenReturn(null);
         when(efecteKeyMapper.buildNewEfecteEntitySetImport(any())).thenReturn(expectedPayload);
         when(efecteKeyResolver.getNewEfecteSecurityAccessEntityIds(iLoqSecurityAccesses))
                 .thenReturn(efecteSecurityAccessEntityIds);
@@ -624,7 +820,7 @@ public class EfecteKeyProcessorTest {
                 validityDate);
 
         when(redis.get(any())).thenReturn(null);
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any())).thenReturn(null);
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any())).thenReturn(null);
         when(efecteKeyMapper.buildNewEfecteEntitySetImport(any())).thenReturn(expectedPayload);
         when(efecteKeyResolver.getNewEfecteSecurityAccessEntityIds(iLoqSecurityAccesses))
                 .thenReturn(efecteSecurityAccessEntityIds);
@@ -665,7 +861,7 @@ public class EfecteKeyProcessorTest {
                 .withKeyEfecteId(efecteId)
                 .withDefaults(EnumEfecteTemplate.KEY)
                 .build();
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any())).thenReturn(matchinEfecteKey);
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any())).thenReturn(matchinEfecteKey);
         setDefaultResponses();
 
         EfecteEntityIdentifier expectedEfecteEntityIdentifier = new EfecteEntityIdentifier(
@@ -675,16 +871,17 @@ public class EfecteKeyProcessorTest {
         String expectedEfectePrefix = ri.getMappedKeyEfectePrefix() + efecteId;
         String expectedILoqPrefix = ri.getMappedKeyILoqPrefix() + expectedILoqKeyId;
 
-        when(helper.writeAsJson(any(EfecteEntityIdentifier.class))).thenReturn(expectedEfecteIdentifierJson);
+        when(helper.writeAsRedisValue(any(EfecteEntityIdentifier.class))).thenReturn(expectedEfecteIdentifierJson);
 
         verifyNoInteractions(redis);
         verifyNoInteractions(helper);
 
         efecteKeyProcessor.buildEfecteKey(ex);
 
-        verify(helper).writeAsJson(expectedEfecteEntityIdentifier);
-        verify(redis).set(expectedEfectePrefix, expectedILoqKeyId);
-        verify(redis).set(expectedILoqPrefix, expectedEfecteIdentifierJson);
+        verify(helper).writeAsRedisValue(expectedEfecteEntityIdentifier);
+        verify(redisScripts).setAll(Map.of(
+                expectedEfectePrefix, expectedILoqKeyId,
+                expectedILoqPrefix, expectedEfecteIdentifierJson));
     }
 
     @Test
@@ -718,7 +915,7 @@ public class EfecteKeyProcessorTest {
                 .withOutsiderEmail("matti.meikalainen@hel.fi")
                 .withDefaults(EnumEfecteTemplate.KEY)
                 .build();
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any())).thenReturn(matchinEfecteKey);
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any())).thenReturn(matchinEfecteKey);
         setDefaultResponses();
 
         EfecteEntityIdentifier efecteEntityKeyIdentifier = new EfecteEntityIdentifier(
@@ -736,7 +933,7 @@ public class EfecteKeyProcessorTest {
         String expectedOutsiderEfectePrefix = ri.getMappedPersonEfectePrefix() + TEST_CC + ":" + expectedOutsiderIdentifier;
         String expectedOutsiderILoqPrefix = ri.getMappedPersonILoqPrefix() + TEST_CC + ":" + expectedILoqPersonId;
 
-        when(helper.writeAsJson(any(EfecteEntityIdentifier.class)))
+        when(helper.writeAsRedisValue(any(EfecteEntityIdentifier.class)))
                 .thenReturn(expectedEfecteKeyIdentifierJson)
                 .thenReturn(expectedEfectePersonIdentifierJson);
         when(helper.createIdentifier(outsiderEmail, outsiderName)).thenReturn(expectedOutsiderIdentifier);
@@ -746,10 +943,11 @@ public class EfecteKeyProcessorTest {
 
         efecteKeyProcessor.buildEfecteKey(ex);
 
-        verify(helper).writeAsJson(efecteEntityKeyIdentifier);
+        verify(helper).writeAsRedisValue(efecteEntityKeyIdentifier);
         verify(helper).createIdentifier(outsiderEmail, outsiderName);
-        verify(redis).set(expectedKeyEfectePrefix, expectedILoqKeyId);
-        verify(redis).set(expectedKeyILoqPrefix, expectedEfecteKeyIdentifierJson);
+        verify(redisScripts).setAll(Map.of(
+                expectedKeyEfectePrefix, expectedILoqKeyId,
+                expectedKeyILoqPrefix, expectedEfecteKeyIdentifierJson));
         verify(redis).set(expectedOutsiderEfectePrefix, expectedILoqPersonId);
         verify(redis).set(expectedOutsiderILoqPrefix, expectedEfectePersonIdentifierJson);
     }
@@ -776,7 +974,7 @@ public class EfecteKeyProcessorTest {
                 .withKeyEfecteId(efecteId)
                 .withDefaults(EnumEfecteTemplate.KEY)
                 .build();
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any())).thenReturn(matchinEfecteKey);
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any())).thenReturn(matchinEfecteKey);
         setDefaultResponses();
 
         verifyNoInteractions(iLoqKeyMapper);
@@ -806,7 +1004,7 @@ public class EfecteKeyProcessorTest {
                 .withKeyEfecteId(expectedEfecteId)
                 .withDefaults(EnumEfecteTemplate.KEY)
                 .build();
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any())).thenReturn(matchingEfecteKey);
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any())).thenReturn(matchingEfecteKey);
         setDefaultResponses();
 
         verifyNoInteractions(efecteKeyMapper);
@@ -831,7 +1029,7 @@ public class EfecteKeyProcessorTest {
 
         when(redis.get(anyString())).thenReturn(null);
 
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any()))
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any()))
                 .thenReturn(new EfecteEntityBuilder().withDefaults(EnumEfecteTemplate.KEY).build());
         when(efecteKeyMapper.buildEfecteEntitySetUpdate(enrichedILoqKey, "irrelevant"))
                 .thenReturn(new EfecteEntitySetImport());
@@ -880,7 +1078,7 @@ public class EfecteKeyProcessorTest {
         ILoqKeyImport expectedILoqKeyImport = new ILoqKeyImport(new ILoqKey(iLoqKeyId));
 
         when(redis.get(any())).thenReturn(null);
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any()))
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any()))
                 .thenReturn(matchingEfecteKey);
         when(efecteKeyResolver.getNewEfecteSecurityAccessEntityIds(iLoqSecurityAccesses))
                 .thenReturn(efecteSecurityAccessEntityIds);
@@ -949,7 +1147,7 @@ public class EfecteKeyProcessorTest {
         ILoqKeyImport expectedILoqKeyImport = new ILoqKeyImport(new ILoqKey(iLoqKeyId));
 
         when(redis.get(any())).thenReturn(null);
-        when(efecteKeyResolver.findMatchingEfecteKey(any(), any()))
+        when(efecteKeyResolver.claimMatchingEfecteKey(any(), any()))
                 .thenReturn(matchingEfecteKey);
         when(efecteKeyResolver.getNewEfecteSecurityAccessEntityIds(iLoqSecurityAccesses))
                 .thenReturn(efecteSecurityAccessEntityIds);
@@ -1351,6 +1549,13 @@ public class EfecteKeyProcessorTest {
         assertThat(efecteKeyEfecteId).isEqualTo(expectedEfecteId);
     }
 
+    private EfecteEntity createUnmappedEfecteKey(String efecteAddress, String keyHolderId) {
+        return new EfecteEntityBuilder()
+                .withStreetAddress("irrelevant", efecteAddress)
+                .withKeyHolderReference(keyHolderId)
+                .build();
+    }
+
     private void setDefaultResponses() throws Exception {
 
         EfecteEntityImport entityImport = new EfecteEntityImport(
@@ -1363,4 +1568,30 @@ public class EfecteKeyProcessorTest {
         when(efecteKeyMapper.buildNewEfecteEntitySetImport(any())).thenReturn(efecteEntitySet);
     }
 
+    private Exchange createProcessedVersionExchange(String efecteId, List<EfecteAttribute> attributes) {
+        EfecteEntity efecteKey = new EfecteEntity("1234");
+        efecteKey.setAttributes(attributes);
+
+        Exchange ex = testUtils.createExchange();
+        ex.setProperty("efecteKey", efecteKey);
+        ex.setProperty("efecteKeyEfecteId", efecteId);
+
+        return ex;
+    }
+
+    private List<EfecteAttribute> createKeyCardAttributes(String securityAccessEntityId) {
+        return List.of(
+                createAttribute(EnumEfecteAttribute.KEY_EFECTE_ID.getId(), "KEY-000123"),
+                new EfecteAttributeBuilder()
+                        .withId(EnumEfecteAttribute.KEY_SECURITY_ACCESS.getId())
+                        .withReference(securityAccessEntityId, "irrelevant")
+                        .build());
+    }
+
+    private EfecteAttribute createAttribute(String attributeId, String value) {
+        return new EfecteAttributeBuilder()
+                .withId(attributeId)
+                .withValue(value)
+                .build();
+    }
 }
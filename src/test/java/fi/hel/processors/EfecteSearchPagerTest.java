@@ -0,0 +1,226 @@
+package fi.hel.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.quarkus.test.CamelQuarkusTestSupport;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.devikone.test_utils.TestUtils;
+
+import fi.hel.models.EfecteEntity;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+
+@QuarkusTest
+@SuppressWarnings("unchecked")
+public class EfecteSearchPagerTest extends CamelQuarkusTestSupport {
+
+    @Inject
+    ResourceInjector ri;
+    @Inject
+    TestUtils testUtils;
+    @Inject
+    @Named("efecteSearchPageExecutor")
+    ExecutorService executor;
+
+    private EfecteSearchPager efecteSearchPager;
+    private MockEndpoint getEfecteEntityMock;
+
+    @Override
+    protected void doPreSetup() throws Exception {
+        super.doPostSetup();
+        testConfiguration().withUseRouteBuilder(false);
+    }
+
+    @Override
+    protected void doPostSetup() throws Exception {
+        super.doPostSetup();
+        MockEndpoint.resetMocks(context);
+        getEfecteEntityMock = getMockEndpoint("mock:getEfecteEntity");
+
+        efecteSearchPager = new EfecteSearchPager();
+        efecteSearchPager.ri = ri;
+        efecteSearchPager.executor = executor;
+        efecteSearchPager.appName = "test";
+        efecteSearchPager.searchPageSize = 2;
+    }
+
+    @Test
+    @DisplayName("setFirstPage")
+    void testShouldLimitTheSearchToTheFirstPage() throws Exception {
+        Exchange ex = testUtils.createExchange(null);
+
+        efecteSearchPager.setFirstPage(ex);
+
+        assertThat(ex.getProperty("efecteSearchFirstResult")).isEqualTo(0);
+        assertThat(ex.getProperty("efecteSearchMaxResults")).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("setFirstPage")
+    void testShouldNotPageTheSearchWhenThePageSizeIsZero() throws Exception {
+        efecteSearchPager.searchPageSize = 0;
+        Exchange ex = testUtils.createExchange(null);
+
+        efecteSearchPager.setFirstPage(ex);
+
+        assertThat(ex.getProperty("efecteSearchFirstResult")).isNull();
+        assertThat(ex.getProperty("efecteSearchMaxResults")).isNull();
+    }
+
+    @Test
+    @DisplayName("prefetchNextPage")
+    void testShouldNotFetchTheNextPageWhenTheCurrentPageIsNotFull() throws Exception {
+        Exchange ex = createFirstPage(createEntities("1"));
+
+        getEfecteEntityMock.expectedMessageCount(0);
+
+        efecteSearchPager.prefetchNextPage(ex);
+
+        getEfecteEntityMock.assertIsSatisfied();
+        assertThat(efecteSearchPager.hasNextPage(ex)).isFalse();
+    }
+
+    @Test
+    @DisplayName("prefetchNextPage")
+    void testShouldNotFetchTheNextPageWhenThePagingWasNotApplied() throws Exception {
+        Exchange ex = createFirstPage(createEntities("1", "2", "3"));
+
+        getEfecteEntityMock.expectedMessageCount(0);
+
+        efecteSearchPager.prefetchNextPage(ex);
+
+        getEfecteEntityMock.assertIsSatisfied();
+        assertThat(efecteSearchPager.hasNextPage(ex)).isFalse();
+    }
+
+    @Test
+    @DisplayName("prefetchNextPage")
+    void testShouldFetchTheNextPageInTheBackground() throws Exception {
+        Exchange ex = createFirstPage(createEntities("1", "2"));
+
+        getEfecteEntityMock.expectedMessageCount(1);
+        getEfecteEntityMock.expectedPropertyReceived("efecteEntityType", "key");
+        getEfecteEntityMock.expectedPropertyReceived("efecteQuery", "foobar");
+        getEfecteEntityMock.expectedPropertyReceived("efecteSearchFirstResult", 2);
+        getEfecteEntityMock.expectedPropertyReceived("efecteSearchMaxResults", 2);
+
+        efecteSearchPager.prefetchNextPage(ex);
+
+        getEfecteEntityMock.assertIsSatisfied();
+        assertThat(efecteSearchPager.hasNextPage(ex)).isTrue();
+    }
+
+    @Test
+    @DisplayName("nextPage")
+    void testShouldHandleThePagesUntilAPageIsNotFull() throws Exception {
+        getEfecteEntityMock.whenAnyExchangeReceived(exchange -> {
+            int firstResult = exchange.getProperty("efecteSearchFirstResult", Integer.class);
+            exchange.getIn().setBody(firstResult == 2 ? createEntities("3", "4") : createEntities("5"));
+        });
+
+        Exchange ex = createFirstPage(createEntities("1", "2"));
+        List<String> handledIds = new ArrayList<>();
+        collectIds(ex, handledIds);
+
+        efecteSearchPager.prefetchNextPage(ex);
+
+        while (efecteSearchPager.hasNextPage(ex)) {
+            efecteSearchPager.nextPage(ex);
+            collectIds(ex, handledIds);
+        }
+
+        assertThat(handledIds).containsExactly("1", "2", "3", "4", "5");
+        assertThat(ex.getProperty("efecteSearchFirstResult")).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("nextPage")
+    void testShouldHandleAnEntityOnceWhenTiesInTheOrderStraddleThePageBoundary() throws Exception {
+        // Entities 2 and 3 have the same street address, and the second page returns them in the other order
+        getEfecteEntityMock.whenAnyExchangeReceived(exchange -> {
+            int firstResult = exchange.getProperty("efecteSearchFirstResult", Integer.class);
+            exchange.getIn().setBody(firstResult == 2 ? createEntities("2", "4") : createEntities("5"));
+        });
+
+        Exchange ex = createFirstPage(createEntities("1", "2"));
+        List<String> handledIds = new ArrayList<>();
+        collectIds(ex, handledIds);
+
+        efecteSearchPager.prefetchNextPage(ex);
+
+        while (efecteSearchPager.hasNextPage(ex)) {
+            efecteSearchPager.nextPage(ex);
+            collectIds(ex, handledIds);
+        }
+
+        assertThat(handledIds).containsExactly("1", "2", "4", "5");
+        assertThat(ex.getProperty("efecteSearchFirstResult")).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("nextPage")
+    void testShouldStopWhenTheSamePageIsReturnedAgain() throws Exception {
+        getEfecteEntityMock.whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(createEntities("1", "2")));
+
+        Exchange ex = createFirstPage(createEntities("1", "2"));
+
+        efecteSearchPager.prefetchNextPage(ex);
+        efecteSearchPager.nextPage(ex);
+
+        assertThat(ex.getIn().getBody(List.class)).isEmpty();
+        assertThat(efecteSearchPager.hasNextPage(ex)).isFalse();
+    }
+
+    @Test
+    @DisplayName("nextPage")
+    void testShouldThrowTheExceptionOfTheNextPage() throws Exception {
+        getEfecteEntityMock.whenAnyExchangeReceived(exchange -> {
+            throw new RuntimeException("foobar");
+        });
+
+        Exchange ex = createFirstPage(createEntities("1", "2"));
+
+        efecteSearchPager.prefetchNextPage(ex);
+
+        assertThatThrownBy(() -> efecteSearchPager.nextPage(ex))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("foobar");
+        assertThat(efecteSearchPager.hasNextPage(ex)).isFalse();
+    }
+
+    private Exchange createFirstPage(List<EfecteEntity> entities) {
+        Exchange ex = testUtils.createExchange(entities);
+        ex.setProperty("efecteEntityType", "key");
+        ex.setProperty("efecteQuery", "foobar");
+        efecteSearchPager.setFirstPage(ex);
+
+        return ex;
+    }
+
+    private List<EfecteEntity> createEntities(String... ids) {
+        List<EfecteEntity> entities = new ArrayList<>();
+
+        for (String id : ids) {
+            entities.add(new EfecteEntity(id));
+        }
+
+        return entities;
+    }
+
+    private void collectIds(Exchange ex, List<String> ids) {
+        for (EfecteEntity entity : (List<EfecteEntity>) ex.getIn().getBody(List.class)) {
+            ids.add(entity.getId());
+        }
+    }
+
+}
@@ -0,0 +1,311 @@
+package fi.hel.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.devikone.test_utils.TestUtils;
+
+import fi.hel.models.EfecteEntity;
+import fi.hel.processors.RedisCommands.StreamAge;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.resps.StreamEntry;
+
+@QuarkusTest
+@SuppressWarnings("unchecked")
+public class EfecteWebhookQueueTest {
+
+    @Inject
+    ResourceInjector ri;
+    @Inject
+    TestUtils testUtils;
+    @InjectMock
+    RedisCommands redisCommands;
+
+    private EfecteWebhookQueue efecteWebhookQueue;
+
+    @BeforeEach
+    void setup() {
+        efecteWebhookQueue = new EfecteWebhookQueue();
+        efecteWebhookQueue.ri = ri;
+        efecteWebhookQueue.appName = "test";
+        efecteWebhookQueue.stream = "test:webhookStream";
+        efecteWebhookQueue.deadLetterStream = "test:webhookDeadLetterStream";
+        efecteWebhookQueue.consumerGroup = "efecte-webhook-consumers";
+        efecteWebhookQueue.batchSize = 50;
+        efecteWebhookQueue.maxLength = 10000;
+        efecteWebhookQueue.claimIdleSeconds = 900;
+        efecteWebhookQueue.maxDeliveries = 5;
+        efecteWebhookQueue.coalesceWindowMilliseconds = 3000;
+        efecteWebhookQueue.coalesceMaxDelayMilliseconds = 30000;
+
+        when(redisCommands.getStreamAge(anyString()))
+                .thenReturn(new StreamAge(Duration.ofSeconds(5), Duration.ofSeconds(5)));
+    }
+
+    @Test
+    @DisplayName("append")
+    void testShouldAppendTheEventToTheStream() throws Exception {
+        String body = "<entityset></entityset>";
+        Exchange ex = testUtils.createExchange(body);
+
+        when(redisCommands.appendToStream(anyString(), any(), any(Long.class))).thenReturn("1700000000000-0");
+
+        efecteWebhookQueue.append(ex);
+
+        verify(redisCommands).appendToStream("test:webhookStream", Map.of("body", body), 10000L);
+        assertThat(ex.getProperty("webhookEvent", String.class))
+                .isEqualTo("test:webhookStream:1700000000000-0");
+    }
+
+    @Test
+    @DisplayName("readBatch")
+    void testShouldReadTheNewEventsIntoASingleListOfKeyCards() throws Exception {
+        StreamEntry first = createEntry(1, createEvent("1", "2"));
+        StreamEntry second = createEntry(2, createEvent("3"));
+        Exchange ex = testUtils.createExchange();
+
+        when(redisCommands.claimIdleEntries(anyString(), anyString(), anyString(), any(Duration.class), anyInt()))
+                .thenReturn(new ArrayList<>());
+        when(redisCommands.readFromConsumerGroup(anyString(), anyString(), anyString(), eq(50)))
+                .thenReturn(List.of(first, second));
+
+        efecteWebhookQueue.readBatch(ex);
+
+        verify(redisCommands).createConsumerGroup("test:webhookStream", "efecte-webhook-consumers");
+        assertThat(ex.getIn().getBody(List.class))
+                .extracting(entity -> ((EfecteEntity) entity).getId())
+                .containsExactly("1", "2", "3");
+        assertThat(ex.getProperty("webhookQueueEntryIds", List.class))
+                .containsExactly(first.getID(), second.getID());
+        assertThat(efecteWebhookQueue.hasEvents(ex)).isTrue();
+    }
+
+    @Test
+    @DisplayName("readBatch")
+    void testShouldHandleAClaimedEventOnItsOwn() throws Exception {
+        StreamEntry claimed = createEntry(1, createEvent("1", "2"));
+        Exchange ex = testUtils.createExchange();
+
+        when(redisCommands.claimIdleEntries(eq("test:webhookStream"), eq("efecte-webhook-consumers"), anyString(),
+                eq(Duration.ofSeconds(900)), eq(1)))
+                .thenReturn(new ArrayList<>(List.of(claimed)));
+        when(redisCommands.getDeliveryCounts(anyString(), anyString(), any())).thenReturn(Map.of(claimed.getID(), 2L));
+
+        efecteWebhookQueue.readBatch(ex);
+
+        verify(redisCommands, never()).readFromConsumerGroup(anyString(), anyString(), anyString(), anyInt());
+        assertThat(ex.getIn().getBody(List.class))
+                .extracting(entity -> ((EfecteEntity) entity).getId())
+                .containsExactly("1", "2");
+        assertThat(ex.getProperty("webhookQueueEntryIds", List.class)).containsExactly(claimed.getID());
+    }
+
+    @Test
+    @DisplayName("readBatch")
+    void testShouldMoveAClaimedEventThatHasBeenDeliveredTooManyTimesToTheDeadLetterStream() throws Exception {
+        StreamEntry failing = createEntry(1, createEvent("1"));
+        StreamEntry unread = createEntry(2, createEvent("2"));
+        Exchange ex = testUtils.createExchange();
+
+        when(redisCommands.claimIdleEntries(anyString(), anyString(), anyString(), any(Duration.class), anyInt()))
+                .thenReturn(new ArrayList<>(List.of(failing)));
+        when(redisCommands.getDeliveryCounts("test:webhookStream", "efecte-webhook-consumers",
+                List.of(failing.getID())))
+                .thenReturn(Map.of(failing.getID(), 6L));
+        when(redisCommands.readFromConsumerGroup(anyString(), anyString(), anyString(), anyInt()))
+                .thenReturn(List.of(unread));
+
+        efecteWebhookQueue.readBatch(ex);
+
+        verify(redisCommands).moveToStream("test:webhookStream", "efecte-webhook-consumers", List.of(failing),
+                "test:webhookDeadLetterStream", 10000L, "not handled in 5 deliveries");
+        verify(redisCommands, never()).acknowledge(anyString(), anyString(), any());
+        assertThat(ex.getIn().getBody(List.class))
+                .extracting(entity -> ((EfecteEntity) entity).getId())
+                .containsExactly("2");
+        assertThat(ex.getProperty("webhookQueueEntryIds", List.class)).containsExactly(unread.getID());
+    }
+
+    @Test
+    @DisplayName("readBatch")
+    void testShouldKeepOnlyTheLatestVersionOfAKeyCard() throws Exception {
+        Exchange ex = testUtils.createExchange();
+
+        when(redisCommands.claimIdleEntries(anyString(), anyString(), anyString(), any(Duration.class), anyInt()))
+                .thenReturn(new ArrayList<>());
+        when(redisCommands.readFromConsumerGroup(anyString(), anyString(), anyString(), anyInt()))
+                .thenReturn(List.of(
+                        createEntry(1, createNamedEvent("1", "old")),
+                        createEntry(2, createEvent("2")),
+                        createEntry(3, createNamedEvent("1", "new"))));
+
+        efecteWebhookQueue.readBatch(ex);
+
+        List<EfecteEntity> result = ex.getIn().getBody(List.class);
+
+        assertThat(result).extracting(EfecteEntity::getId).containsExactly("2", "1");
+        assertThat(result.get(1).getName()).isEqualTo("new");
+    }
+
+    @Test
+    @DisplayName("readBatch")
+    void testShouldMoveTheUnreadableEventsToTheDeadLetterStream() throws Exception {
+        StreamEntry unreadable = createEntry(1, "not xml");
+        StreamEntry readable = createEntry(2, createEvent("1"));
+        Exchange ex = testUtils.createExchange();
+
+        when(redisCommands.claimIdleEntries(anyString(), anyString(), anyString(), any(Duration.class), anyInt()))
+                .thenReturn(new ArrayList<>());
+        when(redisCommands.readFromConsumerGroup(anyString(), anyString(), anyString(), anyInt()))
+                .thenReturn(List.of(unreadable, readable));
+
+        efecteWebhookQueue.readBatch(ex);
+
+        verify(redisCommands).moveToStream("test:webhookStream", "efecte-webhook-consumers", List.of(unreadable),
+                "test:webhookDeadLetterStream", 10000L, "unreadable");
+        assertThat(ex.getIn().getBody(List.class)).hasSize(1);
+        assertThat(ex.getProperty("webhookQueueEntryIds", List.class)).containsExactly(readable.getID());
+    }
+
+    @Test
+    @DisplayName("hasQueuedEvents")
+    void testShouldTellWhetherTheStreamHasEvents() throws Exception {
+        when(redisCommands.getStreamLength("test:webhookStream")).thenReturn(0L, 1L);
+
+        assertThat(efecteWebhookQueue.hasQueuedEvents()).isFalse();
+        assertThat(efecteWebhookQueue.hasQueuedEvents()).isTrue();
+    }
+
+    @Test
+    @DisplayName("hasEvents")
+    void testShouldReturnFalseWhenTheQueueIsEmpty() throws Exception {
+        Exchange ex = testUtils.createExchange();
+
+        when(redisCommands.claimIdleEntries(anyString(), anyString(), anyString(), any(Duration.class), anyInt()))
+                .thenReturn(new ArrayList<>());
+        when(redisCommands.readFromConsumerGroup(anyString(), anyString(), anyString(), anyInt()))
+                .thenReturn(List.of());
+
+        efecteWebhookQueue.readBatch(ex);
+
+        assertThat(efecteWebhookQueue.hasEvents(ex)).isFalse();
+        assertThat(ex.getIn().getBody(List.class)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("readBatch")
+    void testShouldWaitForMoreEventsWithinTheCoalescingWindow() throws Exception {
+        Exchange ex = testUtils.createExchange();
+
+        when(redisCommands.claimIdleEntries(anyString(), anyString(), anyString(), any(Duration.class), anyInt()))
+                .thenReturn(new ArrayList<>());
+        when(redisCommands.getStreamAge(anyString()))
+                .thenReturn(new StreamAge(Duration.ofSeconds(10), Duration.ofSeconds(1)));
+
+        efecteWebhookQueue.readBatch(ex);
+
+        verify(redisCommands, never()).readFromConsumerGroup(anyString(), anyString(), anyString(), anyInt());
+        assertThat(efecteWebhookQueue.hasEvents(ex)).isFalse();
+        assertThat(ex.getIn().getBody(List.class)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("readBatch")
+    void testShouldReadTheEventsWhenTheOldestHasWaitedForTheMaximumDelay() throws Exception {
+        Exchange ex = testUtils.createExchange();
+
+        when(redisCommands.claimIdleEntries(anyString(), anyString(), anyString(), any(Duration.class), anyInt()))
+                .thenReturn(new ArrayList<>());
+        when(redisCommands.getStreamAge(anyString()))
+                .thenReturn(new StreamAge(Duration.ofSeconds(30), Duration.ofSeconds(1)));
+        when(redisCommands.readFromConsumerGroup(anyString(), anyString(), anyString(), anyInt()))
+                .thenReturn(List.of(createEntry(1, createEvent("1"))));
+
+        efecteWebhookQueue.readBatch(ex);
+
+        assertThat(efecteWebhookQueue.hasEvents(ex)).isTrue();
+    }
+
+    @Test
+    @DisplayName("readBatch")
+    void testShouldNotWaitWhenTheCoalescingIsTurnedOff() throws Exception {
+        efecteWebhookQueue.coalesceWindowMilliseconds = 0;
+        Exchange ex = testUtils.createExchange();
+
+        when(redisCommands.claimIdleEntries(anyString(), anyString(), anyString(), any(Duration.class), anyInt()))
+                .thenReturn(new ArrayList<>());
+        when(redisCommands.readFromConsumerGroup(anyString(), anyString(), anyString(), anyInt()))
+                .thenReturn(List.of(createEntry(1, createEvent("1"))));
+
+        efecteWebhookQueue.readBatch(ex);
+
+        verify(redisCommands, never()).getStreamAge(anyString());
+        assertThat(efecteWebhookQueue.hasEvents(ex)).isTrue();
+    }
+
+    @Test
+    @DisplayName("acknowledge")
+    void testShouldAcknowledgeTheEventsOfTheBatch() throws Exception {
+        List<StreamEntryID> entryIds = List.of(new StreamEntryID(1, 0), new StreamEntryID(2, 0));
+        Exchange ex = testUtils.createExchange();
+        ex.setProperty("webhookQueueEntryIds", entryIds);
+
+        efecteWebhookQueue.acknowledge(ex);
+
+        verify(redisCommands).acknowledge("test:webhookStream", "efecte-webhook-consumers", entryIds);
+    }
+
+    @Test
+    @DisplayName("acknowledge")
+    void testShouldNotAcknowledgeAnythingWithoutEvents() throws Exception {
+        Exchange ex = testUtils.createExchange();
+
+        efecteWebhookQueue.acknowledge(ex);
+
+        verify(redisCommands, never()).acknowledge(anyString(), anyString(), any());
+    }
+
+    private StreamEntry createEntry(long time, String body) {
+        return new StreamEntry(new StreamEntryID(time, 0), Map.of("body", body));
+    }
+
+    private String createNamedEvent(String id, String name) {
+        return """
+                <entityset>
+                    <entity id="%s" name="%s">
+                        <template id="322" name="Avain" code="avain"/>
+                    </entity>
+                </entityset>
+                """.formatted(id, name);
+    }
+
+    private String createEvent(String... ids) {
+        StringBuilder entities = new StringBuilder();
+
+        for (String id : ids) {
+            entities.append("<entity id=\"%s\" name=\"irrelevant\"/>".formatted(id));
+        }
+
+        return "<entityset>" + entities + "</entityset>";
+    }
+
+}
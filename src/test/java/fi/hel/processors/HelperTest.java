@@ -1,11 +1,16 @@
 package fi.hel.processors;
 
+import java.util.Set;
+
 import org.junit.jupiter.api.Test;
 
+import fi.hel.models.EfecteEntityIdentifier;
+import fi.hel.models.PreviousEfecteKey;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @QuarkusTest
 class HelperTest {
@@ -108,4 +113,56 @@ class HelperTest {
                 .isEqualTo("matti.meikalainen@domain.com#MAME")
                 .hasSizeLessThanOrEqualTo(50);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testShouldWriteTheEntityIdentifierInTheCompactFormat() throws Exception {
+        EfecteEntityIdentifier identifier = new EfecteEntityIdentifier("12345", "KEY-0001:2");
+
+        String result = helper.writeAsRedisValue(identifier);
+
+        assertThat(result).isEqualTo("~1|5:1234510:KEY-0001:2--");
+        assertThat(helper.writeAsPojo(result, EfecteEntityIdentifier.class)).isEqualTo(identifier);
+    }
+
+    @Test
+    void testShouldWriteThePreviousEfecteKeyInTheCompactFormat() throws Exception {
+        PreviousEfecteKey previousEfecteKey = new PreviousEfecteKey("Aktiivinen", Set.of("2", "10"), "");
+
+        String result = helper.writeAsRedisValue(previousEfecteKey);
+
+        assertThat(result).isEqualTo("~1|10:Aktiivinen0:2#2:101:2");
+        assertThat(helper.writeAsPojo(result, PreviousEfecteKey.class)).isEqualTo(previousEfecteKey);
+    }
+
+    @Test
+    void testShouldKeepTheNullFieldsOfTheCompactValues() throws Exception {
+        EfecteEntityIdentifier outsider = new EfecteEntityIdentifier();
+        outsider.setOutsiderName("Matti Meikäläinen");
+        outsider.setOutsiderEmail("matti@domain.com");
+        PreviousEfecteKey previousEfecteKey = new PreviousEfecteKey("Aktiivinen");
+
+        assertThat(helper.writeAsPojo(helper.writeAsRedisValue(outsider), EfecteEntityIdentifier.class))
+                .isEqualTo(outsider);
+        assertThat(helper.writeAsPojo(helper.writeAsRedisValue(previousEfecteKey), PreviousEfecteKey.class))
+                .isEqualTo(previousEfecteKey);
+    }
+
+    @Test
+    void testShouldReadTheValuesWrittenAsJson() throws Exception {
+        PreviousEfecteKey previousEfecteKey = new PreviousEfecteKey("Aktiivinen", Set.of("1"), "01.01.2025 00:00");
+        EfecteEntityIdentifier identifier = new EfecteEntityIdentifier("12345", "KEY-0001");
+
+        assertThat(helper.writeAsPojo(helper.writeAsJson(previousEfecteKey), PreviousEfecteKey.class))
+                .isEqualTo(previousEfecteKey);
+        assertThat(helper.writeAsPojo(helper.writeAsJson(identifier), EfecteEntityIdentifier.class))
+                .isEqualTo(identifier);
+    }
+
+    @Test
+    void testShouldNotReadAMalformedCompactValue() {
+        assertThatThrownBy(() -> helper.writeAsPojo("~1|5:123", EfecteEntityIdentifier.class))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> helper.writeAsPojo("~2|5:12345", EfecteEntityIdentifier.class))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,51 @@
+package fi.hel.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+public class ILoqConnectionMetricsTest {
+
+    @Inject
+    ILoqConnectionMetrics iLoqConnectionMetrics;
+
+    @BeforeEach
+    void reset() {
+        iLoqConnectionMetrics.reportAndReset();
+    }
+
+    @Test
+    @DisplayName("recordConnect")
+    void testShouldCountTheNewConnections() throws Exception {
+        iLoqConnectionMetrics.recordConnect("foo.bar", TimeUnit.MILLISECONDS.toNanos(120));
+        iLoqConnectionMetrics.recordConnect("foo.bar", TimeUnit.MILLISECONDS.toNanos(30));
+
+        assertThat(iLoqConnectionMetrics.getConnectCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("reportAndReset")
+    void testShouldResetTheConnectCountAfterReporting() throws Exception {
+        iLoqConnectionMetrics.recordConnect("foo.bar", TimeUnit.MILLISECONDS.toNanos(120));
+
+        iLoqConnectionMetrics.reportAndReset();
+
+        assertThat(iLoqConnectionMetrics.getConnectCount()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("getPoolStats")
+    void testShouldReportTheConfiguredPoolSize() throws Exception {
+        assertThat(iLoqConnectionMetrics.getPoolStats().getMax()).isEqualTo(40);
+        assertThat(iLoqConnectionMetrics.getPoolStats().getLeased()).isEqualTo(0);
+    }
+
+}
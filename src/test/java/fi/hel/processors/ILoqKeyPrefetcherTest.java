@@ -0,0 +1,166 @@
+package fi.hel.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.devikone.test_utils.TestUtils;
+import com.devikone.transports.Redis;
+
+import fi.hel.models.ILoqKeyResponse;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+@SuppressWarnings("unchecked")
+public class ILoqKeyPrefetcherTest {
+
+    @Inject
+    ILoqKeyPrefetcher iLoqKeyPrefetcher;
+    @Inject
+    ResourceInjector ri;
+    @Inject
+    TestUtils testUtils;
+    @InjectMock
+    Redis redis;
+    @InjectMock
+    ILoqRequestCache iLoqRequestCache;
+    @InjectMock
+    ILoqSessionContext iLoqSessionContext;
+    @InjectMock
+    ILoqSessionPool iLoqSessionPool;
+    @InjectMock
+    ILoqKeyProcessor iLoqKeyProcessor;
+
+    static final String TEST_CC = "test-customer-code";
+    static final long GENERATION = 3L;
+
+    @BeforeEach
+    void setup() throws Exception {
+        when(iLoqRequestCache.isEnabled()).thenReturn(true);
+        when(iLoqRequestCache.getGeneration()).thenReturn(GENERATION);
+        when(iLoqSessionContext.isValid()).thenReturn(true);
+        when(iLoqSessionContext.getBaseUrl()).thenReturn("https://foo.bar/api/v2");
+        when(iLoqSessionContext.getSessionId()).thenReturn("session-id");
+        when(iLoqSessionPool.isActiveSessionFresh()).thenReturn(true);
+        when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn(TEST_CC);
+    }
+
+    @Test
+    @DisplayName("prefetchNextKeys")
+    void testShouldPrefetchTheNextKeysWhenHandlingTheFirstKey() throws Exception {
+        Exchange ex = createExchange(6, 0);
+
+        iLoqKeyPrefetcher.prefetchNextKeys(ex);
+
+        ArgumentCaptor<Exchange> captor = ArgumentCaptor.forClass(Exchange.class);
+        verify(iLoqRequestCache, timeout(1000).times(8)).prefetch(captor.capture(), eq(GENERATION));
+
+        List<String> paths = captor.getAllValues().stream()
+                .map(request -> request.getIn().getHeader(Exchange.HTTP_PATH, String.class))
+                .toList();
+
+        assertThat(paths).containsExactlyInAnyOrder(
+                "/Keys/key-1/SecurityAccesses", "/Persons/person-1",
+                "/Keys/key-2/SecurityAccesses", "/Persons/person-2",
+                "/Keys/key-3/SecurityAccesses", "/Persons/person-3",
+                "/Keys/key-4/SecurityAccesses", "/Persons/person-4");
+    }
+
+    @Test
+    @DisplayName("prefetchNextKeys")
+    void testShouldPrefetchOnlyTheKeyAtTheEndOfTheWindow() throws Exception {
+        Exchange ex = createExchange(6, 1);
+
+        iLoqKeyPrefetcher.prefetchNextKeys(ex);
+
+        ArgumentCaptor<Exchange> captor = ArgumentCaptor.forClass(Exchange.class);
+        verify(iLoqRequestCache, timeout(1000).times(2)).prefetch(captor.capture(), eq(GENERATION));
+
+        Exchange securityAccessRequest = captor.getAllValues().get(0);
+
+        assertThat(securityAccessRequest.getIn().getHeader(Exchange.HTTP_METHOD)).isEqualTo("GET");
+        assertThat(securityAccessRequest.getIn().getHeader(Exchange.HTTP_URI)).isEqualTo("https://foo.bar/api/v2");
+        assertThat(securityAccessRequest.getIn().getHeader(Exchange.HTTP_PATH))
+                .isEqualTo("/Keys/key-5/SecurityAccesses");
+        assertThat(securityAccessRequest.getIn().getHeader(Exchange.HTTP_QUERY)).isEqualTo("mode=1");
+        assertThat(securityAccessRequest.getIn().getHeader("SessionId")).isEqualTo("session-id");
+    }
+
+    @Test
+    @DisplayName("prefetchNextKeys")
+    void testShouldNotPrefetchThePersonWhenItHasBeenMapped() throws Exception {
+        Exchange ex = createExchange(2, 0);
+
+        when(redis.get(ri.getMappedPersonILoqPrefix() + TEST_CC + ":person-1")).thenReturn("efecte-person-id");
+
+        iLoqKeyPrefetcher.prefetchNextKeys(ex);
+
+        verify(iLoqRequestCache, timeout(1000)).prefetch(
+                argThat(request -> "/Keys/key-1/SecurityAccesses".equals(
+                        request.getIn().getHeader(Exchange.HTTP_PATH))),
+                eq(GENERATION));
+        verify(iLoqRequestCache, after(200).never()).prefetch(
+                argThat(request -> "/Persons/person-1".equals(request.getIn().getHeader(Exchange.HTTP_PATH))),
+                anyLong());
+    }
+
+    @Test
+    @DisplayName("prefetchNextKeys")
+    void testShouldNotPrefetchTheKeysThatWillBeSkipped() throws Exception {
+        Exchange ex = createExchange(3, 0);
+        List<ILoqKeyResponse> keys = ex.getProperty("prefetchableILoqKeys", List.class);
+        keys.get(1).setPersonId(null);
+
+        when(iLoqKeyProcessor.isUnchanged(keys.get(2))).thenReturn(true);
+
+        iLoqKeyPrefetcher.prefetchNextKeys(ex);
+
+        verify(iLoqRequestCache, after(200).never()).prefetch(any(), anyLong());
+    }
+
+    @Test
+    @DisplayName("prefetchNextKeys")
+    void testShouldNotPrefetchWithoutAValidSession() throws Exception {
+        Exchange ex = createExchange(6, 0);
+
+        when(iLoqSessionContext.isValid()).thenReturn(false);
+
+        iLoqKeyPrefetcher.prefetchNextKeys(ex);
+
+        verify(iLoqRequestCache, after(200).never()).prefetch(any(), anyLong());
+    }
+
+    private Exchange createExchange(int keyCount, int index) {
+        List<ILoqKeyResponse> keys = new ArrayList<>();
+
+        for (int i = 0; i < keyCount; i++) {
+            ILoqKeyResponse key = new ILoqKeyResponse("key-" + i);
+            key.setPersonId("person-" + i);
+            keys.add(key);
+        }
+
+        Exchange ex = testUtils.createExchange(keys.get(index));
+        ex.setProperty("prefetchableILoqKeys", keys);
+        ex.setProperty(Exchange.SPLIT_INDEX, index);
+
+        return ex;
+    }
+
+}
@@ -3,7 +3,11 @@ package fi.hel.processors;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -11,12 +15,14 @@ import static org.mockito.Mockito.when;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.quarkus.test.CamelQuarkusTestSupport;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import com.devikone.test_utils.MockEndpointInjector;
 import com.devikone.test_utils.TestUtils;
 import com.devikone.transports.Redis;
 
@@ -51,6 +57,8 @@ public class ILoqKeyProcessorTest extends CamelQuarkusTestSupport {
     ILoqKeyProcessor iLoqKeyProcessor;
     @Inject
     TestUtils testUtils;
+    @Inject
+    MockEndpointInjector mocked;
     @InjectMock
     Redis redis;
     @InjectMock
@@ -730,6 +738,165 @@ public class ILoqKeyProcessorTest extends CamelQuarkusTestSupport {
         assertThat(result).containsExactly(key1, key3, key2);
     }
 
+    @Test
+    @DisplayName("groupILoqKeysByRealEstate")
+    void testShouldGroupTheKeysByRealEstateInTheOriginalOrder() throws Exception {
+        String realEstateId1 = "abc-123";
+        String realEstateId2 = "xyz-456";
+        ILoqKeyResponse key1 = new ILoqKeyResponse();
+        key1.setRealEstateId(realEstateId1);
+        ILoqKeyResponse key2 = new ILoqKeyResponse();
+        key2.setRealEstateId(realEstateId1);
+        ILoqKeyResponse key3 = new ILoqKeyResponse();
+        key3.setRealEstateId(realEstateId2);
+        List<ILoqKeyResponse> keys = List.of(key1, key2, key3);
+
+        Exchange ex = testUtils.createExchange(keys);
+
+        iLoqKeyProcessor.groupILoqKeysByRealEstate(ex);
+
+        List<List<ILoqKeyResponse>> result = ex.getIn().getBody(List.class);
+
+        assertThat(result).hasSize(2);
+        assertThat(result.get(0)).containsExactly(key1, key2);
+        assertThat(result.get(1)).containsExactly(key3);
+    }
+
+    @Test
+    @DisplayName("isUnchangedSinceLastRun")
+    void testShouldReturnTrueAndCountTheKeyWhenTheDigestMatches() throws Exception {
+        String iLoqKeyId = "abc-123";
+        String digest = "digest";
+        ILoqKeyResponse iLoqKey = new ILoqKeyResponse(iLoqKeyId);
+        Exchange ex = testUtils.createExchange(iLoqKey);
+        iLoqKeyProcessor.initSkippedKeyCounter(ex);
+
+        String savedDigest = digest + ":" + System.currentTimeMillis();
+
+        when(redis.get(ri.getKeyDigestILoqPrefix() + iLoqKeyId)).thenReturn(savedDigest);
+        when(redis.getSet(ri.getPreviousKeyILoqPrefix() + iLoqKeyId)).thenReturn(Set.of("2", "1"));
+        when(helper.writeAsJson(iLoqKey)).thenReturn("{}");
+        when(helper.createHashFromJson("{}:1,2")).thenReturn(digest);
+
+        boolean result = iLoqKeyProcessor.isUnchangedSinceLastRun(ex);
+
+        assertThat(result).isTrue();
+        assertThat(ex.getProperty("skippedILoqKeyCount", AtomicInteger.class).get()).isEqualTo(1);
+        // The expiration of the digest is refreshed, so it does not expire while the key is being skipped
+        verify(redis).setex(ri.getKeyDigestILoqPrefix() + iLoqKeyId, savedDigest, 604800);
+    }
+
+    @Test
+    @DisplayName("isUnchangedSinceLastRun")
+    void testShouldReturnFalseWhenTheKeyHasNotBeenHandledInFullWithinTheMaximumAge() throws Exception {
+        String iLoqKeyId = "abc-123";
+        String digest = "digest";
+        ILoqKeyResponse iLoqKey = new ILoqKeyResponse(iLoqKeyId);
+        Exchange ex = testUtils.createExchange(iLoqKey);
+        long handledAt = System.currentTimeMillis() - 86401 * 1000L;
+
+        when(redis.get(ri.getKeyDigestILoqPrefix() + iLoqKeyId)).thenReturn(digest + ":" + handledAt);
+        when(helper.writeAsJson(iLoqKey)).thenReturn("{}");
+        when(helper.createHashFromJson(anyString())).thenReturn(digest);
+
+        boolean result = iLoqKeyProcessor.isUnchangedSinceLastRun(ex);
+
+        assertThat(result).isFalse();
+        verify(redis, never()).setex(anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    @DisplayName("isUnchangedSinceLastRun")
+    void testShouldReturnFalseWhenTheDigestWasSavedWithoutTheTime() throws Exception {
+        String iLoqKeyId = "abc-123";
+        ILoqKeyResponse iLoqKey = new ILoqKeyResponse(iLoqKeyId);
+        Exchange ex = testUtils.createExchange(iLoqKey);
+
+        when(redis.get(ri.getKeyDigestILoqPrefix() + iLoqKeyId)).thenReturn("digest");
+        when(helper.writeAsJson(iLoqKey)).thenReturn("{}");
+        when(helper.createHashFromJson(anyString())).thenReturn("digest");
+
+        boolean result = iLoqKeyProcessor.isUnchangedSinceLastRun(ex);
+
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    @DisplayName("isUnchangedSinceLastRun")
+    void testShouldReturnFalseWhenTheKeyDoesNotHaveAPreviousDigest() throws Exception {
+        String iLoqKeyId = "abc-123";
+        ILoqKeyResponse iLoqKey = new ILoqKeyResponse(iLoqKeyId);
+        Exchange ex = testUtils.createExchange(iLoqKey);
+        iLoqKeyProcessor.initSkippedKeyCounter(ex);
+
+        when(redis.get(ri.getKeyDigestILoqPrefix() + iLoqKeyId)).thenReturn(null);
+
+        boolean result = iLoqKeyProcessor.isUnchangedSinceLastRun(ex);
+
+        assertThat(result).isFalse();
+        assertThat(ex.getProperty("skippedILoqKeyCount", AtomicInteger.class).get()).isZero();
+    }
+
+    @Test
+    @DisplayName("isUnchangedSinceLastRun")
+    void testShouldReturnFalseWhenTheDigestHasChanged() throws Exception {
+        String iLoqKeyId = "abc-123";
+        ILoqKeyResponse iLoqKey = new ILoqKeyResponse(iLoqKeyId);
+        Exchange ex = testUtils.createExchange(iLoqKey);
+
+        when(redis.get(ri.getKeyDigestILoqPrefix() + iLoqKeyId))
+                .thenReturn("old digest:" + System.currentTimeMillis());
+        when(helper.writeAsJson(iLoqKey)).thenReturn("{}");
+        when(helper.createHashFromJson(anyString())).thenReturn("new digest");
+
+        boolean result = iLoqKeyProcessor.isUnchangedSinceLastRun(ex);
+
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    @DisplayName("isUnchangedSinceLastRun")
+    void testShouldIncludeTheChangeMarkersOfTheListedKeyInTheDigest() throws Exception {
+        String iLoqKeyId = "abc-123";
+        ILoqKeyResponse iLoqKey = new ILoqKeyResponse(iLoqKeyId);
+        iLoqKey.setVersionCode("2");
+        iLoqKey.setProgrammingState(1);
+        iLoqKey.setExpireDate("2025-01-01T00:00:00");
+        Exchange ex = testUtils.createExchange(iLoqKey);
+        Helper realHelper = new Helper();
+
+        when(redis.get(ri.getKeyDigestILoqPrefix() + iLoqKeyId))
+                .thenReturn("old digest:" + System.currentTimeMillis());
+        when(helper.writeAsJson(any())).thenAnswer(i -> realHelper.writeAsJson(i.getArgument(0)));
+
+        iLoqKeyProcessor.isUnchangedSinceLastRun(ex);
+
+        verify(helper).createHashFromJson(argThat(json -> json.contains("\"VersionCode\":\"2\"")
+                && json.contains("\"ProgrammingState\":1")
+                && json.contains("\"ExpireDate\":\"2025-01-01T00:00:00\"")));
+    }
+
+    @Test
+    @DisplayName("saveKeyDigest")
+    void testShouldSaveTheKeyDigestWithTheTimeAndAnExpirationTime() throws Exception {
+        String iLoqKeyId = "abc-123";
+        String digest = "digest";
+        ILoqKeyResponse iLoqKey = new ILoqKeyResponse(iLoqKeyId);
+        Exchange ex = testUtils.createExchange();
+        ex.setProperty("currentILoqKey", iLoqKey);
+
+        when(redis.getSet(ri.getPreviousKeyILoqPrefix() + iLoqKeyId)).thenReturn(Set.of("1"));
+        when(helper.writeAsJson(iLoqKey)).thenReturn("{}");
+        when(helper.createHashFromJson("{}:1")).thenReturn(digest);
+
+        long before = System.currentTimeMillis();
+
+        iLoqKeyProcessor.saveKeyDigest(ex);
+
+        verify(redis).setex(eq(ri.getKeyDigestILoqPrefix() + iLoqKeyId), argThat(value -> value.startsWith(digest + ":")
+                && Long.parseLong(value.substring(digest.length() + 1)) >= before), eq(604800L));
+    }
+
     @Test
     @DisplayName("isMissingAPerson")
     void testShouldReturnTrueWhenAnILoqKeyDoesNotHaveAPerson() throws Exception {
@@ -755,6 +922,34 @@ public class ILoqKeyProcessorTest extends CamelQuarkusTestSupport {
         assertThat(result).isFalse();
     }
 
+    @Test
+    @DisplayName("isMissingAPersonMapping")
+    void testShouldReturnTrueWhenTheILoqPersonHasNotBeenMapped() throws Exception {
+        Exchange ex = testUtils.createExchange();
+        ex.setProperty("currentCustomerCode", "cc");
+        ex.setProperty("iLoqPersonId", "person-1");
+
+        when(redis.get(ri.getMappedPersonILoqPrefix() + "cc:person-1")).thenReturn(null);
+
+        boolean result = iLoqKeyProcessor.isMissingAPersonMapping(ex);
+
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    @DisplayName("isMissingAPersonMapping")
+    void testShouldReturnFalseWhenTheILoqPersonHasBeenMapped() throws Exception {
+        Exchange ex = testUtils.createExchange();
+        ex.setProperty("currentCustomerCode", "cc");
+        ex.setProperty("iLoqPersonId", "person-1");
+
+        when(redis.get(ri.getMappedPersonILoqPrefix() + "cc:person-1")).thenReturn("irrelevant");
+
+        boolean result = iLoqKeyProcessor.isMissingAPersonMapping(ex);
+
+        assertThat(result).isFalse();
+    }
+
     @Test
     @DisplayName("hasValidSecurityAccesses")
     void testShouldValidateTheSecurityAccesses() throws Exception {
@@ -849,4 +1044,29 @@ public class ILoqKeyProcessorTest extends CamelQuarkusTestSupport {
         verify(efectePersonResolver).resolveEfectePersonIdentifier(expectedILoqPerson);
     }
 
+    @Test
+    @DisplayName("prefetchEfectePersons")
+    void testShouldSearchTheEfectePersonsOfTheUnmappedILoqPersons() throws Exception {
+        ILoqKeyResponse mappedKey = new ILoqKeyResponse("key-1");
+        mappedKey.setPersonId("person-1");
+        ILoqKeyResponse unmappedKey = new ILoqKeyResponse("key-2");
+        unmappedKey.setPersonId("person-2");
+        ILoqKeyResponse keyWithoutPerson = new ILoqKeyResponse("key-3");
+        ILoqPerson expectedILoqPerson = new ILoqPerson("Matti", "Meikäläinen", "person-2");
+
+        when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn("test-customer-code");
+        when(redis.get(ri.getMappedPersonILoqPrefix() + "test-customer-code:person-1")).thenReturn("irrelevant");
+        mocked.getGetILoqPerson().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(expectedILoqPerson));
+
+        mocked.getGetILoqPerson().expectedMessageCount(1);
+        mocked.getGetILoqPerson().expectedHeaderReceived("iLoqPersonId", "person-2");
+
+        Exchange ex = testUtils.createExchange(List.of(mappedKey, unmappedKey, keyWithoutPerson));
+
+        iLoqKeyProcessor.prefetchEfectePersons(ex);
+
+        mocked.getGetILoqPerson().assertIsSatisfied();
+        verify(efectePersonResolver).prefetchEfectePersons(List.of(expectedILoqPerson));
+    }
+
 }
@@ -70,7 +70,7 @@ public class ILoqPersonProcessorTest extends CamelQuarkusTestSupport {
                 new EfecteEntityBuilder().withDefaults(EnumEfecteTemplate.PERSON).build());
         mocked.getProcessILoqPerson()
                 .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody("irrelevant"));
-        when(helper.writeAsJson(any())).thenReturn("efecte entity identifier json");
+        when(helper.writeAsRedisValue(any())).thenReturn("efecte entity identifier json");
 
         verifyNoInteractions(redis);
 
@@ -95,7 +95,7 @@ public class ILoqPersonProcessorTest extends CamelQuarkusTestSupport {
                 .thenReturn(new ILoqPersonImport());
         mocked.getProcessILoqPerson()
                 .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody("irrelevant"));
-        when(helper.writeAsJson(any())).thenReturn("efecte entity identifier json");
+        when(helper.writeAsRedisValue(any())).thenReturn("efecte entity identifier json");
 
         verifyNoInteractions(iLoqPersonMapper);
 
@@ -119,7 +119,7 @@ public class ILoqPersonProcessorTest extends CamelQuarkusTestSupport {
                 .thenReturn(new EfecteEntityBuilder().withDefaults(EnumEfecteTemplate.PERSON).build());
         mocked.getProcessILoqPerson()
                 .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody("irrelevant"));
-        when(helper.writeAsJson(any())).thenReturn("efecte entity identifier json");
+        when(helper.writeAsRedisValue(any())).thenReturn("efecte entity identifier json");
 
         mocked.getProcessILoqPerson().expectedMessageCount(1);
         mocked.getProcessILoqPerson().expectedPropertyReceived("iLoqPayload", iLoqPersonImport);
@@ -157,7 +157,7 @@ public class ILoqPersonProcessorTest extends CamelQuarkusTestSupport {
         when(helper.writeAsPojo(any(), any())).thenReturn(efectePersonEntity);
         mocked.getProcessILoqPerson()
                 .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(expectedILoqPersonId));
-        when(helper.writeAsJson(entityIdentifier)).thenReturn(expectedEfecteEntityIdentifierJson);
+        when(helper.writeAsRedisValue(entityIdentifier)).thenReturn(expectedEfecteEntityIdentifierJson);
         when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn(TEST_CC);
 
         String expectedEfectePrefix = ri.getMappedPersonEfectePrefix() + TEST_CC + ":" + personEntityId;
@@ -168,7 +168,7 @@ public class ILoqPersonProcessorTest extends CamelQuarkusTestSupport {
 
         iLoqPersonProcessor.createILoqPerson(efecteKey, List.of());
 
-        verify(helper).writeAsJson(entityIdentifier);
+        verify(helper).writeAsRedisValue(entityIdentifier);
         verify(redis).set(expectedEfectePrefix, expectedILoqPersonId);
         verify(redis).set(expectedILoqPrefix, expectedEfecteEntityIdentifierJson);
     }
@@ -185,7 +185,7 @@ public class ILoqPersonProcessorTest extends CamelQuarkusTestSupport {
                 .thenReturn(new ILoqPersonImport());
         mocked.getProcessILoqPerson()
                 .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody("irrelevant"));
-        when(helper.writeAsJson(any())).thenReturn("efecte entity identifier json");
+        when(helper.writeAsRedisValue(any())).thenReturn("efecte entity identifier json");
 
         verifyNoInteractions(iLoqPersonMapper);
 
@@ -208,7 +208,7 @@ public class ILoqPersonProcessorTest extends CamelQuarkusTestSupport {
         when(iLoqPersonMapper.mapToNewILoqPersonForOutsider(any())).thenReturn(iLoqPersonImport);
         mocked.getProcessILoqPerson()
                 .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody("irrelevant"));
-        when(helper.writeAsJson(any())).thenReturn("efecte entity identifier json");
+        when(helper.writeAsRedisValue(any())).thenReturn("efecte entity identifier json");
 
         mocked.getProcessILoqPerson().expectedMessageCount(1);
         mocked.getProcessILoqPerson().expectedPropertyReceived("iLoqPayload", iLoqPersonImport);
@@ -246,7 +246,7 @@ public class ILoqPersonProcessorTest extends CamelQuarkusTestSupport {
         when(iLoqPersonMapper.mapToNewILoqPersonForOutsider(any())).thenReturn(new ILoqPersonImport());
         mocked.getProcessILoqPerson()
                 .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(expectedILoqPersonId));
-        when(helper.writeAsJson(entityIdentifier)).thenReturn(expectedEfecteEntityIdentifierJson);
+        when(helper.writeAsRedisValue(entityIdentifier)).thenReturn(expectedEfecteEntityIdentifierJson);
         when(helper.createIdentifier(outsiderEmail, outsiderName)).thenReturn(efectePersonIdentifier);
         when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn(TEST_CC);
 
@@ -258,7 +258,7 @@ public class ILoqPersonProcessorTest extends CamelQuarkusTestSupport {
 
         iLoqPersonProcessor.createILoqPerson(efecteKey, List.of());
 
-        verify(helper).writeAsJson(entityIdentifier);
+        verify(helper).writeAsRedisValue(entityIdentifier);
         verify(helper).createIdentifier(outsiderEmail, outsiderName);
         verify(redis).set(expectedEfectePrefix, expectedILoqPersonId);
         verify(redis).set(expectedILoqPrefix, expectedEfecteEntityIdentifierJson);
@@ -278,7 +278,7 @@ public class ILoqPersonProcessorTest extends CamelQuarkusTestSupport {
                 .thenReturn(new EfecteEntityBuilder().withDefaults(EnumEfecteTemplate.PERSON).build());
         mocked.getProcessILoqPerson()
                 .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody("irrelevant"));
-        when(helper.writeAsJson(any())).thenReturn("efecte entity identifier json");
+        when(helper.writeAsRedisValue(any())).thenReturn("efecte entity identifier json");
 
         String exceptionMessage = "Oh no! An exception!";
         String expectedExceptionMessage = "ILoqPersonProcessor: Creating an iLOQ person failed: "
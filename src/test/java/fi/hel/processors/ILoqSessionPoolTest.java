@@ -0,0 +1,138 @@
+package fi.hel.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.camel.Exchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.devikone.test_utils.TestUtils;
+import com.devikone.transports.Redis;
+
+import fi.hel.models.ILoqSession;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+public class ILoqSessionPoolTest {
+
+    @Inject
+    ILoqSessionPool iLoqSessionPool;
+    @Inject
+    ResourceInjector ri;
+    @Inject
+    TestUtils testUtils;
+    @Inject
+    Helper helper;
+    @InjectMock
+    Redis redis;
+
+    static final String TEST_CC = "test-customer-code";
+
+    @BeforeEach
+    void reset() throws Exception {
+        iLoqSessionPool.resetCache();
+        when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn(TEST_CC);
+    }
+
+    @Test
+    @DisplayName("activatePooledSession")
+    void testShouldActivateAFreshPooledSession() throws Exception {
+        ILoqSession session = new ILoqSession(TEST_CC, "https://foo.bar", "session-id", "lock-group-id",
+                System.currentTimeMillis());
+
+        when(redis.get(ri.getILoqSessionPrefix() + TEST_CC)).thenReturn(helper.writeAsJson(session));
+
+        boolean result = iLoqSessionPool.activatePooledSession();
+
+        assertThat(result).isTrue();
+        verify(redis).set(ri.getILoqCurrentBaseUrlPrefix(), "https://foo.bar");
+        verify(redis).set(ri.getILoqCurrentSessionIdPrefix(), "session-id");
+        verify(redis).set(ri.getILoqCurrentCustomerCodeHasChangedPrefix(), "false");
+    }
+
+    @Test
+    @DisplayName("activatePooledSession")
+    void testShouldNotActivateAnExpiredPooledSession() throws Exception {
+        long twoHoursAgo = System.currentTimeMillis() - 2 * 60 * 60 * 1000;
+        ILoqSession session = new ILoqSession(TEST_CC, "https://foo.bar", "session-id", "lock-group-id",
+                twoHoursAgo);
+
+        when(redis.get(ri.getILoqSessionPrefix() + TEST_CC)).thenReturn(helper.writeAsJson(session));
+
+        boolean result = iLoqSessionPool.activatePooledSession();
+
+        assertThat(result).isFalse();
+        verify(redis, never()).set(eq(ri.getILoqCurrentSessionIdPrefix()), anyString());
+    }
+
+    @Test
+    @DisplayName("activatePooledSession")
+    void testShouldNotActivateAnIdlePooledSession() throws Exception {
+        long now = System.currentTimeMillis();
+        ILoqSession session = new ILoqSession(TEST_CC, "https://foo.bar", "session-id", "lock-group-id", now);
+        session.setLastUsedAt(now - 20 * 60 * 1000);
+
+        when(redis.get(ri.getILoqSessionPrefix() + TEST_CC)).thenReturn(helper.writeAsJson(session));
+
+        boolean result = iLoqSessionPool.activatePooledSession();
+
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    @DisplayName("activatePooledSession")
+    void testShouldNotActivateASessionWhenThePoolIsEmpty() throws Exception {
+        boolean result = iLoqSessionPool.activatePooledSession();
+
+        assertThat(result).isFalse();
+        assertThat(iLoqSessionPool.hasPooledConnectionInfo()).isFalse();
+    }
+
+    @Test
+    @DisplayName("savePooledSession")
+    void testShouldSaveTheCurrentSessionToRedis() throws Exception {
+        Exchange ex = testUtils.createExchange();
+        ex.setProperty("iLoqLockGroupId", "lock-group-id");
+
+        when(redis.get(ri.getILoqCurrentBaseUrlPrefix())).thenReturn("https://foo.bar");
+        when(redis.get(ri.getILoqCurrentSessionIdPrefix())).thenReturn("session-id");
+
+        iLoqSessionPool.savePooledSession(ex);
+
+        ArgumentCaptor<String> jsonCaptor = ArgumentCaptor.forClass(String.class);
+        verify(redis).set(eq(ri.getILoqSessionPrefix() + TEST_CC), jsonCaptor.capture());
+
+        ILoqSession savedSession = helper.writeAsPojo(jsonCaptor.getValue(), ILoqSession.class);
+
+        assertThat(savedSession.getCustomerCode()).isEqualTo(TEST_CC);
+        assertThat(savedSession.getBaseUrl()).isEqualTo("https://foo.bar");
+        assertThat(savedSession.getSessionId()).isEqualTo("session-id");
+        assertThat(savedSession.getLockGroupId()).isEqualTo("lock-group-id");
+        assertThat(iLoqSessionPool.getPooledBaseUrl()).isEqualTo("https://foo.bar");
+        assertThat(iLoqSessionPool.getPooledLockGroupId()).isEqualTo("lock-group-id");
+    }
+
+    @Test
+    @DisplayName("invalidateCurrentSession")
+    void testShouldKeepTheConnectionInfoOfAnInvalidatedSession() throws Exception {
+        ILoqSession session = new ILoqSession(TEST_CC, "https://foo.bar", "session-id", "lock-group-id",
+                System.currentTimeMillis());
+
+        when(redis.get(ri.getILoqSessionPrefix() + TEST_CC)).thenReturn(helper.writeAsJson(session));
+
+        iLoqSessionPool.invalidateCurrentSession();
+
+        assertThat(iLoqSessionPool.activatePooledSession()).isFalse();
+        assertThat(iLoqSessionPool.hasPooledConnectionInfo()).isTrue();
+    }
+
+}
@@ -0,0 +1,155 @@
+package fi.hel.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.devikone.service.RedisScripts;
+import com.devikone.transports.Redis;
+
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+public class PersonMappingStoreTest {
+
+    @Inject
+    ResourceInjector ri;
+    @InjectMock
+    Redis redis;
+    @InjectMock
+    RedisCommands redisCommands;
+    @InjectMock
+    RedisScripts redisScripts;
+
+    private PersonMappingStore personMappingStore;
+    private String prefix;
+
+    @BeforeEach
+    void setup() {
+        personMappingStore = new PersonMappingStore();
+        personMappingStore.ri = ri;
+        personMappingStore.appName = "test";
+        personMappingStore.hashPersonMappings = true;
+        personMappingStore.scanCount = 2;
+        prefix = ri.getMappedPersonILoqPrefix();
+    }
+
+    @Test
+    @DisplayName("get")
+    void testShouldReadTheStringKeysWhenTheHashesAreNotInUse() throws Exception {
+        personMappingStore.hashPersonMappings = false;
+        when(redis.get(prefix + "cc:person-1")).thenReturn("json");
+
+        String result = personMappingStore.get(prefix, "cc", "person-1");
+        personMappingStore.set(prefix, "cc", "person-2", "other json");
+
+        assertThat(result).isEqualTo("json");
+        verify(redis).set(prefix + "cc:person-2", "other json");
+        verifyNoInteractions(redisCommands, redisScripts);
+    }
+
+    @Test
+    @DisplayName("get")
+    void testShouldReadTheFieldOfTheHashOfTheCustomerCode() throws Exception {
+        when(redisCommands.getHashField(prefix + "cc", "person-1")).thenReturn("json");
+
+        String result = personMappingStore.get(prefix, "cc", "person-1");
+
+        assertThat(result).isEqualTo("json");
+        verifyNoInteractions(redis, redisScripts);
+    }
+
+    @Test
+    @DisplayName("get")
+    void testShouldMoveAMappingMissingFromTheHashFromItsStringKey() throws Exception {
+        when(redisScripts.moveToHash(prefix + "cc", Map.of(prefix + "cc:person-1", "person-1"))).thenReturn(1L);
+        when(redisCommands.getHashField(prefix + "cc", "person-1")).thenReturn(null, "json");
+
+        String result = personMappingStore.get(prefix, "cc", "person-1");
+
+        assertThat(result).isEqualTo("json");
+    }
+
+    @Test
+    @DisplayName("getMany")
+    void testShouldReadTheFieldsOfTheHashAtOnce() throws Exception {
+        personMappingStore.migrate(prefix, "cc");
+        when(redisCommands.getHashFields(prefix + "cc", List.of("person-1", "person-2")))
+                .thenReturn(Arrays.asList("json", null));
+
+        Map<String, String> result = personMappingStore.getMany(prefix, "cc", List.of("person-1", "person-2"));
+
+        assertThat(result).containsExactly(Map.entry("person-1", "json"));
+        verify(redisCommands).getHashField(prefix + "cc", "person-2");
+    }
+
+    @Test
+    @DisplayName("getAll")
+    void testShouldReadTheWholeHashAndTheStringKeysNotMovedYet() throws Exception {
+        when(redisCommands.getHash(prefix + "cc", 2)).thenReturn(Map.of("person-1", "json"));
+        when(redisCommands.scanValues(prefix + "cc:", 2)).thenReturn(Map.of(
+                prefix + "cc:person-1", "old json",
+                prefix + "cc:person-2", "other json"));
+
+        Map<String, String> result = personMappingStore.getAll(prefix, "cc");
+
+        assertThat(result).containsOnly(Map.entry("person-1", "json"), Map.entry("person-2", "other json"));
+    }
+
+    @Test
+    @DisplayName("set")
+    void testShouldSetTheFieldOfTheHash() throws Exception {
+        personMappingStore.set(prefix, "cc", "person-1", "json");
+
+        verify(redisCommands).setHashField(prefix + "cc", "person-1", "json");
+        verifyNoInteractions(redis);
+    }
+
+    @Test
+    @DisplayName("migrate")
+    void testShouldMoveTheStringKeysInBatches() throws Exception {
+        when(redisCommands.scanKeys(prefix + "cc:", 2))
+                .thenReturn(List.of(prefix + "cc:1", prefix + "cc:2", prefix + "cc:3"));
+        when(redisScripts.moveToHash(anyString(), any())).thenReturn(2L, 1L);
+
+        long moved = personMappingStore.migrate(prefix, "cc");
+
+        Map<String, String> firstBatch = new LinkedHashMap<>();
+        firstBatch.put(prefix + "cc:1", "1");
+        firstBatch.put(prefix + "cc:2", "2");
+
+        assertThat(moved).isEqualTo(3);
+        verify(redisScripts).moveToHash(prefix + "cc", firstBatch);
+        verify(redisScripts).moveToHash(prefix + "cc", Map.of(prefix + "cc:3", "3"));
+    }
+
+    @Test
+    @DisplayName("migrate")
+    void testShouldNotReadTheStringKeysAfterTheMigration() throws Exception {
+        when(redisCommands.scanKeys(anyString(), anyInt())).thenReturn(List.of());
+
+        personMappingStore.migrate(prefix, "cc");
+        personMappingStore.migrate(prefix, "cc");
+        personMappingStore.get(prefix, "cc", "person-1");
+
+        verify(redisCommands).scanKeys(prefix + "cc:", 2);
+        verify(redisScripts, never()).moveToHash(anyString(), any());
+    }
+
+}
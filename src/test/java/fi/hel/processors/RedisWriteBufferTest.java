@@ -0,0 +1,362 @@
+package fi.hel.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import com.devikone.service.RedisScripts;
+import com.devikone.transports.Redis;
+
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Transaction;
+
+@QuarkusTest
+@SuppressWarnings("unchecked")
+public class RedisWriteBufferTest {
+
+    @Inject
+    ResourceInjector ri;
+    @Inject
+    CamelContext context;
+    @InjectMock
+    Redis redis;
+    @InjectMock
+    RedisCommands redisCommands;
+    @InjectMock
+    RedisScripts redisScripts;
+
+    private RedisWriteBuffer redisWriteBuffer;
+    private Transaction transaction;
+
+    @BeforeEach
+    void setup() {
+        // The writes go straight to Redis in the test profile
+        redisWriteBuffer = new RedisWriteBuffer();
+        redisWriteBuffer.ri = ri;
+        redisWriteBuffer.appName = "test";
+        redisWriteBuffer.writeBehindBatchSize = 3;
+        redisWriteBuffer.preloadMappings = true;
+        redisWriteBuffer.scanCount = 100;
+
+        Jedis jedis = mock(Jedis.class);
+        transaction = mock(Transaction.class);
+        when(jedis.multi()).thenReturn(transaction);
+        when(redisCommands.execute(any())).thenAnswer(invocation -> {
+            Function<Jedis, Object> command = invocation.getArgument(0);
+            return command.apply(jedis);
+        });
+    }
+
+    @Test
+    @DisplayName("set")
+    void testShouldBufferTheWritesUntilTheyAreFlushed() throws Exception {
+        redisWriteBuffer.set("foo", "bar");
+        redisWriteBuffer.setex("digest", "abc", 60);
+
+        verifyNoInteractions(redis);
+        verify(redisCommands, never()).execute(any());
+        assertThat(redisWriteBuffer.getPendingCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("set")
+    void testShouldWriteStraightToRedisWhenTheBatchSizeIsOne() throws Exception {
+        redisWriteBuffer.writeBehindBatchSize = 1;
+
+        redisWriteBuffer.set("foo", "bar");
+        redisWriteBuffer.setex("digest", "abc", 60);
+        redisWriteBuffer.del("baz");
+
+        InOrder inOrder = inOrder(redis);
+        inOrder.verify(redis).set("foo", "bar");
+        inOrder.verify(redis).setex("digest", "abc", 60);
+        inOrder.verify(redis).del("baz");
+        assertThat(redisWriteBuffer.getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("setAll")
+    void testShouldWriteTheCompositeWritesWithTheScriptsWhenTheBatchSizeIsOne() throws Exception {
+        redisWriteBuffer.writeBehindBatchSize = 1;
+
+        redisWriteBuffer.setAll(Map.of("a", "1", "b", "2"));
+        redisWriteBuffer.setAndReplaceSet("foo", "bar", "set", Set.of("1"));
+        redisWriteBuffer.deleteAndSetex(List.of("x", "y"), "deleted", "z", 60);
+
+        verify(redisScripts).setAll(Map.of("a", "1", "b", "2"));
+        verify(redisScripts).setAndReplaceSet("foo", "bar", "set", Set.of("1"));
+        verify(redisScripts).deleteAndSetex(List.of("x", "y"), "deleted", "z", 60);
+        verifyNoInteractions(redis);
+        assertThat(redisWriteBuffer.getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("setAll")
+    void testShouldFlushTheCompositeWritesInTheSameTransaction() throws Exception {
+        redisWriteBuffer.set("1", "a");
+        redisWriteBuffer.setAll(Map.of("2", "b", "3", "c"));
+
+        verify(transaction).set("1", "a");
+        verify(transaction).set("2", "b");
+        verify(transaction).set("3", "c");
+        verify(transaction).exec();
+        verifyNoInteractions(redisScripts);
+    }
+
+    @Test
+    @DisplayName("flush")
+    void testShouldFlushTheLastWriteOfEachKeyAsASingleTransaction() throws Exception {
+        redisWriteBuffer.set("foo", "first");
+        redisWriteBuffer.setex("digest", "abc", 60);
+        redisWriteBuffer.set("foo", "second");
+
+        redisWriteBuffer.flush();
+
+        InOrder inOrder = inOrder(transaction);
+        inOrder.verify(transaction).setex("digest", 60L, "abc");
+        inOrder.verify(transaction).set("foo", "second");
+        inOrder.verify(transaction).exec();
+        verify(transaction, never()).set("foo", "first");
+        verify(redisCommands).execute(any());
+        assertThat(redisWriteBuffer.getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("flush")
+    void testShouldReplaceTheMembersOfABufferedSet() throws Exception {
+        redisWriteBuffer.writeBehindBatchSize = 10;
+
+        redisWriteBuffer.setAndReplaceSet("foo", "bar", "set", Set.of("1"));
+
+        redisWriteBuffer.flush();
+
+        InOrder inOrder = inOrder(transaction);
+        inOrder.verify(transaction).set("foo", "bar");
+        inOrder.verify(transaction).del("set");
+        inOrder.verify(transaction).sadd("set", "1");
+        inOrder.verify(transaction).exec();
+    }
+
+    @Test
+    @DisplayName("setAllNow")
+    void testShouldWriteTheMappedKeysAtOnceWhenTheWritesAreBuffered() throws Exception {
+        redisWriteBuffer.writeBehindBatchSize = 10;
+
+        redisWriteBuffer.set("a", "old");
+        redisWriteBuffer.set("foo", "bar");
+        redisWriteBuffer.setAllNow(Map.of("a", "1", "b", "2"));
+
+        verify(redisScripts).setAll(Map.of("a", "1", "b", "2"));
+        verify(redisCommands, never()).execute(any());
+        assertThat(redisWriteBuffer.getPendingCount()).isEqualTo(1);
+
+        redisWriteBuffer.flush();
+
+        verify(transaction).set("foo", "bar");
+        verify(transaction, never()).set("a", "old");
+    }
+
+    @Test
+    @DisplayName("setAllNow")
+    void testShouldNotWriteTheUnchangedPreloadedMappedKeysAtOnce() throws Exception {
+        redisWriteBuffer.writeBehindBatchSize = 10;
+        preload();
+        String mappedKey = ri.getMappedKeyILoqPrefix() + "abc-123";
+
+        redisWriteBuffer.setAllNow(Map.of(mappedKey, "{\"entityId\":\"1\"}"));
+
+        verifyNoInteractions(redis, redisScripts);
+    }
+
+    @Test
+    @DisplayName("deleteAndSetex")
+    void testShouldDeleteTheMappedKeysAtOnceWhenTheWritesAreBuffered() throws Exception {
+        redisWriteBuffer.writeBehindBatchSize = 10;
+
+        redisWriteBuffer.set("baz", "bar");
+        redisWriteBuffer.set("foo", "bar");
+        redisWriteBuffer.deleteAndSetex(List.of("baz"), "deleted", "z", 60);
+
+        verify(redisScripts).deleteAndSetex(List.of("baz"), "deleted", "z", 60);
+        verify(redisCommands, never()).execute(any());
+        assertThat(redisWriteBuffer.getPendingCount()).isEqualTo(1);
+
+        redisWriteBuffer.flush();
+
+        verify(transaction).set("foo", "bar");
+        verify(transaction, never()).set("baz", "bar");
+    }
+
+    @Test
+    @DisplayName("flush")
+    void testShouldFlushWhenTheBatchIsFull() throws Exception {
+        redisWriteBuffer.set("1", "a");
+        redisWriteBuffer.set("2", "b");
+        redisWriteBuffer.set("3", "c");
+
+        verify(transaction).exec();
+        assertThat(redisWriteBuffer.getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("flush")
+    void testShouldNotOpenATransactionWithoutWrites() throws Exception {
+        redisWriteBuffer.flush();
+
+        verify(redisCommands, never()).execute(any());
+    }
+
+    @Test
+    @DisplayName("get")
+    void testShouldReadTheBufferedValues() throws Exception {
+        when(redis.get(anyString())).thenReturn("from redis");
+
+        redisWriteBuffer.set("foo", "buffered");
+        redisWriteBuffer.del("deleted");
+
+        assertThat(redisWriteBuffer.get("foo")).isEqualTo("buffered");
+        assertThat(redisWriteBuffer.get("deleted")).isNull();
+        assertThat(redisWriteBuffer.get("other")).isEqualTo("from redis");
+        verify(redis).get("other");
+        verify(redis, never()).get("foo");
+    }
+
+    @Test
+    @DisplayName("getSet")
+    void testShouldReadTheBufferedSets() throws Exception {
+        redisWriteBuffer.writeBehindBatchSize = 10;
+        when(redis.getSet(anyString())).thenReturn(Set.of("from redis"));
+
+        redisWriteBuffer.setAndReplaceSet("foo", "bar", "set", Set.of("1", "2"));
+        redisWriteBuffer.del("deleted");
+
+        assertThat(redisWriteBuffer.getSet("set")).containsExactlyInAnyOrder("1", "2");
+        assertThat(redisWriteBuffer.getSet("deleted")).isEmpty();
+        assertThat(redisWriteBuffer.getSet("other")).containsExactly("from redis");
+    }
+
+    @Test
+    @DisplayName("preload")
+    void testShouldReadThePreloadedKeysFromTheSnapshot() throws Exception {
+        preload();
+
+        assertThat(redisWriteBuffer.get(ri.getMappedKeyILoqPrefix() + "abc-123")).isEqualTo("{\"entityId\":\"1\"}");
+        assertThat(redisWriteBuffer.get(ri.getMappedKeyILoqPrefix() + "def-456")).isNull();
+        assertThat(redisWriteBuffer.getSet(ri.getPreviousKeyILoqPrefix() + "abc-123"))
+                .containsExactlyInAnyOrder("1", "2");
+        assertThat(redisWriteBuffer.getSet(ri.getPreviousKeyILoqPrefix() + "def-456")).isEmpty();
+        verifyNoInteractions(redis);
+    }
+
+    @Test
+    @DisplayName("preload")
+    void testShouldNotPreloadWhenItIsDisabled() throws Exception {
+        redisWriteBuffer.preloadMappings = false;
+
+        redisWriteBuffer.preload(new DefaultExchange(context));
+        redisWriteBuffer.get(ri.getMappedKeyILoqPrefix() + "abc-123");
+
+        verify(redisCommands, never()).scanValues(anyString(), anyInt());
+        verify(redis).get(ri.getMappedKeyILoqPrefix() + "abc-123");
+    }
+
+    @Test
+    @DisplayName("preload")
+    void testShouldNotWriteTheUnchangedPreloadedKeys() throws Exception {
+        redisWriteBuffer.writeBehindBatchSize = 1;
+        preload();
+
+        redisWriteBuffer.set(ri.getPreviousKeyEfectePrefix() + "KEY-001", "previous");
+        redisWriteBuffer.setAll(Map.of(ri.getMappedKeyILoqPrefix() + "abc-123", "{\"entityId\":\"1\"}"));
+        redisWriteBuffer.setAndReplaceSet(ri.getPreviousKeyEfectePrefix() + "KEY-001", "previous",
+                ri.getPreviousKeyILoqPrefix() + "abc-123", Set.of("1", "2"));
+        redisWriteBuffer.del(ri.getMappedKeyILoqPrefix() + "def-456");
+
+        verifyNoInteractions(redis, redisScripts);
+    }
+
+    @Test
+    @DisplayName("preload")
+    void testShouldWriteTheChangedPreloadedKeysAndUpdateTheSnapshot() throws Exception {
+        redisWriteBuffer.writeBehindBatchSize = 1;
+        preload();
+        String mappedKey = ri.getMappedKeyILoqPrefix() + "abc-123";
+        String previousILoqKey = ri.getPreviousKeyILoqPrefix() + "abc-123";
+
+        redisWriteBuffer.setAll(Map.of(mappedKey, "{\"entityId\":\"2\"}"));
+        redisWriteBuffer.setAndReplaceSet(ri.getPreviousKeyEfectePrefix() + "KEY-001", "previous",
+                previousILoqKey, Set.of("1"));
+        redisWriteBuffer.setAll(Map.of(mappedKey, "{\"entityId\":\"2\"}"));
+
+        verify(redisScripts).setAll(Map.of(mappedKey, "{\"entityId\":\"2\"}"));
+        verify(redisScripts).setAndReplaceSet(ri.getPreviousKeyEfectePrefix() + "KEY-001", "previous",
+                previousILoqKey, Set.of("1"));
+        verifyNoMoreInteractions(redisScripts);
+        assertThat(redisWriteBuffer.get(mappedKey)).isEqualTo("{\"entityId\":\"2\"}");
+        assertThat(redisWriteBuffer.getSet(previousILoqKey)).containsExactly("1");
+    }
+
+    @Test
+    @DisplayName("preload")
+    void testShouldForgetTheDeletedPreloadedKeys() throws Exception {
+        redisWriteBuffer.writeBehindBatchSize = 1;
+        preload();
+        String mappedKey = ri.getMappedKeyILoqPrefix() + "abc-123";
+
+        redisWriteBuffer.deleteAndSetex(List.of(mappedKey), "deleted", "abc-123", 60);
+
+        assertThat(redisWriteBuffer.get(mappedKey)).isNull();
+        verifyNoInteractions(redis);
+    }
+
+    @Test
+    @DisplayName("preload")
+    void testShouldClearTheSnapshotWhenTheRunCompletes() throws Exception {
+        Exchange ex = preload();
+        String mappedKey = ri.getMappedKeyILoqPrefix() + "abc-123";
+
+        ex.getExchangeExtension().handoverCompletions().forEach(completion -> completion.onComplete(ex));
+        redisWriteBuffer.get(mappedKey);
+
+        verify(redis).get(mappedKey);
+    }
+
+    private Exchange preload() {
+        when(redisCommands.scanValues(ri.getMappedKeyILoqPrefix(), 100))
+                .thenReturn(Map.of(ri.getMappedKeyILoqPrefix() + "abc-123", "{\"entityId\":\"1\"}"));
+        when(redisCommands.scanValues(ri.getPreviousKeyEfectePrefix(), 100))
+                .thenReturn(Map.of(ri.getPreviousKeyEfectePrefix() + "KEY-001", "previous"));
+        when(redisCommands.scanSets(ri.getPreviousKeyILoqPrefix(), 100))
+                .thenReturn(Map.of(ri.getPreviousKeyILoqPrefix() + "abc-123", Set.of("1", "2")));
+
+        Exchange ex = new DefaultExchange(context);
+        redisWriteBuffer.preload(ex);
+
+        return ex;
+    }
+
+}
@@ -150,6 +150,64 @@ public class EfecteKeyResolverTest extends CamelQuarkusTestSupport {
         assertThat(outsiderEmail).isEqualTo(expectedOutsiderEmail);
     }
 
+    @Test
+    @DisplayName("buildEqualEfecteKey")
+    void testShouldSetTheResolvedEfecteOutsiderInTheCompactFormatToTheResponseEntity() throws Exception {
+        String efecteAddress = "Testikatu 1, 00100, Helsinki";
+        String expectedOutsiderName = "John Smith";
+        String expectedOutsiderEmail = "john.smith@outsider.com";
+        EnrichedILoqKey iLoqKey = new EnrichedILoqKey();
+        ILoqPerson iLoqPerson = new ILoqPerson();
+        iLoqKey.setPerson(iLoqPerson);
+        iLoqKey.setSecurityAccesses(Set.of());
+
+        String efectePersonIdentifierValue = "~1|--10:John Smith23:john.smith@outsider.com";
+        Helper realHelper = new Helper();
+
+        when(efecteKeyHolderResolver.resolveEfectePersonIdentifier(iLoqPerson))
+                .thenReturn(efectePersonIdentifierValue);
+        when(helper.writeAsPojo(any(), any()))
+                .thenAnswer(i -> realHelper.writeAsPojo(i.getArgument(0), i.getArgument(1)));
+
+        EfecteEntity efecteEntity = efecteKeyResolver.buildEqualEfecteKey(iLoqKey, efecteAddress);
+
+        String isOutsider = efecteEntity
+                .getAttributeValue(EnumEfecteAttribute.KEY_IS_OUTSIDER);
+        String outsiderName = efecteEntity
+                .getAttributeValue(EnumEfecteAttribute.KEY_OUTSIDER_NAME);
+        String outsiderEmail = efecteEntity
+                .getAttributeValue(EnumEfecteAttribute.KEY_OUTSIDER_EMAIL);
+
+        assertThat(isOutsider).isEqualTo("Kyllä");
+        assertThat(outsiderName).isEqualTo(expectedOutsiderName);
+        assertThat(outsiderEmail).isEqualTo(expectedOutsiderEmail);
+    }
+
+    @Test
+    @DisplayName("buildEqualEfecteKey")
+    void testShouldSetAPlainOutsiderNameAsItIsWhenReadWithTheHelper() throws Exception {
+        String efecteAddress = "Testikatu 1, 00100, Helsinki";
+        EnrichedILoqKey iLoqKey = new EnrichedILoqKey();
+        ILoqPerson iLoqPerson = new ILoqPerson();
+        iLoqKey.setPerson(iLoqPerson);
+        iLoqKey.setSecurityAccesses(Set.of());
+
+        String expectedPersonIdentifierValue = "~John Doe";
+        Helper realHelper = new Helper();
+
+        when(efecteKeyHolderResolver.resolveEfectePersonIdentifier(iLoqPerson))
+                .thenReturn(expectedPersonIdentifierValue);
+        when(helper.writeAsPojo(any(), any()))
+                .thenAnswer(i -> realHelper.writeAsPojo(i.getArgument(0), i.getArgument(1)));
+
+        EfecteEntity efecteEntity = efecteKeyResolver.buildEqualEfecteKey(iLoqKey, efecteAddress);
+
+        String outsiderName = efecteEntity
+                .getAttributeValue(EnumEfecteAttribute.KEY_OUTSIDER_NAME);
+
+        assertThat(outsiderName).isEqualTo(expectedPersonIdentifierValue);
+    }
+
     @Test
     @DisplayName("buildEqualEfecteKey")
     void testShouldSetTheResolvedEfecteOutsiderNameToTheResponseEntity() throws Exception {
@@ -544,4 +602,56 @@ public class EfecteKeyResolverTest extends CamelQuarkusTestSupport {
         assertThat(result).isNull();
     }
 
+    @Test
+    @DisplayName("claimMatchingEfecteKey")
+    void testShouldNotReturnAClaimedKeyAgain() throws Exception {
+        String keyHolderEntityId = "123456";
+        String securityAccessEntityId = "234567";
+        EfecteEntity builtEqualEfecteKey = new EfecteEntityBuilder()
+                .withKeyHolderReference(keyHolderEntityId)
+                .withSecurityAccesses(new EfecteReference(securityAccessEntityId))
+                .build();
+        EfecteEntity matchingKey1 = new EfecteEntityBuilder()
+                .withKeyHolderReference(keyHolderEntityId, "Smith John")
+                .withSecurityAccesses(new EfecteReference(securityAccessEntityId))
+                .build();
+        EfecteEntity matchingKey2 = new EfecteEntityBuilder()
+                .withKeyHolderReference(keyHolderEntityId, "Smith John")
+                .withSecurityAccesses(new EfecteReference(securityAccessEntityId))
+                .build();
+
+        UnmappedEfecteKeyIndex keys = new UnmappedEfecteKeyIndex(List.of(matchingKey1, matchingKey2));
+
+        assertThat(efecteKeyResolver.claimMatchingEfecteKey(builtEqualEfecteKey, keys)).isSameAs(matchingKey1);
+        assertThat(efecteKeyResolver.claimMatchingEfecteKey(builtEqualEfecteKey, keys)).isSameAs(matchingKey2);
+        assertThat(efecteKeyResolver.claimMatchingEfecteKey(builtEqualEfecteKey, keys)).isNull();
+        assertThat(keys.size()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("claimMatchingEfecteKey")
+    void testShouldRemoveAClaimedOutsiderKeyFromAllTheLookups() throws Exception {
+        String outsiderName = "John Smith";
+        String outsiderEmail = "john.smith@example.com";
+        EfecteEntity builtMappedOutsiderKey = new EfecteEntityBuilder()
+                .withIsOutsider(true)
+                .withOutsiderName(outsiderName)
+                .withOutsiderEmail(outsiderEmail)
+                .build();
+        EfecteEntity builtOutsiderKey = new EfecteEntityBuilder()
+                .withIsOutsider(true)
+                .withOutsiderName(outsiderName)
+                .build();
+        EfecteEntity matchingKey = new EfecteEntityBuilder()
+                .withIsOutsider(true)
+                .withOutsiderName(outsiderName)
+                .withOutsiderEmail(outsiderEmail)
+                .build();
+
+        UnmappedEfecteKeyIndex keys = new UnmappedEfecteKeyIndex(List.of(matchingKey));
+
+        assertThat(efecteKeyResolver.claimMatchingEfecteKey(builtMappedOutsiderKey, keys)).isSameAs(matchingKey);
+        assertThat(efecteKeyResolver.claimMatchingEfecteKey(builtOutsiderKey, keys)).isNull();
+    }
+
 }
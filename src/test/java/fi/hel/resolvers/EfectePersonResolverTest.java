@@ -14,6 +14,7 @@ import java.util.Set;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.quarkus.test.CamelQuarkusTestSupport;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -62,6 +63,11 @@ public class EfectePersonResolverTest extends CamelQuarkusTestSupport {
         testConfiguration().withUseRouteBuilder(false);
     }
 
+    @BeforeEach
+    void setup() {
+        efecteKeyHolderResolver.resetCache();
+    }
+
     @Test
     @DisplayName("resolveEfectePersonIdentifier")
     void testShouldGetTheMatchingEfecteKeyHolderEntityIdentifierFromRedis() throws Exception {
@@ -357,7 +363,7 @@ public class EfectePersonResolverTest extends CamelQuarkusTestSupport {
         String expectedEfecteEntityIdentifierJson = "efecte entity identifier json";
         mocked.getGetEfecteEntity().whenAnyExchangeReceived(
                 exchange -> exchange.getIn().setBody(List.of(keyHolderEfecteEntity)));
-        when(helper.writeAsJson(efecteEntityIdentifier)).thenReturn(expectedEfecteEntityIdentifierJson);
+        when(helper.writeAsRedisValue(efecteEntityIdentifier)).thenReturn(expectedEfecteEntityIdentifierJson);
         when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn(TEST_CC);
 
         String expectedEfectePrefix = ri.getMappedPersonEfectePrefix() + TEST_CC + ":" + keyHolderEntityId;
@@ -370,6 +376,79 @@ public class EfectePersonResolverTest extends CamelQuarkusTestSupport {
 
         verify(redis).set(expectedEfectePrefix, expectedPersonId);
         verify(redis).set(expectedILoqPrefix, expectedEfecteEntityIdentifierJson);
-        verify(helper).writeAsJson(efecteEntityIdentifier);
+        verify(helper).writeAsRedisValue(efecteEntityIdentifier);
+    }
+
+    @Test
+    @DisplayName("prefetchEfectePersons")
+    void testShouldSearchTheEfectePersonsWithASingleQuery() throws Exception {
+        List<ILoqPerson> iLoqPersons = List.of(
+                new ILoqPerson("John", "Doe", "1"),
+                new ILoqPerson("Jane", "Doe", "2"),
+                new ILoqPerson("John ", " Doe", "3"));
+        String expectedEfecteQuery = """
+                SELECT entity FROM entity WHERE template.code = 'person'
+                AND (($first_name$ = 'John' AND $last_name$ = 'Doe') OR ($first_name$ = 'Jane' AND $last_name$ = 'Doe'))
+                """.replaceAll("\\s+", " ").trim();
+
+        when(helper.urlEncode(anyString())).thenAnswer(i -> i.getArgument(0));
+        mocked.getGetEfecteEntity().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(List.of()));
+
+        mocked.getGetEfecteEntity().expectedMessageCount(1);
+        mocked.getGetEfecteEntity().expectedPropertyReceived("efecteEntityType", "person");
+        mocked.getGetEfecteEntity().expectedPropertyReceived("efecteQuery", expectedEfecteQuery);
+
+        efecteKeyHolderResolver.prefetchEfectePersons(iLoqPersons);
+
+        mocked.getGetEfecteEntity().assertIsSatisfied();
+    }
+
+    @Test
+    @DisplayName("prefetchEfectePersons")
+    void testShouldSplitTheSearchWhenTheQueryWouldBeTooLong() throws Exception {
+        EfectePersonResolver resolver = new EfectePersonResolver();
+        resolver.ri = ri;
+        resolver.appName = "test";
+        resolver.personQueryMaxLength = 150;
+
+        when(helper.urlEncode(anyString())).thenAnswer(i -> i.getArgument(0));
+        mocked.getGetEfecteEntity().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(List.of()));
+
+        mocked.getGetEfecteEntity().expectedMessageCount(2);
+
+        resolver.prefetchEfectePersons(List.of(
+                new ILoqPerson("John", "Doe", "1"),
+                new ILoqPerson("Jane", "Doe", "2")));
+
+        mocked.getGetEfecteEntity().assertIsSatisfied();
+    }
+
+    @Test
+    @DisplayName("prefetchEfectePersons")
+    void testShouldUseTheSearchedEfectePersonsWhenResolvingTheKeyHolders() throws Exception {
+        String expectedKeyHolderEntityId = "12345";
+        EfecteEntity efecteKeyHolderEntity = new EfecteEntityBuilder()
+                .withId(expectedKeyHolderEntityId)
+                .withDefaults(EnumEfecteTemplate.PERSON)
+                .withFirstName("John")
+                .withLastName("Doe")
+                .build();
+
+        when(helper.urlEncode(anyString())).thenAnswer(i -> i.getArgument(0));
+        mocked.getGetEfecteEntity().whenAnyExchangeReceived(
+                exchange -> exchange.getIn().setBody(List.of(efecteKeyHolderEntity)));
+
+        mocked.getGetEfecteEntity().expectedMessageCount(1);
+
+        efecteKeyHolderResolver.prefetchEfectePersons(List.of(
+                new ILoqPerson("John", "Doe", "1"),
+                new ILoqPerson("Jane", "Doe", "2")));
+
+        String johnResult = efecteKeyHolderResolver.resolveEfectePersonIdentifier(new ILoqPerson("John", "Doe", "1"));
+        String janeResult = efecteKeyHolderResolver.resolveEfectePersonIdentifier(new ILoqPerson("Jane", "Doe", "2"));
+
+        assertThat(johnResult).isEqualTo(expectedKeyHolderEntityId);
+        assertThat(janeResult).isEqualTo("Jane Doe");
+        mocked.getGetEfecteEntity().assertIsSatisfied();
     }
 }
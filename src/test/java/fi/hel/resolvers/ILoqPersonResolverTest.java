@@ -3,13 +3,17 @@ package fi.hel.resolvers;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
+import java.util.Map;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.component.mock.MockEndpoint;
@@ -19,6 +23,7 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.mockito.ArgumentCaptor;
 
 import com.devikone.test_utils.MockEndpointInjector;
 import com.devikone.test_utils.TestUtils;
@@ -31,6 +36,7 @@ import fi.hel.models.ILoqPersonImport;
 import fi.hel.models.builders.EfecteEntityBuilder;
 import fi.hel.models.enumerations.EnumEfecteTemplate;
 import fi.hel.processors.Helper;
+import fi.hel.processors.RedisCommands;
 import fi.hel.processors.ResourceInjector;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
@@ -54,6 +60,8 @@ public class ILoqPersonResolverTest extends CamelQuarkusTestSupport {
     Redis redis;
     @InjectMock
     Helper helper;
+    @InjectMock
+    RedisCommands redisCommands;
 
     @Override
     protected void doPreSetup() throws Exception {
@@ -703,7 +711,7 @@ public class ILoqPersonResolverTest extends CamelQuarkusTestSupport {
 
         setDefaultResponses();
 
-        when(helper.writeAsJson(any())).thenReturn(expectedEfecteEntityIdentifier);
+        when(helper.writeAsRedisValue(any())).thenReturn(expectedEfecteEntityIdentifier);
         when(helper.createIdentifier(any(), any())).thenReturn(uniqueIdentifier);
         mocked.getListILoqPersons().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(
                 List.of(iLoqPerson)));
@@ -714,7 +722,7 @@ public class ILoqPersonResolverTest extends CamelQuarkusTestSupport {
 
         verify(redis).set(expectedEfectePrefix, expectedILoqPersonId);
         verify(redis).set(expectedILoqPrefix, expectedEfecteEntityIdentifier);
-        verify(helper).writeAsJson(efecteEntityIdentifier);
+        verify(helper).writeAsRedisValue(efecteEntityIdentifier);
     }
 
     @Test
@@ -744,6 +752,190 @@ public class ILoqPersonResolverTest extends CamelQuarkusTestSupport {
         verify(redis).set(ri.getAuditMessagePrefix(), expectedAuditMessage);
     }
 
+    @Test
+    @DisplayName("resolveILoqPersonId - person directory")
+    void testShouldMatchThePersonFromThePersistedDirectoryWithoutListingILoqPersons() throws Exception {
+        String keyHolderEntityId = "12345";
+        String firstName = "John Robert";
+        String lastName = "Smith";
+        String expectedILoqPersonId = "2";
+        EfecteEntity efectePerson = new EfecteEntityBuilder()
+                .withId(keyHolderEntityId)
+                .withFirstName(firstName)
+                .withLastName(lastName)
+                .withDefaults(EnumEfecteTemplate.PERSON)
+                .build();
+
+        setDefaultResponses();
+
+        when(redisCommands.getHash(eq(getPersonDirectoryHash()), anyInt())).thenReturn(Map.of(
+                "refreshedAt", String.valueOf(System.currentTimeMillis()),
+                "john robert|smith", expectedILoqPersonId));
+        mocked.getGetEfecteEntity()
+                .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(List.of(efectePerson)));
+        mocked.getGetILoqPerson().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(
+                new ILoqPerson(" john  robert", "SMITH ", expectedILoqPersonId)));
+        mocked.getListILoqPersons().expectedMessageCount(0);
+
+        String iLoqPersonId = iLoqPersonResolver.resolveILoqPersonId(keyHolderEntityId);
+
+        assertThat(iLoqPersonId).isEqualTo(expectedILoqPersonId);
+        mocked.getListILoqPersons().assertIsSatisfied();
+    }
+
+    @Test
+    @DisplayName("resolveILoqPersonId - person directory")
+    void testShouldRefreshThePersistedDirectoryWhenTheMatchedPersonHasBeenRemovedFromILoq() throws Exception {
+        String keyHolderEntityId = "12345";
+        String firstName = "John";
+        String lastName = "Smith";
+        EfecteEntity efectePerson = new EfecteEntityBuilder()
+                .withId(keyHolderEntityId)
+                .withFirstName(firstName)
+                .withLastName(lastName)
+                .withDefaults(EnumEfecteTemplate.PERSON)
+                .build();
+
+        setDefaultResponses();
+
+        when(redisCommands.getHash(eq(getPersonDirectoryHash()), anyInt())).thenReturn(Map.of(
+                "refreshedAt", String.valueOf(System.currentTimeMillis()),
+                "john|smith", "removed id"));
+        mocked.getGetEfecteEntity()
+                .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(List.of(efectePerson)));
+        mocked.getGetILoqPerson().whenAnyExchangeReceived(exchange -> {
+            if ("removed id".equals(exchange.getProperty("iLoqPersonId"))) {
+                throw new Exception("Person not found");
+            }
+
+            exchange.getIn().setBody(new ILoqPerson(firstName, lastName, "fresh id"));
+        });
+        mocked.getListILoqPersons().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(List.of(
+                new ILoqPerson(firstName, lastName, "fresh id"))));
+
+        String iLoqPersonId = iLoqPersonResolver.resolveILoqPersonId(keyHolderEntityId);
+
+        assertThat(iLoqPersonId).isEqualTo("fresh id");
+    }
+
+    @Test
+    @DisplayName("resolveILoqPersonId - person directory")
+    void testShouldRefreshThePersistedDirectoryWhenTheMatchedPersonHasBeenRenamedInILoq() throws Exception {
+        String keyHolderEntityId = "12345";
+        String firstName = "John";
+        String lastName = "Smith";
+        EfecteEntity efectePerson = new EfecteEntityBuilder()
+                .withId(keyHolderEntityId)
+                .withFirstName(firstName)
+                .withLastName(lastName)
+                .withDefaults(EnumEfecteTemplate.PERSON)
+                .build();
+
+        setDefaultResponses();
+
+        when(redisCommands.getHash(eq(getPersonDirectoryHash()), anyInt())).thenReturn(Map.of(
+                "refreshedAt", String.valueOf(System.currentTimeMillis()),
+                "john|smith", "renamed id"));
+        mocked.getGetEfecteEntity()
+                .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(List.of(efectePerson)));
+        mocked.getGetILoqPerson().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(
+                new ILoqPerson("Jane", "Smith", "renamed id")));
+        mocked.getListILoqPersons().expectedMessageCount(1);
+
+        String iLoqPersonId = iLoqPersonResolver.resolveILoqPersonId(keyHolderEntityId);
+
+        assertThat(iLoqPersonId).isNull();
+        mocked.getListILoqPersons().assertIsSatisfied();
+    }
+
+    @Test
+    @DisplayName("resolveILoqPersonId - person directory")
+    void testShouldRefreshThePersistedDirectoryOnlyOncePerRunWhenThePersonIsNotFound() throws Exception {
+        setDefaultResponses();
+
+        when(redisCommands.getHash(eq(getPersonDirectoryHash()), anyInt()))
+                .thenReturn(Map.of("refreshedAt", String.valueOf(System.currentTimeMillis())));
+        mocked.getListILoqPersons().expectedMessageCount(1);
+
+        iLoqPersonResolver.resolveILoqPersonId("12345");
+        iLoqPersonResolver.resolveILoqPersonId("67890");
+
+        mocked.getListILoqPersons().assertIsSatisfied();
+    }
+
+    @Test
+    @DisplayName("resolveILoqPersonId - person directory")
+    void testShouldRebuildThePersistedDirectoryWhenItHasExpired() throws Exception {
+        String keyHolderEntityId = "12345";
+        String firstName = "John";
+        String lastName = "Smith";
+        EfecteEntity efectePerson = new EfecteEntityBuilder()
+                .withId(keyHolderEntityId)
+                .withFirstName(firstName)
+                .withLastName(lastName)
+                .withDefaults(EnumEfecteTemplate.PERSON)
+                .build();
+
+        setDefaultResponses();
+
+        when(redisCommands.getHash(eq(getPersonDirectoryHash()), anyInt()))
+                .thenReturn(Map.of("refreshedAt", "0", "john|smith", "stale id"));
+        mocked.getGetEfecteEntity()
+                .whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(List.of(efectePerson)));
+        mocked.getListILoqPersons().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(List.of(
+                new ILoqPerson(firstName, lastName, "fresh id"))));
+
+        String iLoqPersonId = iLoqPersonResolver.resolveILoqPersonId(keyHolderEntityId);
+
+        assertThat(iLoqPersonId).isEqualTo("fresh id");
+    }
+
+    @Test
+    @DisplayName("resolveILoqPersonId - person directory")
+    @SuppressWarnings("unchecked")
+    void testShouldPersistTheRefreshedDirectory() throws Exception {
+        setDefaultResponses();
+
+        mocked.getListILoqPersons().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody(List.of(
+                new ILoqPerson("John", "Smith", "1"),
+                new ILoqPerson("john", "SMITH", "2"))));
+
+        iLoqPersonResolver.resolveILoqPersonId("12345");
+
+        ArgumentCaptor<Map<String, String>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(redisCommands).replaceHash(eq(getPersonDirectoryHash()), captor.capture());
+        verify(redis).del(ri.getILoqPersonDirectoryPrefix() + TEST_CC);
+        assertThat(captor.getValue()).containsEntry("john|smith", "1,2").containsKey("refreshedAt");
+    }
+
+    @Test
+    @DisplayName("addPersonToDirectory")
+    void testShouldAddTheCreatedPersonToTheExistingDirectory() throws Exception {
+        setDefaultResponses();
+
+        when(redisCommands.getHash(eq(getPersonDirectoryHash()), anyInt())).thenReturn(Map.of(
+                "refreshedAt", String.valueOf(System.currentTimeMillis()),
+                "john|smith", "existing id"));
+
+        iLoqPersonResolver.addPersonToDirectory("abc-123", "John", "Smith");
+
+        verify(redisCommands).setHashField(getPersonDirectoryHash(), "john|smith", "existing id,abc-123");
+        verify(redisCommands, never()).replaceHash(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("addPersonToDirectory")
+    void testShouldNotCreateADirectoryWhenAddingAPerson() throws Exception {
+        setDefaultResponses();
+
+        mocked.getListILoqPersons().expectedMessageCount(0);
+
+        iLoqPersonResolver.addPersonToDirectory("abc-123", "John", "Smith");
+
+        mocked.getListILoqPersons().assertIsSatisfied();
+        verify(redisCommands, never()).setHashField(anyString(), anyString(), anyString());
+    }
+
     ////////////////////
     // iLOQ -> Efecte //
     ////////////////////
@@ -784,6 +976,10 @@ public class ILoqPersonResolverTest extends CamelQuarkusTestSupport {
     //     verify(redis).get(expectedPrefix);
     // }
 
+    private String getPersonDirectoryHash() {
+        return ri.getILoqPersonDirectoryPrefix() + TEST_CC + ":persons";
+    }
+
     private void setDefaultResponses() throws Exception {
         when(redis.get(anyString())).thenReturn(null);
         when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn(TEST_CC);
@@ -136,6 +136,32 @@ public class EfecteKeyCardsHandlerTest extends CamelQuarkusTestSupport {
         verify(iLoqKeyProcessor, times(0)).processKey(any(Exchange.class));
     }
 
+    @Test
+    @DisplayName("direct:efecteKeyCardsHandler")
+    void testShouldSkipAnAlreadyProcessedVersionOfTheKeyBeforeValidating() throws Exception {
+        Exchange ex = testUtils.createExchange(createInput());
+
+        when(efecteKeyProcessor.isProcessedVersion(any(Exchange.class))).thenReturn(true);
+
+        template.send(efecteKeyCardsHandlerEndpoint, ex);
+
+        verify(efecteKeyProcessor, times(0)).isValidated(any(Exchange.class));
+        verify(iLoqKeyProcessor, times(0)).processKey(any(Exchange.class));
+        verify(efecteKeyProcessor, times(0)).saveProcessedVersion(any(Exchange.class));
+    }
+
+    @Test
+    @DisplayName("direct:efecteKeyCardsHandler")
+    void testShouldSaveTheProcessedVersionOfTheValidatedKey() throws Exception {
+        Exchange ex = testUtils.createExchange(createInput());
+
+        when(efecteKeyProcessor.isValidated(any(Exchange.class))).thenReturn(true);
+
+        template.send(efecteKeyCardsHandlerEndpoint, ex);
+
+        verify(efecteKeyProcessor).saveProcessedVersion(any(Exchange.class));
+    }
+
     @Test
     @DisplayName("direct:efecteKeyCardsHandler")
     void testShouldSetTheILoqCredentialsForTheValidatedKey() throws Exception {
@@ -194,8 +194,8 @@ public class EfecteRouteBuilderTest extends CamelQuarkusTestSupport {
         String expectedReferenceId2_2 = "2383928";
         String expectedReferenceName2_2 = "Lääkehuone";
         String expectedAttributeId3 = "3";
-        String expectedAttributeName3 = "Luotu";
-        String expectedAttributeCode3 = "created";
+        String expectedAttributeName3 = "Päivitetty";
+        String expectedAttributeCode3 = "updated";
         String expectedValue = "03.07.2023 08:55";
 
         String xmlBody = """
@@ -279,6 +279,59 @@ public class EfecteRouteBuilderTest extends CamelQuarkusTestSupport {
                 .isEqualTo(expectedValue);
     }
 
+    @Test
+    @DisplayName("direct:convertToEfecteEntity")
+    void testShouldOnlyKeepTheKnownAttributes() throws Exception {
+        String xmlBody = """
+                <?xml version="1.0" encoding="UTF-8" ?>
+                <entityset>
+                    <entity id="123" name="irrelevant">
+                        <attribute id="1" name="Luotu" code="created">
+                            <value>03.07.2023 08:55</value>
+                        </attribute>
+                        <attribute id="2" name="Tila" code="avain_tila">
+                            <value>Aktiivinen</value>
+                        </attribute>
+                    </entity>
+                </entityset>
+                """;
+
+        Exchange ex = testUtils.createExchange(xmlBody);
+
+        template.send(convertToEfecteEntityEndpoint, ex);
+
+        List<EfecteEntity> result = ex.getIn().getBody(List.class);
+
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).getAttributes()).hasSize(1);
+        assertThat(result.get(0).getAttributes().get(0).getCode()).isEqualTo("avain_tila");
+        assertThat(result.get(0).getAttributes().get(0).getValue()).isEqualTo("Aktiivinen");
+    }
+
+    @Test
+    @DisplayName("direct:convertToEfecteEntity")
+    void testShouldThrowAnAuditExceptionWhenTheEfecteSearchFails() throws Exception {
+        String xmlBody = """
+                <?xml version="1.0" encoding="utf-8"?>
+                <error>
+                    <code>efe-3001</code>
+                    <description>Invalid search query</description>
+                    <details>Unknown field: Entity.ids</details>
+                </error>
+                """;
+        String expectedAuditMessage = "The Efecte request was invalid. Server response: "
+                + "Efecte search failed: efe-3001 Invalid search query Unknown field: Entity.ids";
+
+        Exchange ex = testUtils.createExchange(xmlBody);
+
+        verifyNoInteractions(auditExceptionProcessor);
+
+        template.send(convertToEfecteEntityEndpoint, ex);
+
+        verify(auditExceptionProcessor).throwAuditException(
+                EnumDirection.ILOQ, EnumDirection.EFECTE, null, null, null, expectedAuditMessage);
+    }
+
     // @Test
     // @DisplayName("direct:convertToEfecteEntity")
     // void testConvertEfecteEntityToJson() throws Exception {
@@ -444,12 +497,31 @@ public class EfecteRouteBuilderTest extends CamelQuarkusTestSupport {
 
         String expectedHttpQuery = "query=" + httpQuery;
 
-        mocked.getSendEfecteRequest().expectedMessageCount(1);
-        mocked.getSendEfecteRequest().expectedHeaderReceived(Exchange.HTTP_QUERY, expectedHttpQuery);
+        mocked.getSendEfecteSearchRequest().expectedMessageCount(1);
+        mocked.getSendEfecteSearchRequest().expectedHeaderReceived(Exchange.HTTP_QUERY, expectedHttpQuery);
 
         template.send(getEfecteEntityEndpoint, ex);
 
-        mocked.getSendEfecteRequest().assertIsSatisfied();
+        mocked.getSendEfecteSearchRequest().assertIsSatisfied();
+    }
+
+    @Test
+    @DisplayName("direct:getEfecteEntity")
+    void testShouldAddThePagingParametersToTheHttpQuery_GetEfecteEntity() throws Exception {
+        String httpQuery = "foobar";
+        Exchange ex = testUtils.createExchange(null);
+        ex.setProperty("efecteQuery", httpQuery);
+        ex.setProperty("efecteSearchFirstResult", 500);
+        ex.setProperty("efecteSearchMaxResults", 250);
+
+        String expectedHttpQuery = "query=" + httpQuery + "&firstResult=500&maxResults=250";
+
+        mocked.getSendEfecteSearchRequest().expectedMessageCount(1);
+        mocked.getSendEfecteSearchRequest().expectedHeaderReceived(Exchange.HTTP_QUERY, expectedHttpQuery);
+
+        template.send(getEfecteEntityEndpoint, ex);
+
+        mocked.getSendEfecteSearchRequest().assertIsSatisfied();
     }
 
     @Test
@@ -27,6 +27,7 @@ import fi.hel.models.EfecteEntity;
 import fi.hel.models.EfecteEntitySet;
 import fi.hel.models.builders.EfecteEntityBuilder;
 import fi.hel.models.enumerations.EnumEfecteTemplate;
+import fi.hel.processors.ILoqSessionPool;
 import fi.hel.processors.ResourceInjector;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
@@ -49,6 +50,8 @@ public class EfecteTriggerControllerTest extends CamelQuarkusTestSupport {
 
     @InjectMock
     Redis redis;
+    @InjectMock
+    ILoqSessionPool iLoqSessionPool;
 
     private String efecteTriggerControllerEndpoint = "direct:efecteTriggerController";
     private String efecteCleanupControllerEndpoint = "direct:efecteCleanupController";
@@ -70,15 +73,14 @@ public class EfecteTriggerControllerTest extends CamelQuarkusTestSupport {
         Exchange ex = testUtils.createExchange(testUtils.writeAsXml(new EfecteEntitySet()));
         ex.setProperty("counter", 1);
 
-        mocked.getLeaderRouteResolver().whenAnyExchangeReceived(exchange -> testUtils.increaseCounter(exchange));
         mocked.getEfecteKeyCardsHandler().whenAnyExchangeReceived(exchange -> testUtils.increaseCounter(exchange));
 
-        mocked.getLeaderRouteResolver().expectedMessageCount(1);
-        mocked.getLeaderRouteResolver().expectedPropertyReceived("counter", 1);
+        // The leader route has been acquired by the webhook queue consumer
+        mocked.getLeaderRouteResolver().expectedMessageCount(0);
         mocked.getEfecteKeyCardsHandler().expectedMessageCount(1);
-        mocked.getEfecteKeyCardsHandler().expectedPropertyReceived("counter", 2);
+        mocked.getEfecteKeyCardsHandler().expectedPropertyReceived("counter", 1);
         mocked.getEfecteControllerCleanup().expectedMessageCount(1);
-        mocked.getEfecteControllerCleanup().expectedPropertyReceived("counter", 3);
+        mocked.getEfecteControllerCleanup().expectedPropertyReceived("counter", 2);
 
         template.send(efecteTriggerControllerEndpoint, ex);
 
@@ -130,19 +132,18 @@ public class EfecteTriggerControllerTest extends CamelQuarkusTestSupport {
 
         when(redis.exists(ri.getILoqCurrentSessionIdPrefix())).thenReturn(true);
 
-        mocked.getKillILoqSession().whenAnyExchangeReceived(exchange -> testUtils.increaseCounter(exchange));
         mocked.getRemoveCurrentILoqSessionRelatedKeys()
                 .whenAnyExchangeReceived(exchange -> testUtils.increaseCounter(exchange));
 
-        mocked.getKillILoqSession().expectedMessageCount(1);
-        mocked.getKillILoqSession().expectedPropertyReceived("counter", 1);
+        mocked.getKillILoqSession().expectedMessageCount(0);
         mocked.getRemoveCurrentILoqSessionRelatedKeys().expectedMessageCount(1);
-        mocked.getRemoveCurrentILoqSessionRelatedKeys().expectedPropertyReceived("counter", 2);
+        mocked.getRemoveCurrentILoqSessionRelatedKeys().expectedPropertyReceived("counter", 1);
         mocked.getRemoveTempKeys().expectedMessageCount(1);
-        mocked.getRemoveTempKeys().expectedPropertyReceived("counter", 3);
+        mocked.getRemoveTempKeys().expectedPropertyReceived("counter", 2);
 
         template.send(efecteCleanupControllerEndpoint, ex);
 
+        verify(iLoqSessionPool).releaseCurrentSession();
         MockEndpoint.assertIsSatisfied(
                 mocked.getKillILoqSession(),
                 mocked.getEfecteControllerCleanup(),
@@ -1,6 +1,7 @@
 package fi.hel.routes;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -32,6 +33,8 @@ import fi.hel.models.ILoqPersonImport;
 import fi.hel.models.ILoqSecurityAccess;
 import fi.hel.models.enumerations.EnumDirection;
 import fi.hel.processors.AuditExceptionProcessor;
+import fi.hel.processors.ILoqRequestCache;
+import fi.hel.processors.ILoqSessionContext;
 import fi.hel.processors.ResourceInjector;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
@@ -50,6 +53,10 @@ public class ILoqRouteBuilderTest extends CamelQuarkusTestSupport {
     ResourceInjector ri;
     @Inject
     TestUtils testUtils;
+    @Inject
+    ILoqSessionContext iLoqSessionContext;
+    @Inject
+    ILoqRequestCache iLoqRequestCache;
 
     @InjectMock
     Redis redis;
@@ -120,6 +127,8 @@ public class ILoqRouteBuilderTest extends CamelQuarkusTestSupport {
     protected void doPostSetup() throws Exception {
         super.doPostSetup();
         mock = getMockEndpoint(mockEndpoint);
+        iLoqSessionContext.invalidate();
+        iLoqRequestCache.reset();
     }
 
     ////////////////////
@@ -494,7 +503,8 @@ public class ILoqRouteBuilderTest extends CamelQuarkusTestSupport {
     void testShouldConfigureILogSessionWhenThereIsAnInvalidOngoingSession() throws Exception {
         Exchange ex = testUtils.createExchange(null);
 
-        when(redis.get(ri.getILoqCurrentCustomerCodeHasChangedPrefix())).thenReturn("true");
+        loadSessionContext();
+        iLoqSessionContext.invalidate();
 
         mocked.getGetILoqUri().expectedMessageCount(1);
         mocked.getCreateILoqSession().expectedMessageCount(1);
@@ -515,7 +525,7 @@ public class ILoqRouteBuilderTest extends CamelQuarkusTestSupport {
     void testShouldNotConfigureILogSessionWhenThereIsAValidOngoingSession() throws Exception {
         Exchange ex = testUtils.createExchange(null);
 
-        when(redis.get(ri.getILoqCurrentCustomerCodeHasChangedPrefix())).thenReturn("false");
+        loadSessionContext();
 
         mocked.getGetILoqUri().expectedMessageCount(0);
         mocked.getCreateILoqSession().expectedMessageCount(0);
@@ -538,7 +548,7 @@ public class ILoqRouteBuilderTest extends CamelQuarkusTestSupport {
         Exchange ex = testUtils.createExchange(null);
         ex.setProperty("customerCode", validCustomerCode);
 
-        when(redis.get(ri.getILoqCurrentCustomerCodeHasChangedPrefix())).thenReturn("false");
+        loadSessionContext();
 
         mocked.getSetILoqHeaders().expectedMessageCount(1);
 
@@ -579,6 +589,29 @@ public class ILoqRouteBuilderTest extends CamelQuarkusTestSupport {
         mock.assertIsSatisfied();
     }
 
+    @Test
+    @DisplayName("direct:setILoqHeaders")
+    void testShouldNotReadRedisWhenTheSessionContextIsValid_SetILoqHeaders() throws Exception {
+        String expectedHttpUri = "www.foobar.com/something/something";
+        String expectedSessionId = "a5f0f07b-f5db-4663-960d-0547319b8322";
+        Exchange ex = testUtils.createExchange(null);
+
+        when(redis.get(ri.getILoqCurrentBaseUrlPrefix())).thenReturn(expectedHttpUri);
+        when(redis.get(ri.getILoqCurrentSessionIdPrefix())).thenReturn(expectedSessionId);
+        iLoqSessionContext.load();
+        clearInvocations(redis);
+
+        mock.expectedMessageCount(2);
+        mock.expectedHeaderReceived("CamelHttpUri", expectedHttpUri);
+        mock.expectedHeaderReceived("SessionId", expectedSessionId);
+
+        template.send(setILoqHeadersEndpoint, ex);
+        template.send(setILoqHeadersEndpoint, testUtils.createExchange(null));
+
+        mock.assertIsSatisfied();
+        verifyNoInteractions(redis);
+    }
+
     @Test
     @DisplayName("direct:setILoqHeaders")
     void testShouldSetTheContentType_SetILoqHeaders() throws Exception {
@@ -921,6 +954,59 @@ public class ILoqRouteBuilderTest extends CamelQuarkusTestSupport {
         mock.assertIsSatisfied();
     }
 
+    @Test
+    @DisplayName("direct:getILoqPerson")
+    void testShouldReuseTheResponseOfAnIdenticalRequest_GetILoqPerson() throws Exception {
+        String personId = "abc-123";
+        Exchange ex1 = testUtils.createExchange(null);
+        Exchange ex2 = testUtils.createExchange(null);
+        ex1.setProperty("iLoqPersonId", personId);
+        ex2.setProperty("iLoqPersonId", personId);
+
+        mocked.getOldhost().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody("""
+                {
+                    "Person_ID": "%s"
+                }
+                """.formatted(personId)));
+
+        mocked.getOldhost().expectedMessageCount(1);
+
+        template.send(getILoqPersonEndpoint, ex1);
+        template.send(getILoqPersonEndpoint, ex2);
+
+        mocked.getOldhost().assertIsSatisfied();
+
+        ILoqPerson iLoqPerson1 = ex1.getIn().getBody(ILoqPerson.class);
+        ILoqPerson iLoqPerson2 = ex2.getIn().getBody(ILoqPerson.class);
+
+        assertThat(iLoqPerson1.getPersonId()).isEqualTo(personId);
+        assertThat(iLoqPerson2.getPersonId()).isEqualTo(personId);
+        assertThat(iLoqPerson1).isNotSameAs(iLoqPerson2);
+    }
+
+    @Test
+    @DisplayName("direct:getILoqPerson")
+    void testShouldNotReuseTheResponseAfterThePersonHasBeenUpdated_GetILoqPerson() throws Exception {
+        String personId = "abc-123";
+        Exchange ex1 = testUtils.createExchange(null);
+        Exchange ex2 = testUtils.createExchange(null);
+        Exchange ex3 = testUtils.createExchange(null);
+        ex1.setProperty("iLoqPersonId", personId);
+        ex3.setProperty("iLoqPersonId", personId);
+        ex2.setProperty("iLoqPayload", new ILoqPersonImport());
+        ex2.setProperty("method", "PUT");
+
+        mocked.getOldhost().whenAnyExchangeReceived(exchange -> exchange.getIn().setBody("{}"));
+
+        mocked.getOldhost().expectedMessageCount(3);
+
+        template.send(getILoqPersonEndpoint, ex1);
+        template.send(processILoqPersonEndpoint, ex2);
+        template.send(getILoqPersonEndpoint, ex3);
+
+        mocked.getOldhost().assertIsSatisfied();
+    }
+
     @Test
     @DisplayName("direct:processILoqPerson")
     void testShouldSetTheBodyFromThePropertyValue_ProcessILoqPerson() throws Exception {
@@ -1473,4 +1559,10 @@ public class ILoqRouteBuilderTest extends CamelQuarkusTestSupport {
         ex.setProperty("counter", counter);
     }
 
+    private void loadSessionContext() throws Exception {
+        when(redis.get(ri.getILoqCurrentBaseUrlPrefix())).thenReturn("irrelevant base url");
+        when(redis.get(ri.getILoqCurrentSessionIdPrefix())).thenReturn("irrelevant session id");
+        iLoqSessionContext.load();
+    }
+
 }
@@ -0,0 +1,189 @@
+package fi.hel.routes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.quarkus.test.CamelQuarkusTestSupport;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+import com.devikone.service.RedisScripts;
+import com.devikone.test_utils.TestUtils;
+import com.devikone.transports.Redis;
+
+import fi.hel.models.EfecteEntityIdentifier;
+import fi.hel.models.PreviousEfecteKey;
+import fi.hel.processors.Helper;
+import fi.hel.processors.RedisCommands;
+import fi.hel.processors.ResourceInjector;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Transaction;
+
+// The test profile writes straight to Redis, so the Redis routes are tested here also with the production defaults
+// of the write buffer
+@TestInstance(Lifecycle.PER_CLASS)
+@TestProfile(RedisRouteBuilderBufferedWritesTest.class)
+@QuarkusTest
+@SuppressWarnings("unchecked")
+public class RedisRouteBuilderBufferedWritesTest extends CamelQuarkusTestSupport {
+
+    @Inject
+    ResourceInjector ri;
+    @Inject
+    TestUtils testUtils;
+    @InjectMock
+    Redis redis;
+    @InjectMock
+    Helper helper;
+    @InjectMock
+    RedisScripts redisScripts;
+    @InjectMock
+    RedisCommands redisCommands;
+
+    @ConfigProperty(name = "DELETED_KEY_EXPIRATION_SECONDS")
+    Long deletedKeyExpirationTime;
+
+    private String saveMappedKeysEndpoint = "direct:saveMappedKeys";
+    private String savePreviousKeyInfosEndpoint = "direct:savePreviousKeyInfos";
+    private String deleteKeyEndpoint = "direct:deleteKey";
+
+    private Transaction transaction;
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+        return Map.of(
+                "app.configuration.redis.writeBehindBatchSize", "50",
+                "app.configuration.redis.preloadMappings", "true",
+                "app.configuration.efecte.importBatchSize", "25");
+    }
+
+    @Override
+    protected void doPreSetup() throws Exception {
+        super.doPostSetup();
+        testConfiguration().withUseRouteBuilder(false);
+    }
+
+    @BeforeEach
+    void setup() {
+        Jedis jedis = mock(Jedis.class);
+        transaction = mock(Transaction.class);
+        when(jedis.multi()).thenReturn(transaction);
+        when(redisCommands.execute(any())).thenAnswer(invocation -> {
+            Function<Jedis, Object> command = invocation.getArgument(0);
+            return command.apply(jedis);
+        });
+    }
+
+    @AfterEach
+    void flush() {
+        // The write buffer is shared by the tests
+        ri.getRedisWriteBuffer().flush();
+    }
+
+    @Test
+    @DisplayName("direct:saveMappedKeys")
+    void testShouldWriteTheMappedKeysAtOnceWhenTheWritesAreBuffered() throws Exception {
+        String entityId = "12345";
+        String efecteId = "KEY-00123";
+        String iLoqId = "abc-123";
+        Exchange ex = testUtils.createExchange();
+        ex.setProperty("efecteKeyEntityId", entityId);
+        ex.setProperty("efecteKeyEfecteId", efecteId);
+        ex.setProperty("iLoqKeyId", iLoqId);
+
+        EfecteEntityIdentifier entityIdentifier = new EfecteEntityIdentifier(entityId, efecteId);
+        String expectedEntityIdentifier = testUtils.writeAsJson(entityIdentifier);
+
+        when(helper.writeAsRedisValue(entityIdentifier)).thenReturn(expectedEntityIdentifier);
+
+        template.send(saveMappedKeysEndpoint, ex);
+
+        verify(redisScripts).setAll(Map.of(
+                ri.getMappedKeyEfectePrefix() + efecteId, iLoqId,
+                ri.getMappedKeyILoqPrefix() + iLoqId, expectedEntityIdentifier));
+        verify(redisCommands, never()).execute(any());
+        assertThat(ri.getRedisWriteBuffer().getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("direct:savePreviousKeyInfos")
+    void testShouldBufferThePreviousKeyInfosUntilTheyAreFlushed() throws Exception {
+        String efecteId = "KEY-00123";
+        String iLoqId = "abc-123";
+        PreviousEfecteKey previousEfecteKey = new PreviousEfecteKey("Aktiivinen", Set.of("11", "22"));
+        Exchange ex = testUtils.createExchange();
+        ex.setProperty("efecteKeyEfecteId", efecteId);
+        ex.setProperty("iLoqKeyId", iLoqId);
+        ex.setProperty("newPreviousEfecteKey", previousEfecteKey);
+        ex.setProperty("newILoqSecurityAccessIds", Set.of("11", "22"));
+
+        String expectedPreviousEfecteKey = testUtils.writeAsJson(previousEfecteKey);
+        String expectedEfectePrefix = ri.getPreviousKeyEfectePrefix() + efecteId;
+        String expectedILoqPrefix = ri.getPreviousKeyILoqPrefix() + iLoqId;
+
+        when(helper.writeAsRedisValue(previousEfecteKey)).thenReturn(expectedPreviousEfecteKey);
+
+        template.send(savePreviousKeyInfosEndpoint, ex);
+
+        verifyNoInteractions(redis, redisScripts);
+        verify(redisCommands, never()).execute(any());
+        assertThat(ri.getRedisWriteBuffer().getPendingCount()).isEqualTo(2);
+
+        ri.getRedisWriteBuffer().flush();
+
+        verify(transaction).set(expectedEfectePrefix, expectedPreviousEfecteKey);
+        verify(transaction).del(expectedILoqPrefix);
+        verify(transaction).exec();
+        assertThat(ri.getRedisWriteBuffer().getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("direct:deleteKey")
+    void testShouldRemoveTheKeysAtOnceAndDropTheirBufferedWrites() throws Exception {
+        String efecteId = "KEY-00123";
+        String iLoqId = "abc-123";
+        String previousEfecteKeyPrefix = ri.getPreviousKeyEfectePrefix() + efecteId;
+        Exchange ex = testUtils.createExchange();
+        ex.setProperty("efecteKeyEfecteId", efecteId);
+        ex.setProperty("iLoqKeyId", iLoqId);
+
+        ri.getRedisWriteBuffer().set(previousEfecteKeyPrefix, "previous");
+
+        template.send(deleteKeyEndpoint, ex);
+
+        verify(redisScripts).deleteAndSetex(
+                List.of(
+                        previousEfecteKeyPrefix,
+                        ri.getPreviousKeyILoqPrefix() + iLoqId,
+                        ri.getMappedKeyEfectePrefix() + efecteId,
+                        ri.getMappedKeyILoqPrefix() + iLoqId,
+                        ri.getKeyDigestILoqPrefix() + iLoqId,
+                        ri.getKeyDigestEfectePrefix() + efecteId),
+                ex.getProperty("deletedKey", String.class),
+                iLoqId,
+                deletedKeyExpirationTime);
+        verify(redisCommands, never()).execute(any());
+        assertThat(ri.getRedisWriteBuffer().getPendingCount()).isZero();
+    }
+
+}
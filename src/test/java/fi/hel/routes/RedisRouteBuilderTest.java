@@ -1,13 +1,14 @@
 package fi.hel.routes;
 
-import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.camel.Exchange;
@@ -18,14 +19,15 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
-import org.mockito.ArgumentCaptor;
 
+import com.devikone.service.RedisScripts;
 import com.devikone.test_utils.TestUtils;
 import com.devikone.transports.Redis;
 
 import fi.hel.models.EfecteEntityIdentifier;
 import fi.hel.models.PreviousEfecteKey;
 import fi.hel.processors.Helper;
+import fi.hel.processors.RedisCommands;
 import fi.hel.processors.ResourceInjector;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
@@ -45,11 +47,17 @@ public class RedisRouteBuilderTest extends CamelQuarkusTestSupport {
     Redis redis;
     @InjectMock
     Helper helper;
+    @InjectMock
+    RedisScripts redisScripts;
+    @InjectMock
+    RedisCommands redisCommands;
 
     @ConfigProperty(name = "EFECTE_INITIAL_MAX_UPDATED")
     String initialMaxUpdated;
     @ConfigProperty(name = "DELETED_KEY_EXPIRATION_SECONDS")
     Long deletedKeyExpirationTime;
+    @ConfigProperty(name = "app.configuration.redis.scanCount")
+    int scanCount;
 
     private String getMaxUpdatedEndpoint = "direct:getMaxUpdated";
     private String createNewMaxUpdatedEndpoint = "direct:createNewMaxUpdated";
@@ -233,16 +241,17 @@ public class RedisRouteBuilderTest extends CamelQuarkusTestSupport {
         String expectedEfectePrefix = ri.getMappedKeyEfectePrefix() + efecteId;
         String expectedILoqPrefix = ri.getMappedKeyILoqPrefix() + expectedILoqId;
 
-        when(helper.writeAsJson(entityIdentifier)).thenReturn(expectedEntityIdentifier);
+        when(helper.writeAsRedisValue(entityIdentifier)).thenReturn(expectedEntityIdentifier);
 
         verifyNoInteractions(redis);
         verifyNoInteractions(helper);
 
         template.send(saveMappedKeysEndpoint, ex);
 
-        verify(redis).set(expectedEfectePrefix, expectedILoqId);
-        verify(redis).set(expectedILoqPrefix, expectedEntityIdentifier);
-        verify(helper).writeAsJson(entityIdentifier);
+        verify(redisScripts).setAll(Map.of(
+                expectedEfectePrefix, expectedILoqId,
+                expectedILoqPrefix, expectedEntityIdentifier));
+        verify(helper).writeAsRedisValue(entityIdentifier);
     }
 
     @Test
@@ -261,27 +270,21 @@ public class RedisRouteBuilderTest extends CamelQuarkusTestSupport {
         ex.setProperty("newPreviousEfecteKey", previousEfecteKey);
         ex.setProperty("newILoqSecurityAccessIds", expectedNewILoqSecurityAccessIds);
 
-        ArgumentCaptor<String> keyCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<String> valueCaptor = ArgumentCaptor.forClass(String.class);
-
         String expectedPreviousEfecteKey = testUtils.writeAsJson(previousEfecteKey);
         String expectedEfectePrefix = ri.getPreviousKeyEfectePrefix() + efecteId;
         String expectedILoqPrefix = ri.getPreviousKeyILoqPrefix() + iLoqId;
 
-        when(helper.writeAsJson(previousEfecteKey)).thenReturn(expectedPreviousEfecteKey);
+        when(helper.writeAsRedisValue(previousEfecteKey)).thenReturn(expectedPreviousEfecteKey);
 
         verifyNoInteractions(redis);
         verifyNoInteractions(helper);
 
         template.send(savePreviousKeyInfosEndpoint, ex);
 
-        verify(redis).set(expectedEfectePrefix, expectedPreviousEfecteKey);
-        verify(redis).del(expectedILoqPrefix);
-        verify(redis).addSet(keyCaptor.capture(), valueCaptor.capture(), valueCaptor.capture());
-        verify(helper).writeAsJson(previousEfecteKey);
-
-        assertThat(keyCaptor.getValue()).isEqualTo(expectedILoqPrefix);
-        assertThat(valueCaptor.getAllValues()).containsExactlyInAnyOrder(iLoqSecurityAccessId1, iLoqSecurityAccessId2);
+        verify(redisScripts).setAndReplaceSet(expectedEfectePrefix, expectedPreviousEfecteKey, expectedILoqPrefix,
+                Set.of(iLoqSecurityAccessId1, iLoqSecurityAccessId2));
+        verifyNoInteractions(redis);
+        verify(helper).writeAsRedisValue(previousEfecteKey);
     }
 
     @Test
@@ -303,7 +306,7 @@ public class RedisRouteBuilderTest extends CamelQuarkusTestSupport {
         String expectedEfectePrefix = ri.getPreviousKeyEfectePrefix() + efecteId;
         String expectedILoqPrefix = ri.getPreviousKeyILoqPrefix() + iLoqId;
 
-        when(helper.writeAsJson(previousEfecteKey)).thenReturn(expectedPreviousEfecteKey);
+        when(helper.writeAsRedisValue(previousEfecteKey)).thenReturn(expectedPreviousEfecteKey);
 
         verifyNoInteractions(redis);
         verifyNoInteractions(helper);
@@ -313,7 +316,8 @@ public class RedisRouteBuilderTest extends CamelQuarkusTestSupport {
         verify(redis).set(expectedEfectePrefix, expectedPreviousEfecteKey);
         verify(redis, times(0)).del(expectedILoqPrefix);
         verify(redis, times(0)).addSet(any(), any(), any());
-        verify(helper).writeAsJson(previousEfecteKey);
+        verifyNoInteractions(redisScripts);
+        verify(helper).writeAsRedisValue(previousEfecteKey);
     }
 
     @Test
@@ -335,7 +339,7 @@ public class RedisRouteBuilderTest extends CamelQuarkusTestSupport {
         String expectedEfectePrefix = ri.getPreviousKeyEfectePrefix() + efecteId;
         String expectedILoqPrefix = ri.getPreviousKeyILoqPrefix() + iLoqId;
 
-        when(helper.writeAsJson(previousEfecteKey)).thenReturn(expectedPreviousEfecteKey);
+        when(helper.writeAsRedisValue(previousEfecteKey)).thenReturn(expectedPreviousEfecteKey);
 
         verifyNoInteractions(redis);
         verifyNoInteractions(helper);
@@ -345,7 +349,8 @@ public class RedisRouteBuilderTest extends CamelQuarkusTestSupport {
         verify(redis).set(expectedEfectePrefix, expectedPreviousEfecteKey);
         verify(redis, times(0)).del(expectedILoqPrefix);
         verify(redis, times(0)).addSet(any(), any(), any());
-        verify(helper).writeAsJson(previousEfecteKey);
+        verifyNoInteractions(redisScripts);
+        verify(helper).writeAsRedisValue(previousEfecteKey);
     }
 
     @Test
@@ -363,16 +368,25 @@ public class RedisRouteBuilderTest extends CamelQuarkusTestSupport {
         String expectedPreviousILoqKeyPrefix = ri.getPreviousKeyILoqPrefix() + iLoqId;
         String expectedMappedEfecteKeyPrefix = ri.getMappedKeyEfectePrefix() + efecteId;
         String expectedMappedILoqKeyPrefix = ri.getMappedKeyILoqPrefix() + iLoqId;
+        String expectedKeyDigestPrefix = ri.getKeyDigestILoqPrefix() + iLoqId;
+        String expectedEfecteKeyDigestPrefix = ri.getKeyDigestEfectePrefix() + efecteId;
 
         verifyNoInteractions(redis);
 
         template.send(deleteKeyEndpoint, ex);
 
-        verify(redis).setex(expectedDeletedPrefix, iLoqId, deletedKeyExpirationTime);
-        verify(redis).del(expectedPreviousEfecteKeyPrefix);
-        verify(redis).del(expectedPreviousILoqKeyPrefix);
-        verify(redis).del(expectedMappedEfecteKeyPrefix);
-        verify(redis).del(expectedMappedILoqKeyPrefix);
+        verify(redisScripts).deleteAndSetex(
+                List.of(
+                        expectedPreviousEfecteKeyPrefix,
+                        expectedPreviousILoqKeyPrefix,
+                        expectedMappedEfecteKeyPrefix,
+                        expectedMappedILoqKeyPrefix,
+                        expectedKeyDigestPrefix,
+                        expectedEfecteKeyDigestPrefix),
+                expectedDeletedPrefix,
+                iLoqId,
+                deletedKeyExpirationTime);
+        verifyNoInteractions(redis);
     }
 
     @Test
@@ -380,22 +394,12 @@ public class RedisRouteBuilderTest extends CamelQuarkusTestSupport {
     void testShouldRemoveAnyTemporaryRedisKeys() throws Exception {
         Exchange ex = testUtils.createExchange();
 
-        String key1 = "foo:bar:1";
-        String key2 = "foo:bar:2";
-        String key3 = "foo:bar:3";
-        List<String> expectedKeys = List.of(key1, key2, key3);
-
-        String expectedPrefix = ri.getTempEfectePersonPrefix() + "*";
-
-        when(redis.getAllKeys(expectedPrefix)).thenReturn(expectedKeys);
-
-        verifyNoInteractions(redis);
+        when(redisCommands.purgeByPrefix(ri.getTempEfectePersonPrefix(), scanCount)).thenReturn(3L);
 
         template.send(removeTempKeysEndpoint, ex);
 
-        verify(redis).getAllKeys(expectedPrefix);
-        verify(redis).del(key1);
-        verify(redis).del(key2);
-        verify(redis).del(key3);
+        verify(redisCommands).purgeByPrefix(ri.getTempEfectePersonPrefix(), scanCount);
+        verify(redis, never()).getAllKeys(any());
+        verify(redis, never()).del(any());
     }
 }
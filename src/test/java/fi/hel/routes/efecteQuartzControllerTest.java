@@ -95,7 +95,7 @@ public class efecteQuartzControllerTest extends CamelQuarkusTestSupport {
     @Test
     void testShouldBuildAnEfecteQueryBeforeGettingTheKeys() throws Exception {
         String maxUpdated = "07.08.2023 13:24";
-        String expectedEfecteQuery = "SELECT entity FROM entity WHERE template.code = 'avain' AND $avain_tyyppi$ = 'iLOQ' AND $updated$ >= '%s' ORDER BY $avain_katuosoite$"
+        String expectedEfecteQuery = "SELECT entity FROM entity WHERE template.code = 'avain' AND $avain_tyyppi$ = 'iLOQ' AND $updated$ >= '%s' ORDER BY $avain_katuosoite$, entity.id"
                 .formatted(maxUpdated);
 
         Exchange ex = testUtils.createExchange();
@@ -9,6 +9,7 @@ import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.apache.camel.component.mock.MockEndpoint.assertIsSatisfied;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -44,6 +45,7 @@ import fi.hel.models.enumerations.EnumDirection;
 import fi.hel.models.enumerations.EnumEfecteTemplate;
 import fi.hel.processors.EfecteKeyProcessor;
 import fi.hel.processors.ILoqKeyProcessor;
+import fi.hel.processors.ILoqSessionPool;
 import fi.hel.processors.ResourceInjector;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
@@ -73,6 +75,8 @@ public class iLoqQuartzControllerTest extends CamelQuarkusTestSupport {
     EfecteKeyProcessor efecteKeyProcessor;
     @InjectMock
     LeaderResolver leaderResolver;
+    @InjectMock
+    ILoqSessionPool iLoqSessionPool;
 
     static final String TEST_CC = "test-customer-code";
 
@@ -329,8 +333,7 @@ public class iLoqQuartzControllerTest extends CamelQuarkusTestSupport {
         }).when(iLoqKeyProcessor).getILoqKeysWithVerifiedRealEstate(any(Exchange.class));
 
         when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn(TEST_CC);
-        String expectedPrefix = ri.getMappedPersonILoqPrefix() + TEST_CC + ":" + expectedILoqPersonId;
-        when(redis.get(expectedPrefix)).thenReturn(null);
+        when(iLoqKeyProcessor.isMissingAPersonMapping(any(Exchange.class))).thenReturn(true);
 
         mocked.getGetILoqPerson().expectedMessageCount(1);
         mocked.getGetILoqPerson().expectedPropertyReceived("iLoqPersonId", expectedILoqPersonId);
@@ -338,7 +341,7 @@ public class iLoqQuartzControllerTest extends CamelQuarkusTestSupport {
 
         template.send(iLoqControllerEndpoint, ex);
 
-        verify(redis).get(expectedPrefix);
+        verify(iLoqKeyProcessor).isMissingAPersonMapping(any(Exchange.class));
         verify(iLoqKeyProcessor).enrichKeyWithPerson(any(Exchange.class));
         mocked.getGetILoqPerson().assertIsSatisfied();
     }
@@ -361,8 +364,7 @@ public class iLoqQuartzControllerTest extends CamelQuarkusTestSupport {
         }).when(iLoqKeyProcessor).getILoqKeysWithVerifiedRealEstate(any(Exchange.class));
 
         when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn(TEST_CC);
-        String prefix = ri.getMappedPersonILoqPrefix() + TEST_CC + ":" + expectedILoqPersonId;
-        when(redis.get(prefix)).thenReturn("efecte entity json");
+        when(iLoqKeyProcessor.isMissingAPersonMapping(any(Exchange.class))).thenReturn(false);
 
         mocked.getGetILoqPerson().expectedMessageCount(0);
 
@@ -390,8 +392,7 @@ public class iLoqQuartzControllerTest extends CamelQuarkusTestSupport {
         }).when(iLoqKeyProcessor).getILoqKeysWithVerifiedRealEstate(any(Exchange.class));
 
         when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn(TEST_CC);
-        String expectedPrefix = ri.getMappedPersonILoqPrefix() + TEST_CC + ":" + expectedILoqPersonId;
-        when(redis.get(expectedPrefix)).thenReturn(null);
+        when(iLoqKeyProcessor.isMissingAPersonMapping(any(Exchange.class))).thenReturn(true);
 
         verifyNoInteractions(iLoqKeyProcessor);
 
@@ -418,8 +419,7 @@ public class iLoqQuartzControllerTest extends CamelQuarkusTestSupport {
         }).when(iLoqKeyProcessor).getILoqKeysWithVerifiedRealEstate(any(Exchange.class));
 
         when(redis.get(ri.getILoqCurrentCustomerCodePrefix())).thenReturn(TEST_CC);
-        String prefix = ri.getMappedPersonILoqPrefix() + TEST_CC + ":" + expectedILoqPersonId;
-        when(redis.get(prefix)).thenReturn("efecte entity json");
+        when(iLoqKeyProcessor.isMissingAPersonMapping(any(Exchange.class))).thenReturn(false);
 
         template.send(iLoqControllerEndpoint, ex);
 
@@ -784,6 +784,28 @@ public class iLoqQuartzControllerTest extends CamelQuarkusTestSupport {
         assertThat(resetCacheCallCount.get()).isEqualTo(0);
     }
 
+    @Test
+    @DisplayName("direct:iLoqController")
+    void testShouldResetTheSharedCachesOnceAfterAllTheCustomerCodes() throws Exception {
+        Exchange ex = testUtils.createExchange();
+
+        when(configProvider.getConfiguredCustomerCodes()).thenReturn(List.of("customer code 1", "customer code 2"));
+
+        List<Long> resetCacheCallCounts = new ArrayList<>();
+
+        mocked.getListILoqKeys().whenAnyExchangeReceived(exchange -> {
+            resetCacheCallCounts.add(Mockito.mockingDetails(efecteKeyProcessor).getInvocations().stream()
+                    .filter(invocation -> invocation.getMethod().getName().equals("resetCache"))
+                    .count());
+            exchange.getIn().setBody(List.of());
+        });
+
+        template.send(iLoqControllerEndpoint, ex);
+
+        assertThat(resetCacheCallCounts).containsExactly(0L, 0L);
+        verify(efecteKeyProcessor).resetCache();
+    }
+
     @Test
     @DisplayName("direct:iLoqController")
     void testShouldRemoveAnOngoingILoqSessionsAtTheEndOfControllerRun() throws Exception {
@@ -821,12 +843,13 @@ public class iLoqQuartzControllerTest extends CamelQuarkusTestSupport {
                                         .withDefaults(EnumEfecteTemplate.KEY).build())));
         when(redis.get(ri.getILoqCurrentSessionIdPrefix())).thenReturn("irrelevant but not null");
 
-        mocked.getKillILoqSession().expectedMessageCount(1);
+        mocked.getKillILoqSession().expectedMessageCount(0);
         mocked.getRemoveCurrentILoqSessionRelatedKeys().expectedMessageCount(1);
 
         template.send(iLoqControllerEndpoint, ex);
 
         assertThat(resetCacheCallCount.get()).isEqualTo(0);
+        verify(iLoqSessionPool).releaseCurrentSession();
         assertIsSatisfied(
                 mocked.getKillILoqSession(),
                 mocked.getRemoveCurrentILoqSessionRelatedKeys());